@@ -52,6 +52,7 @@ import com.microsoft.projectoxford.face.contract.SimilarPersistedFace;
 import com.microsoft.projectoxford.face.contract.TrainingStatus;
 import com.microsoft.projectoxford.face.contract.VerifyResult;
 import com.microsoft.projectoxford.face.rest.ClientException;
+import com.microsoft.projectoxford.face.rest.RequestOptions;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -200,6 +201,20 @@ public interface FaceServiceClient {
         }
     }
 
+    /**
+     * Creates a client whose calls apply the given deadlines and cancellation token.
+     * The returned client shares connections with this one. The options are applied over those of
+     * this client: what they do not set keeps this client's setting, and a recorder or replayer
+     * they set is added to any this client already has.
+     * Implementations other than FaceServiceRestClient do not support options by default.
+     * @param options The request options.
+     * @return The client applying the options.
+     * @throws UnsupportedOperationException If this client does not support request options.
+     */
+    default FaceServiceClient withRequestOptions(RequestOptions options) {
+        throw new UnsupportedOperationException("Request options are not supported by " + getClass().getName());
+    }
+
     /*   mark Face   */
 
     /**
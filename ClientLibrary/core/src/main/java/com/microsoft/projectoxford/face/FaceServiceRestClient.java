@@ -55,6 +55,10 @@ import com.microsoft.projectoxford.face.contract.SimilarPersistedFace;
 import com.microsoft.projectoxford.face.contract.TrainingStatus;
 import com.microsoft.projectoxford.face.contract.VerifyResult;
 import com.microsoft.projectoxford.face.rest.ClientException;
+import com.microsoft.projectoxford.face.rest.ImageUploadPipe;
+import com.microsoft.projectoxford.face.rest.RequestOptions;
+import com.microsoft.projectoxford.face.rest.RequestScheduler;
+import com.microsoft.projectoxford.face.rest.SubscriptionKeyPool;
 import com.microsoft.projectoxford.face.rest.WebServiceRequest;
 
 import java.io.ByteArrayOutputStream;
@@ -95,8 +99,40 @@ public class FaceServiceRestClient implements FaceServiceClient {
     }
 
     public FaceServiceRestClient(String serviceHost, String subscriptionKey) {
+        this(serviceHost, subscriptionKey, null);
+    }
+
+    /**
+     * Creates a client whose requests are admitted by priority class.
+     * Use {@link #withRequestOptions} to pick the priority of the calls.
+     * @param serviceHost The service host.
+     * @param subscriptionKey The subscription key.
+     * @param scheduler The request scheduler shared by all calls of this client.
+     */
+    public FaceServiceRestClient(String serviceHost, String subscriptionKey, RequestScheduler scheduler) {
+        this(serviceHost, new SubscriptionKeyPool(subscriptionKey), scheduler);
+    }
+
+    /**
+     * Creates a client that spreads its requests over several subscription keys.
+     * Keys can be added to and removed from the pool without rebuilding the client.
+     * @param serviceHost The service host, used for the keys without an endpoint of their own.
+     * @param keyPool The subscription key pool.
+     * @param scheduler The request scheduler shared by all calls of this client, or null.
+     */
+    public FaceServiceRestClient(String serviceHost, SubscriptionKeyPool keyPool, RequestScheduler scheduler) {
         mServiceHost = serviceHost.replaceAll("/$", "");
-        mRestCall = new WebServiceRequest(subscriptionKey);
+        mRestCall = new WebServiceRequest(keyPool, scheduler);
+    }
+
+    private FaceServiceRestClient(String serviceHost, WebServiceRequest restCall) {
+        mServiceHost = serviceHost;
+        mRestCall = restCall;
+    }
+
+    @Override
+    public FaceServiceClient withRequestOptions(RequestOptions options) {
+        return new FaceServiceRestClient(mServiceHost, mRestCall.withOptions(options));
     }
 
     /*
@@ -166,13 +202,7 @@ public class FaceServiceRestClient implements FaceServiceClient {
         String path = String.format("%s/%s", mServiceHost, DETECT_QUERY);
         String uri = WebServiceRequest.getUrl(path, params);
 
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        int bytesRead;
-        byte[] bytes = new byte[1024];
-        while ((bytesRead = imageStream.read(bytes)) > 0) {
-            byteArrayOutputStream.write(bytes, 0, bytesRead);
-        }
-        byte[] data = byteArrayOutputStream.toByteArray();
+        Object data = readImage(imageStream);
         params.clear();
         params.put(DATA, data);
 
@@ -668,13 +698,7 @@ public class FaceServiceRestClient implements FaceServiceClient {
 
         String uri = WebServiceRequest.getUrl(path, params);
 
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        int bytesRead;
-        byte[] bytes = new byte[1024];
-        while ((bytesRead = imageStream.read(bytes)) > 0) {
-            byteArrayOutputStream.write(bytes, 0, bytesRead);
-        }
-        byte[] data = byteArrayOutputStream.toByteArray();
+        Object data = readImage(imageStream);
         params.clear();
         params.put(DATA, data);
 
@@ -830,13 +854,7 @@ public class FaceServiceRestClient implements FaceServiceClient {
 
         String uri = WebServiceRequest.getUrl(path, params);
 
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        int bytesRead;
-        byte[] bytes = new byte[1024];
-        while ((bytesRead = imageStream.read(bytes)) > 0) {
-            byteArrayOutputStream.write(bytes, 0, bytesRead);
-        }
-        byte[] data = byteArrayOutputStream.toByteArray();
+        Object data = readImage(imageStream);
         params.clear();
         params.put(DATA, data);
 
@@ -959,13 +977,7 @@ public class FaceServiceRestClient implements FaceServiceClient {
 
         String uri = WebServiceRequest.getUrl(path, params);
 
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        int bytesRead;
-        byte[] bytes = new byte[1024];
-        while ((bytesRead = imageStream.read(bytes)) > 0) {
-            byteArrayOutputStream.write(bytes, 0, bytesRead);
-        }
-        byte[] data = byteArrayOutputStream.toByteArray();
+        Object data = readImage(imageStream);
         params.clear();
         params.put(DATA, data);
         String json = (String)mRestCall.request(uri, RequestMethod.POST, params, STREAM_DATA);
@@ -1102,13 +1114,7 @@ public class FaceServiceRestClient implements FaceServiceClient {
 
         String uri = WebServiceRequest.getUrl(path, params);
 
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        int bytesRead;
-        byte[] bytes = new byte[1024];
-        while ((bytesRead = imageStream.read(bytes)) > 0) {
-            byteArrayOutputStream.write(bytes, 0, bytesRead);
-        }
-        byte[] data = byteArrayOutputStream.toByteArray();
+        Object data = readImage(imageStream);
         params.clear();
         params.put(DATA, data);
         String json = (String)mRestCall.request(uri, RequestMethod.POST, params, STREAM_DATA);
@@ -1168,4 +1174,20 @@ public class FaceServiceRestClient implements FaceServiceClient {
     public FaceMetadata[] listFacesFromLargeFaceList(String largeFaceListId) throws ClientException, IOException {
         return listFacesFromLargeFaceList(largeFaceListId, "", 1000);
     }
+
+    // A piped image is streamed as it is written, any other is read first to be sent with its length.
+    private Object readImage(InputStream imageStream) throws IOException {
+        return ImageUploadPipe.isPiped(imageStream) ? imageStream : readImageBytes(imageStream);
+    }
+
+    private byte[] readImageBytes(InputStream imageStream) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        int bytesRead;
+        byte[] bytes = new byte[1024];
+        while ((bytesRead = imageStream.read(bytes)) > 0) {
+            mRestCall.throwIfCancelled();
+            byteArrayOutputStream.write(bytes, 0, bytesRead);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
 }
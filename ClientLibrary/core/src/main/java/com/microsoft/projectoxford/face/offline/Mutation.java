@@ -0,0 +1,79 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.offline;
+
+import com.microsoft.projectoxford.face.contract.FaceRectangle;
+
+import java.util.UUID;
+
+/**
+ * A mutation of a large person group waiting in the offline mutation queue.
+ */
+public class Mutation {
+    public enum Type {
+        CREATE_PERSON,
+
+        UPDATE_PERSON,
+
+        ADD_PERSON_FACE,
+
+        DELETE_PERSON_FACE
+    }
+
+    public long sequence;
+
+    public Type type;
+
+    public String largePersonGroupId;
+
+    /**
+     * The person the mutation applies to. For a person created offline, the local id returned by the queue.
+     */
+    public UUID personId;
+
+    /**
+     * The persisted face the mutation applies to. For a face added offline, the local id returned by the queue.
+     */
+    public UUID persistedFaceId;
+
+    public String name;
+
+    public String userData;
+
+    public FaceRectangle targetFace;
+
+    /**
+     * The SHA-256 of the image of a face to add, under which the journal stores the image.
+     */
+    public String imageHash;
+}
@@ -0,0 +1,261 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.offline;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only journal of the offline mutation queue, one JSON record per line, with the images
+ * of the faces to add stored once per content hash. Every append is synced to disk before it
+ * returns. A record torn by a crash at the end of the journal is cut off when reading.
+ */
+class MutationJournal {
+    private static final String JOURNAL_FILE = "mutations.journal";
+    private static final String COMPACTED_FILE = "mutations.journal.tmp";
+    private static final String IMAGES_DIRECTORY = "images";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Gson mGson = new Gson();
+    private final File mDirectory;
+    private final File mImagesDirectory;
+    private FileOutputStream mOutputStream;
+    private Writer mWriter;
+
+    static class Record {
+        static final String MUTATION = "mutation";
+        static final String DONE = "done";
+        static final String FAILED = "failed";
+        static final String RESOLVED = "resolved";
+
+        String kind;
+
+        Mutation mutation;
+
+        long sequence;
+
+        // The local id of a person or face created offline, in a resolved record.
+        UUID localId;
+
+        UUID resultId;
+
+        String message;
+    }
+
+    MutationJournal(File directory) throws IOException {
+        mDirectory = directory;
+        mImagesDirectory = new File(directory, IMAGES_DIRECTORY);
+        if (!mImagesDirectory.isDirectory() && !mImagesDirectory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + mImagesDirectory);
+        }
+    }
+
+    // The records in the journal, oldest first. A torn record at the end is removed from the file.
+    List<Record> read() throws IOException {
+        List<Record> records = new ArrayList<>();
+        File file = new File(mDirectory, JOURNAL_FILE);
+        if (!file.exists()) {
+            return records;
+        }
+
+        mLock.lock();
+        try (RandomAccessFile journal = new RandomAccessFile(file, "rw")) {
+            byte[] bytes = new byte[(int) journal.length()];
+            journal.readFully(bytes);
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            if (end < bytes.length) {
+                // Torn write at the end of the journal, which was never acknowledged. Cut it off,
+                // or the next append would continue its line and be lost with it.
+                journal.setLength(end);
+                journal.getFD().sync();
+            }
+
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new ByteArrayInputStream(bytes, 0, end), UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    Record record = mGson.fromJson(line, Record.class);
+                    if (record != null && record.kind != null) {
+                        records.add(record);
+                    }
+                } catch (JsonParseException e) {
+                    // A record damaged on disk, the others are still valid.
+                }
+            }
+        } finally {
+            mLock.unlock();
+        }
+        return records;
+    }
+
+    void append(Record record) throws IOException {
+        String line = mGson.toJson(record) + "\n";
+        mLock.lock();
+        try {
+            if (mWriter == null) {
+                mOutputStream = new FileOutputStream(new File(mDirectory, JOURNAL_FILE), true);
+                mWriter = new OutputStreamWriter(mOutputStream, UTF_8);
+            }
+            mWriter.write(line);
+            mWriter.flush();
+            mOutputStream.getFD().sync();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the journal with the given records, and keeps only the images they reference.
+     */
+    void compact(List<Record> records, Set<String> imageHashes) throws IOException {
+        mLock.lock();
+        try {
+            File compacted = new File(mDirectory, COMPACTED_FILE);
+            try (FileOutputStream outputStream = new FileOutputStream(compacted)) {
+                Writer writer = new OutputStreamWriter(outputStream, UTF_8);
+                for (Record record : records) {
+                    writer.write(mGson.toJson(record));
+                    writer.write("\n");
+                }
+                writer.flush();
+                outputStream.getFD().sync();
+            }
+
+            closeWriter();
+            File journal = new File(mDirectory, JOURNAL_FILE);
+            if (!compacted.renameTo(journal) && !(journal.delete() && compacted.renameTo(journal))) {
+                throw new IOException("Cannot replace journal " + journal);
+            }
+
+            File[] images = mImagesDirectory.listFiles();
+            if (images != null) {
+                for (File image : images) {
+                    if (!imageHashes.contains(image.getName())) {
+                        image.delete();
+                    }
+                }
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Stores an image under its content hash, once however many mutations use it.
+     * @return The hash of the image.
+     */
+    String putImage(byte[] image) throws IOException {
+        String hash = sha256(image);
+        mLock.lock();
+        try {
+            File file = new File(mImagesDirectory, hash);
+            if (file.exists()) {
+                return hash;
+            }
+
+            File temporary = new File(mImagesDirectory, hash + ".tmp");
+            try (FileOutputStream outputStream = new FileOutputStream(temporary)) {
+                outputStream.write(image);
+                outputStream.getFD().sync();
+            }
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Cannot store image " + file);
+            }
+            return hash;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    byte[] getImage(String hash) throws IOException {
+        File file = new File(mImagesDirectory, hash);
+        byte[] image = new byte[(int) file.length()];
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < image.length) {
+                int count = inputStream.read(image, offset, image.length - offset);
+                if (count < 0) {
+                    throw new IOException("Truncated image " + file);
+                }
+                offset += count;
+            }
+        }
+        return image;
+    }
+
+    private void closeWriter() throws IOException {
+        if (mWriter != null) {
+            mWriter.close();
+            mWriter = null;
+            mOutputStream = null;
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
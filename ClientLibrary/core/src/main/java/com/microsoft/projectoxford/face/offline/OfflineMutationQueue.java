@@ -0,0 +1,463 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.offline;
+
+import com.microsoft.projectoxford.face.FaceServiceClient;
+import com.microsoft.projectoxford.face.contract.FaceRectangle;
+import com.microsoft.projectoxford.face.rest.ClientException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queues mutations of large person groups made while the service cannot be reached, and replays
+ * them once it can. Each mutation is written to a journal on disk before the call returns, so
+ * queued mutations survive the process being killed.
+ *
+ * Persons and faces created offline get a local id right away, which later mutations may refer
+ * to. On replay the local ids are replaced by the ids the service returns, mutations of the same
+ * person run in the order they were queued, and mutations of different persons run concurrently.
+ */
+public class OfflineMutationQueue {
+    private static final int READ_CHUNK_SIZE = 8192;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final ReentrantLock mReplayLock = new ReentrantLock();
+    private final FaceServiceClient mClient;
+    private final MutationJournal mJournal;
+    private final Map<Long, Mutation> mPending = new LinkedHashMap<>();
+    private final Map<UUID, UUID> mResolvedIds = new HashMap<>();
+    private final Set<UUID> mFailedIds = new HashSet<>();
+    private long mNextSequence;
+    private volatile Listener mListener;
+
+    /**
+     * Receives the outcome of each replayed mutation, on the thread that replayed it.
+     */
+    public interface Listener {
+        /**
+         * @param mutation The mutation applied by the service.
+         * @param resultId The id of the person or face created by the mutation, or null for other mutations.
+         */
+        void onCompleted(Mutation mutation, UUID resultId);
+
+        /**
+         * @param mutation The mutation rejected by the service. It is removed from the queue.
+         * @param exception The reason the service rejected it.
+         */
+        void onFailed(Mutation mutation, ClientException exception);
+    }
+
+    /**
+     * Opens the queue journaled in a directory, with the mutations still pending from before.
+     * @param directory The directory of the journal, created if needed.
+     * @param client The client replaying the mutations.
+     * @throws IOException If the journal cannot be read.
+     */
+    public OfflineMutationQueue(File directory, FaceServiceClient client) throws IOException {
+        mClient = client;
+        mJournal = new MutationJournal(directory);
+
+        for (MutationJournal.Record record : mJournal.read()) {
+            if (MutationJournal.Record.MUTATION.equals(record.kind)) {
+                mPending.put(record.mutation.sequence, record.mutation);
+                mNextSequence = Math.max(mNextSequence, record.mutation.sequence + 1);
+            } else if (MutationJournal.Record.RESOLVED.equals(record.kind)) {
+                mResolvedIds.put(record.localId, record.resultId);
+            } else {
+                Mutation mutation = mPending.remove(record.sequence);
+                if (mutation != null && record.resultId != null) {
+                    mResolvedIds.put(getCreatedId(mutation), record.resultId);
+                }
+            }
+        }
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Queues the creation of a person.
+     * @return The local id of the person, valid in later mutations.
+     */
+    public UUID createPersonInLargePersonGroup(String largePersonGroupId, String name, String userData) throws IOException {
+        Mutation mutation = new Mutation();
+        mutation.type = Mutation.Type.CREATE_PERSON;
+        mutation.largePersonGroupId = largePersonGroupId;
+        mutation.personId = UUID.randomUUID();
+        mutation.name = name;
+        mutation.userData = userData;
+        enqueue(mutation);
+        return mutation.personId;
+    }
+
+    /**
+     * Queues an update of the name and user data of a person.
+     */
+    public void updatePersonInLargePersonGroup(String largePersonGroupId, UUID personId, String name, String userData) throws IOException {
+        Mutation mutation = new Mutation();
+        mutation.type = Mutation.Type.UPDATE_PERSON;
+        mutation.largePersonGroupId = largePersonGroupId;
+        mutation.personId = personId;
+        mutation.name = name;
+        mutation.userData = userData;
+        enqueue(mutation);
+    }
+
+    /**
+     * Queues adding a face to a person. The image is read and stored in the journal before returning.
+     * @return The local id of the persisted face, valid in later mutations.
+     */
+    public UUID addPersonFaceInLargePersonGroup(String largePersonGroupId, UUID personId, InputStream imageStream, String userData, FaceRectangle targetFace) throws IOException {
+        Mutation mutation = new Mutation();
+        mutation.type = Mutation.Type.ADD_PERSON_FACE;
+        mutation.largePersonGroupId = largePersonGroupId;
+        mutation.personId = personId;
+        mutation.persistedFaceId = UUID.randomUUID();
+        mutation.userData = userData;
+        mutation.targetFace = targetFace;
+        mutation.imageHash = mJournal.putImage(readBytes(imageStream));
+        enqueue(mutation);
+        return mutation.persistedFaceId;
+    }
+
+    /**
+     * Queues deleting a face of a person.
+     */
+    public void deletePersonFaceInLargePersonGroup(String largePersonGroupId, UUID personId, UUID persistedFaceId) throws IOException {
+        Mutation mutation = new Mutation();
+        mutation.type = Mutation.Type.DELETE_PERSON_FACE;
+        mutation.largePersonGroupId = largePersonGroupId;
+        mutation.personId = personId;
+        mutation.persistedFaceId = persistedFaceId;
+        enqueue(mutation);
+    }
+
+    public int getPendingCount() {
+        mLock.lock();
+        try {
+            return mPending.size();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the id the service gave to a person or face created offline.
+     * @param localId The local id returned when the creation was queued.
+     * @return The id given by the service, or the local id if the creation has not been replayed yet.
+     */
+    public UUID resolveId(UUID localId) {
+        mLock.lock();
+        try {
+            return resolve(localId);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Replays the pending mutations. Mutations rejected by the service are dropped and reported to
+     * the listener. Mutations of a person stop at the first one failing on a network error,
+     * throttling or a server error, and stay queued for the next replay.
+     * @param concurrency The number of persons whose mutations are replayed at the same time.
+     * @return True if the queue is empty afterwards, false if mutations are still pending or
+     * another replay is already running.
+     * @throws IOException If the journal cannot be written.
+     */
+    public boolean replay(int concurrency) throws IOException {
+        if (!mReplayLock.tryLock()) {
+            return false;
+        }
+
+        try {
+            Map<UUID, List<Mutation>> lanes = new LinkedHashMap<>();
+            mLock.lock();
+            try {
+                for (Mutation mutation : mPending.values()) {
+                    UUID personId = resolve(mutation.personId);
+                    List<Mutation> lane = lanes.get(personId);
+                    if (lane == null) {
+                        lane = new ArrayList<>();
+                        lanes.put(personId, lane);
+                    }
+                    lane.add(mutation);
+                }
+            } finally {
+                mLock.unlock();
+            }
+
+            if (!lanes.isEmpty()) {
+                ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, lanes.size())));
+                try {
+                    List<Future<Void>> futures = new ArrayList<>();
+                    for (final List<Mutation> lane : lanes.values()) {
+                        futures.add(executor.submit(new Callable<Void>() {
+                            @Override
+                            public Void call() throws IOException {
+                                replayLane(lane);
+                                return null;
+                            }
+                        }));
+                    }
+                    for (Future<Void> future : futures) {
+                        future.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+
+            return compact();
+        } finally {
+            mReplayLock.unlock();
+        }
+    }
+
+    private void replayLane(List<Mutation> lane) throws IOException {
+        for (int i = 0; i < lane.size(); i++) {
+            Mutation mutation = lane.get(i);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            UUID resultId;
+            try {
+                resultId = apply(mutation);
+            } catch (IOException e) {
+                // The service cannot be reached, try again on the next replay.
+                return;
+            } catch (ClientException e) {
+                if (isTransient(e)) {
+                    return;
+                }
+
+                fail(mutation, e);
+                if (mutation.type == Mutation.Type.CREATE_PERSON) {
+                    // Everything else in the lane refers to the person that could not be created.
+                    for (int j = i + 1; j < lane.size(); j++) {
+                        fail(lane.get(j), e);
+                    }
+                    return;
+                }
+                continue;
+            }
+            complete(mutation, resultId);
+        }
+    }
+
+    private UUID apply(Mutation mutation) throws ClientException, IOException {
+        UUID personId;
+        UUID persistedFaceId;
+        mLock.lock();
+        try {
+            if (mFailedIds.contains(mutation.personId)) {
+                throw new ClientException("The person of this mutation could not be created.");
+            }
+            personId = resolve(mutation.personId);
+            persistedFaceId = resolve(mutation.persistedFaceId);
+        } finally {
+            mLock.unlock();
+        }
+
+        switch (mutation.type) {
+            case CREATE_PERSON:
+                return mClient.createPersonInLargePersonGroup(mutation.largePersonGroupId, mutation.name, mutation.userData).personId;
+            case UPDATE_PERSON:
+                mClient.updatePersonInLargePersonGroup(mutation.largePersonGroupId, personId, mutation.name, mutation.userData);
+                return null;
+            case ADD_PERSON_FACE:
+                byte[] image;
+                try {
+                    image = mJournal.getImage(mutation.imageHash);
+                } catch (IOException e) {
+                    throw new ClientException("The image of this mutation is missing from the journal.");
+                }
+                return mClient.addPersonFaceInLargePersonGroup(mutation.largePersonGroupId, personId,
+                        new ByteArrayInputStream(image), mutation.userData, mutation.targetFace).persistedFaceId;
+            case DELETE_PERSON_FACE:
+                mClient.deletePersonFaceInLargePersonGroup(mutation.largePersonGroupId, personId, persistedFaceId);
+                return null;
+            default:
+                throw new ClientException("Unknown mutation type " + mutation.type);
+        }
+    }
+
+    private void enqueue(Mutation mutation) throws IOException {
+        mLock.lock();
+        try {
+            mutation.sequence = mNextSequence++;
+            MutationJournal.Record record = new MutationJournal.Record();
+            record.kind = MutationJournal.Record.MUTATION;
+            record.mutation = mutation;
+            mJournal.append(record);
+            mPending.put(mutation.sequence, mutation);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void complete(Mutation mutation, UUID resultId) throws IOException {
+        mLock.lock();
+        try {
+            MutationJournal.Record record = new MutationJournal.Record();
+            record.kind = MutationJournal.Record.DONE;
+            record.sequence = mutation.sequence;
+            record.resultId = resultId;
+            mJournal.append(record);
+            mPending.remove(mutation.sequence);
+            if (resultId != null) {
+                mResolvedIds.put(getCreatedId(mutation), resultId);
+            }
+        } finally {
+            mLock.unlock();
+        }
+
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onCompleted(mutation, resultId);
+        }
+    }
+
+    private void fail(Mutation mutation, ClientException exception) throws IOException {
+        mLock.lock();
+        try {
+            MutationJournal.Record record = new MutationJournal.Record();
+            record.kind = MutationJournal.Record.FAILED;
+            record.sequence = mutation.sequence;
+            record.message = exception.getMessage();
+            mJournal.append(record);
+            mPending.remove(mutation.sequence);
+            if (mutation.type == Mutation.Type.CREATE_PERSON) {
+                mFailedIds.add(mutation.personId);
+            }
+        } finally {
+            mLock.unlock();
+        }
+
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onFailed(mutation, exception);
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the pending mutations, their local ids replaced by the ids
+     * already given by the service, and the ids given so far so that resolveId still finds them.
+     */
+    private boolean compact() throws IOException {
+        mLock.lock();
+        try {
+            List<MutationJournal.Record> records = new ArrayList<>();
+            for (Map.Entry<UUID, UUID> resolvedId : mResolvedIds.entrySet()) {
+                MutationJournal.Record record = new MutationJournal.Record();
+                record.kind = MutationJournal.Record.RESOLVED;
+                record.localId = resolvedId.getKey();
+                record.resultId = resolvedId.getValue();
+                records.add(record);
+            }
+
+            Set<String> imageHashes = new HashSet<>();
+            for (Mutation mutation : mPending.values()) {
+                mutation.personId = resolve(mutation.personId);
+                mutation.persistedFaceId = resolve(mutation.persistedFaceId);
+                if (mutation.imageHash != null) {
+                    imageHashes.add(mutation.imageHash);
+                }
+
+                MutationJournal.Record record = new MutationJournal.Record();
+                record.kind = MutationJournal.Record.MUTATION;
+                record.mutation = mutation;
+                records.add(record);
+            }
+            mJournal.compact(records, imageHashes);
+            return mPending.isEmpty();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private UUID resolve(UUID id) {
+        UUID resolved = id == null ? null : mResolvedIds.get(id);
+        return resolved == null ? id : resolved;
+    }
+
+    private static UUID getCreatedId(Mutation mutation) {
+        return mutation.type == Mutation.Type.CREATE_PERSON ? mutation.personId : mutation.persistedFaceId;
+    }
+
+    // Throttling and server errors are transient whatever error code the service put in the body.
+    private static boolean isTransient(ClientException exception) {
+        if (exception.statusCode == HTTP_TOO_MANY_REQUESTS || exception.statusCode >= HTTP_SERVER_ERROR) {
+            return true;
+        }
+        return "RateLimitExceeded".equals(exception.error.code);
+    }
+
+    private static byte[] readBytes(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[READ_CHUNK_SIZE];
+        int count;
+        while ((count = inputStream.read(buffer)) > 0) {
+            outputStream.write(buffer, 0, count);
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,197 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrency limit that adapts to the throughput the service actually gives.
+ * The limit grows additively while latency stays close to the lowest latency observed and the
+ * requests in flight use the limit, and shrinks multiplicatively on 429, 503, timeouts and
+ * latency inflation. Latency is compared per operation, such as detect or getting a person, since
+ * an image upload takes many times longer than a small read even when the service is idle.
+ * Install it with {@link RequestScheduler#RequestScheduler(AdaptiveConcurrencyLimit)}.
+ */
+public class AdaptiveConcurrencyLimit {
+    private static final int DEFAULT_INITIAL_LIMIT = 4;
+    private static final int DEFAULT_MIN_LIMIT = 1;
+    private static final int DEFAULT_MAX_LIMIT = 64;
+    private static final double DEFAULT_BACKOFF_RATIO = 0.8;
+    private static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+    private static final double SMOOTHING_FACTOR = 0.2;
+    private static final int MIN_RTT_WINDOW_SAMPLES = 500;
+
+    private final int mMinLimit;
+    private final int mMaxLimit;
+    private final double mBackoffRatio;
+    private final double mLatencyTolerance;
+
+    // Samples are fed under the lock of the scheduler, the fields are volatile for metric readers.
+    private volatile double mLimit;
+    private final Map<String, LatencyBaseline> mBaselines = new ConcurrentHashMap<>();
+    private long mLastDecreaseNanos;
+
+    public AdaptiveConcurrencyLimit() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * Creates an adaptive limit with the default backoff ratio of 0.8 and latency tolerance of 2.
+     * @param initialLimit The limit to start from.
+     * @param minLimit The lowest limit to back off to.
+     * @param maxLimit The highest limit to grow to.
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, DEFAULT_BACKOFF_RATIO, DEFAULT_LATENCY_TOLERANCE);
+    }
+
+    /**
+     * Creates an adaptive limit.
+     * @param initialLimit The limit to start from.
+     * @param minLimit The lowest limit to back off to.
+     * @param maxLimit The highest limit to grow to.
+     * @param backoffRatio The factor applied to the limit on overload, between 0 and 1.
+     * @param latencyTolerance The ratio of smoothed to lowest latency treated as overload.
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit,
+                                    double backoffRatio, double latencyTolerance) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1 || latencyTolerance <= 1) {
+            throw new IllegalArgumentException("backoffRatio must be in (0, 1) and latencyTolerance above 1");
+        }
+
+        mLimit = initialLimit;
+        mMinLimit = minLimit;
+        mMaxLimit = maxLimit;
+        mBackoffRatio = backoffRatio;
+        mLatencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Gets the current concurrency limit.
+     */
+    public int getLimit() {
+        return (int) mLimit;
+    }
+
+    public int getMaxLimit() {
+        return mMaxLimit;
+    }
+
+    /**
+     * Gets the lowest latency of an operation observed in the current window, the baseline of
+     * latency inflation, or 0 if the operation has not been sampled.
+     * @param operation The operation, as its method and path with the ids left out, such as "POST detect".
+     */
+    public double getMinRttMillis(String operation) {
+        LatencyBaseline baseline = mBaselines.get(operation);
+        return baseline != null ? baseline.mMinRttNanos / 1e6 : 0;
+    }
+
+    public double getSmoothedRttMillis(String operation) {
+        LatencyBaseline baseline = mBaselines.get(operation);
+        return baseline != null ? baseline.mSmoothedRttNanos / 1e6 : 0;
+    }
+
+    /**
+     * Feeds the outcome of one attempt of a request and returns the updated limit.
+     * @param operation The operation of the request.
+     * @param rttNanos The time the attempt took, until its response body was read.
+     * @param inFlight The number of requests in flight when the request completed, itself included.
+     * @param dropped Whether the request was throttled, rejected as unavailable or timed out.
+     */
+    int onSample(String operation, long rttNanos, int inFlight, boolean dropped) {
+        long now = System.nanoTime();
+        double limit = mLimit;
+        LatencyBaseline baseline = mBaselines.get(operation);
+        if (baseline == null) {
+            baseline = new LatencyBaseline();
+            mBaselines.put(operation, baseline);
+        }
+
+        if (dropped) {
+            limit = decrease(limit, baseline, now);
+        } else {
+            baseline.update(rttNanos);
+            if (baseline.mSmoothedRttNanos > baseline.mMinRttNanos * mLatencyTolerance) {
+                limit = decrease(limit, baseline, now);
+            } else if (inFlight * 2 >= limit) {
+                // Grow by about one per round of limit requests, and only while the limit is in use.
+                limit += 1.0 / limit;
+            }
+        }
+
+        mLimit = Math.max(mMinLimit, Math.min(mMaxLimit, limit));
+        return (int) mLimit;
+    }
+
+    // Back off at most once per round trip, so that one burst of failures counts as one signal.
+    private double decrease(double limit, LatencyBaseline baseline, long now) {
+        long holdOffNanos = Math.max((long) baseline.mSmoothedRttNanos, TimeUnit.MILLISECONDS.toNanos(10));
+        if (mLastDecreaseNanos != 0 && now - mLastDecreaseNanos < holdOffNanos) {
+            return limit;
+        }
+
+        mLastDecreaseNanos = now;
+        return limit * mBackoffRatio;
+    }
+
+    // The latency of one operation: smoothed, and the lowest of a window of samples.
+    private static class LatencyBaseline {
+        private volatile long mMinRttNanos;
+        private volatile double mSmoothedRttNanos;
+        private long mWindowMinRttNanos = Long.MAX_VALUE;
+        private int mWindowSamples;
+
+        void update(long rttNanos) {
+            mSmoothedRttNanos = mSmoothedRttNanos == 0
+                    ? rttNanos
+                    : mSmoothedRttNanos + SMOOTHING_FACTOR * (rttNanos - mSmoothedRttNanos);
+
+            // The baseline is the minimum of a window of samples, so that it follows route and region changes.
+            mWindowMinRttNanos = Math.min(mWindowMinRttNanos, rttNanos);
+            if (mMinRttNanos == 0 || rttNanos < mMinRttNanos) {
+                mMinRttNanos = rttNanos;
+            }
+            if (++mWindowSamples >= MIN_RTT_WINDOW_SAMPLES) {
+                mMinRttNanos = mWindowMinRttNanos;
+                mWindowMinRttNanos = Long.MAX_VALUE;
+                mWindowSamples = 0;
+            }
+        }
+    }
+}
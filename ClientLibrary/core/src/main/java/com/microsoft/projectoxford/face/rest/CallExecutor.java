@@ -0,0 +1,162 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking client calls concurrently, one thread per call, with at most a fixed number of
+ * calls in flight. Submitting blocks while the limit is reached, which keeps a producer loop from
+ * queueing more images than the client can send.
+ *
+ * On a JVM with virtual threads each call runs on its own virtual thread, so thousands of calls
+ * can wait on the service at once. The client only blocks on java.util.concurrent locks, so
+ * waiting calls do not pin their carrier threads. Elsewhere calls run on platform threads.
+ *
+ * The calls still go through the request scheduler of the client, whose concurrency limit
+ * should be raised to match when many calls are expected to be in flight.
+ */
+public class CallExecutor {
+    private final ExecutorService mExecutor;
+    private final Semaphore mPermits;
+    private final int mMaxInFlight;
+    private final boolean mVirtual;
+
+    /**
+     * Creates an executor running each call on a virtual thread, or on a platform thread if the
+     * JVM has no virtual threads.
+     * @param maxInFlight The maximum number of calls running at the same time.
+     */
+    public static CallExecutor newVirtualThreadExecutor(int maxInFlight) {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        if (executor != null) {
+            return new CallExecutor(executor, maxInFlight, true);
+        }
+        return newPlatformThreadExecutor(maxInFlight);
+    }
+
+    /**
+     * Creates an executor running each call on a platform daemon thread.
+     * @param maxInFlight The maximum number of calls running at the same time.
+     */
+    public static CallExecutor newPlatformThreadExecutor(int maxInFlight) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "face-call-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        return new CallExecutor(executor, maxInFlight, false);
+    }
+
+    private CallExecutor(ExecutorService executor, int maxInFlight, boolean virtual) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+
+        mExecutor = executor;
+        mPermits = new Semaphore(maxInFlight);
+        mMaxInFlight = maxInFlight;
+        mVirtual = virtual;
+    }
+
+    /**
+     * Starts a call, waiting first for a call in flight to complete if the limit is reached.
+     * @param call The blocking call, typically a method of FaceServiceClient.
+     * @return The future result of the call.
+     * @throws InterruptedException If interrupted while waiting for room.
+     */
+    public <T> Future<T> submit(final Callable<T> call) throws InterruptedException {
+        mPermits.acquire();
+        try {
+            return mExecutor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    try {
+                        return call.call();
+                    } finally {
+                        mPermits.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            mPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether calls run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return mVirtual;
+    }
+
+    public int getMaxInFlight() {
+        return mMaxInFlight;
+    }
+
+    public int getInFlightCount() {
+        return mMaxInFlight - mPermits.availablePermits();
+    }
+
+    /**
+     * Stops accepting calls. Calls already submitted run to completion.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return mExecutor.awaitTermination(timeout, unit);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() exists from Java 21 on, and the library is built for Java 8.
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
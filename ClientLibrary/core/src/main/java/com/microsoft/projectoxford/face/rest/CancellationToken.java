@@ -0,0 +1,115 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import okhttp3.Call;
+
+/**
+ * Cancels the in-flight and future calls made with the request options carrying this token.
+ */
+public class CancellationToken {
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Set<Call> mCalls = new HashSet<>();
+    private boolean mCancelled;
+
+    /**
+     * Cancels every call registered to this token, including any image upload in progress.
+     * Calls started after cancellation fail immediately.
+     */
+    public void cancel() {
+        Call[] calls;
+        mLock.lock();
+        try {
+            if (mCancelled) {
+                return;
+            }
+
+            mCancelled = true;
+            calls = mCalls.toArray(new Call[mCalls.size()]);
+            mCalls.clear();
+        } finally {
+            mLock.unlock();
+        }
+
+        for (Call call : calls) {
+            call.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        mLock.lock();
+        try {
+            return mCancelled;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Throws if the token has been cancelled.
+     * @throws IOException
+     */
+    public void throwIfCancelled() throws IOException {
+        if (isCancelled()) {
+            throw new IOException("Canceled");
+        }
+    }
+
+    void register(Call call) {
+        mLock.lock();
+        try {
+            if (!mCancelled) {
+                mCalls.add(call);
+                return;
+            }
+        } finally {
+            mLock.unlock();
+        }
+
+        call.cancel();
+    }
+
+    void unregister(Call call) {
+        mLock.lock();
+        try {
+            mCalls.remove(call);
+        } finally {
+            mLock.unlock();
+        }
+    }
+}
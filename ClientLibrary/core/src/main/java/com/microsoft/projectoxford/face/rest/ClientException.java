@@ -38,6 +38,11 @@ public class ClientException extends Exception {
 
     public ClientError error = new ClientError();
 
+    /**
+     * The HTTP status of the response, or 0 if the exception does not come from a response.
+     */
+    public int statusCode;
+
     public ClientException(ClientError clientError) {
         super(clientError.message);
 
@@ -45,11 +50,22 @@ public class ClientException extends Exception {
         error.message = clientError.message;
     }
 
+    /**
+     * Creates an exception from the error in the body of a response.
+     * @param clientError The error the service returned.
+     * @param statusCode The HTTP status of the response.
+     */
+    public ClientException(ClientError clientError, int statusCode) {
+        this(clientError);
+        this.statusCode = statusCode;
+    }
+
     public ClientException(String message, int statusCode) {
         super(message);
         Integer code = statusCode;
         error.code = code.toString();
         error.message = message;
+        this.statusCode = statusCode;
     }
 
     public ClientException(String message) {
@@ -0,0 +1,137 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Records the exchanges of the calls made with request options carrying it, to a compressed file
+ * that {@link ExchangeReplayer} plays back. Subscription keys, request headers and request bodies
+ * are not recorded, only a hash of the bodies. Each attempt is recorded, including throttled ones.
+ */
+public class ExchangeRecorder implements Closeable {
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final DataOutputStream mOutput;
+    private int mExchangeCount;
+    private boolean mClosed;
+
+    public ExchangeRecorder(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    public ExchangeRecorder(OutputStream outputStream) throws IOException {
+        mOutput = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(outputStream)));
+        mOutput.writeInt(RecordedExchange.MAGIC);
+        mOutput.writeInt(RecordedExchange.VERSION);
+    }
+
+    public int getExchangeCount() {
+        mLock.lock();
+        try {
+            return mExchangeCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Finishes the recording. Exchanges completing afterwards are not recorded.
+     */
+    @Override
+    public void close() throws IOException {
+        mLock.lock();
+        try {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mOutput.writeBoolean(false);
+            mOutput.close();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    Interceptor getInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = RecordedExchange.hashWhenSent(chain.request());
+                long startNanos = System.nanoTime();
+                Response response = chain.proceed(request);
+
+                RecordedExchange exchange = new RecordedExchange();
+                exchange.setRequest(request);
+                ResponseBody body = response.body();
+                exchange.responseBody = body == null ? new byte[0] : body.bytes();
+                exchange.durationMicros = (System.nanoTime() - startNanos) / 1000;
+                exchange.statusCode = response.code();
+                exchange.contentType = response.header("Content-Type");
+                exchange.retryAfter = response.header("Retry-After");
+                record(exchange);
+
+                // The body was consumed to record it, hand a copy to the caller.
+                MediaType mediaType = body == null ? null : body.contentType();
+                return response.newBuilder().body(ResponseBody.create(mediaType, exchange.responseBody)).build();
+            }
+        };
+    }
+
+    private void record(RecordedExchange exchange) throws IOException {
+        mLock.lock();
+        try {
+            if (mClosed) {
+                return;
+            }
+            mOutput.writeBoolean(true);
+            exchange.write(mOutput);
+            mExchangeCount++;
+        } finally {
+            mLock.unlock();
+        }
+    }
+}
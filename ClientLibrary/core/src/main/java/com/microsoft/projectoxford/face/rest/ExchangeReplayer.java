@@ -0,0 +1,179 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Answers the calls made with request options carrying it from exchanges recorded by
+ * {@link ExchangeRecorder}, without any network, for deterministic benchmarks of the client.
+ *
+ * A request gets the next recorded response to the same method, path, query and body, cycling
+ * through them when there are more requests than recorded. Responses take their recorded time,
+ * scaled by the time scale.
+ */
+public class ExchangeReplayer {
+    private final Map<String, Responses> mByBody = new HashMap<>();
+    private final Map<String, Responses> mByPath = new HashMap<>();
+    private final int mExchangeCount;
+    private volatile double mTimeScale = 1;
+    private volatile boolean mMatchRequestBodies = true;
+
+    private static class Responses {
+        final List<RecordedExchange> exchanges = new ArrayList<>();
+        final AtomicInteger next = new AtomicInteger();
+
+        RecordedExchange next() {
+            return exchanges.get((next.getAndIncrement() & Integer.MAX_VALUE) % exchanges.size());
+        }
+    }
+
+    public ExchangeReplayer(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    public ExchangeReplayer(InputStream inputStream) throws IOException {
+        int count = 0;
+        try (DataInputStream input = new DataInputStream(new GZIPInputStream(new BufferedInputStream(inputStream)))) {
+            if (input.readInt() != RecordedExchange.MAGIC || input.readInt() != RecordedExchange.VERSION) {
+                throw new IOException("Not a recording of exchanges");
+            }
+
+            while (input.readBoolean()) {
+                RecordedExchange exchange = RecordedExchange.read(input);
+                add(mByBody, exchange.getKey(true), exchange);
+                add(mByPath, exchange.getKey(false), exchange);
+                count++;
+            }
+        }
+        mExchangeCount = count;
+    }
+
+    /**
+     * Scales the recorded response times, 1 to replay them as recorded, 0 to answer right away.
+     */
+    public ExchangeReplayer setTimeScale(double timeScale) {
+        mTimeScale = timeScale;
+        return this;
+    }
+
+    /**
+     * Sets whether requests must have the body of the recorded request, true by default. Without
+     * it, requests get the responses recorded for their method, path and query whatever their body,
+     * such as identify calls with face ids from another run.
+     */
+    public ExchangeReplayer setMatchRequestBodies(boolean matchRequestBodies) {
+        mMatchRequestBodies = matchRequestBodies;
+        return this;
+    }
+
+    public int getExchangeCount() {
+        return mExchangeCount;
+    }
+
+    Interceptor getInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request();
+                RecordedExchange key = new RecordedExchange();
+                key.setRequest(request);
+
+                boolean matchBodies = mMatchRequestBodies;
+                Responses responses = (matchBodies ? mByBody : mByPath).get(key.getKey(matchBodies));
+                if (responses == null) {
+                    throw new IOException("No recorded exchange for " + key.getKey(matchBodies));
+                }
+
+                RecordedExchange exchange = responses.next();
+                sleep((long) (exchange.durationMicros * mTimeScale));
+                if (chain.call().isCanceled()) {
+                    throw new IOException("Canceled");
+                }
+
+                Response.Builder builder = new Response.Builder()
+                        .request(request)
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(exchange.statusCode)
+                        .message("Replayed")
+                        .body(ResponseBody.create(
+                                exchange.contentType == null ? null : MediaType.parse(exchange.contentType),
+                                exchange.responseBody));
+                if (exchange.retryAfter != null) {
+                    builder.header("Retry-After", exchange.retryAfter);
+                }
+                return builder.build();
+            }
+        };
+    }
+
+    private static void add(Map<String, Responses> index, String key, RecordedExchange exchange) {
+        Responses responses = index.get(key);
+        if (responses == null) {
+            responses = new Responses();
+            index.put(key, responses);
+        }
+        responses.exchanges.add(exchange);
+    }
+
+    private static void sleep(long micros) throws IOException {
+        if (micros <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while replaying");
+        }
+    }
+}
@@ -0,0 +1,142 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Pipe;
+
+/**
+ * An image that is uploaded while it is still being encoded. One thread writes the image to the
+ * output stream, while the input stream, passed to a client method such as detect, is sent as the
+ * request body as the bytes arrive. The two sides share a bounded buffer, so the encoder waits when
+ * the upload falls behind. With a single subscription key the image is never held whole in an
+ * extra array. With several, the bytes sent are kept until the response arrives, in case the request
+ * is throttled and sent again with another key.
+ *
+ * <p>The writer must close the output stream when the image is complete, or call {@link #fail} if it
+ * cannot be. If the request ends before the image is read, writes fail with an IOException.
+ */
+public class ImageUploadPipe {
+    /**
+     * The default size of the buffer between the encoder and the upload.
+     */
+    public static final long DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // A writer blocked this long on a full buffer gives up, in case the request was abandoned.
+    private static final long WRITE_TIMEOUT_SECONDS = 60;
+
+    private final Pipe mPipe;
+    private final BufferedSink mSink;
+    private final PipedInputStream mInputStream;
+    private volatile IOException mFailure;
+
+    public ImageUploadPipe() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public ImageUploadPipe(long bufferSize) {
+        mPipe = new Pipe(bufferSize);
+        mPipe.sink().timeout().timeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        mSink = Okio.buffer(mPipe.sink());
+        mInputStream = new PipedInputStream(Okio.buffer(mPipe.source()));
+    }
+
+    /**
+     * Gets the stream the image is written to. Close it once the image is complete.
+     */
+    public OutputStream getOutputStream() {
+        return mSink.outputStream();
+    }
+
+    /**
+     * Gets the stream to pass as the image of a client method.
+     */
+    public InputStream getInputStream() {
+        return mInputStream;
+    }
+
+    /**
+     * Ends the image early. The request reading it fails with the given exception instead of
+     * sending a truncated image.
+     */
+    public void fail(IOException failure) {
+        mFailure = failure;
+        try {
+            mSink.close();
+        } catch (IOException e) {
+            // The reading side is gone already.
+        }
+    }
+
+    /**
+     * Returns whether the stream is the input of a pipe, whose length is not known until it ends.
+     */
+    public static boolean isPiped(InputStream stream) {
+        return stream instanceof PipedInputStream;
+    }
+
+    private class PipedInputStream extends InputStream {
+        private final BufferedSource mSource;
+
+        PipedInputStream(BufferedSource source) {
+            mSource = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = mSource.read(b, off, len);
+            if (count == -1 && mFailure != null) {
+                throw mFailure;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mSource.close();
+        }
+    }
+}
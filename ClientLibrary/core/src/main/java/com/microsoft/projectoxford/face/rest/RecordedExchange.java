@@ -0,0 +1,214 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.TreeSet;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.ForwardingSink;
+import okio.HashingSink;
+import okio.Okio;
+
+/**
+ * A request and its response as recorded by {@link ExchangeRecorder}. Only what replay needs is
+ * kept: the request is reduced to its method, path, query and a hash of its body, so neither the
+ * subscription key nor the uploaded images end up in recordings.
+ */
+class RecordedExchange {
+    static final int MAGIC = 0x46524543;
+    static final int VERSION = 1;
+
+    String method;
+
+    String path;
+
+    byte[] requestBodyHash;
+
+    int statusCode;
+
+    String contentType;
+
+    String retryAfter;
+
+    byte[] responseBody;
+
+    long durationMicros;
+
+    /**
+     * Gets the key under which a request is matched to recorded exchanges.
+     * @param withBody Whether requests with different bodies are different.
+     */
+    String getKey(boolean withBody) {
+        return withBody ? method + " " + path + " " + toHex(requestBodyHash) : method + " " + path;
+    }
+
+    /**
+     * Sets the request to match. Its body is written out to hash it, so the request must not be sent.
+     */
+    void setRequest(Request request) throws IOException {
+        method = request.method();
+        path = normalize(request.url());
+        requestBodyHash = request.body() instanceof HashingBody
+                ? ((HashingBody) request.body()).getHash()
+                : hash(request);
+    }
+
+    /**
+     * Returns the request with its body wrapped to be hashed as it is sent, so that a piped image is
+     * not read ahead of the upload. Pass the request to setRequest once it has been sent.
+     */
+    static Request hashWhenSent(Request request) {
+        if (request.body() == null) {
+            return request;
+        }
+        return request.newBuilder().method(request.method(), new HashingBody(request.body())).build();
+    }
+
+    void write(DataOutputStream output) throws IOException {
+        output.writeUTF(method);
+        output.writeUTF(path);
+        output.writeShort(requestBodyHash.length);
+        output.write(requestBodyHash);
+        output.writeShort(statusCode);
+        output.writeUTF(contentType == null ? "" : contentType);
+        output.writeUTF(retryAfter == null ? "" : retryAfter);
+        output.writeInt(responseBody.length);
+        output.write(responseBody);
+        output.writeLong(durationMicros);
+    }
+
+    static RecordedExchange read(DataInputStream input) throws IOException {
+        RecordedExchange exchange = new RecordedExchange();
+        exchange.method = input.readUTF();
+        exchange.path = input.readUTF();
+        exchange.requestBodyHash = new byte[input.readUnsignedShort()];
+        input.readFully(exchange.requestBodyHash);
+        exchange.statusCode = input.readUnsignedShort();
+        exchange.contentType = emptyToNull(input.readUTF());
+        exchange.retryAfter = emptyToNull(input.readUTF());
+        exchange.responseBody = new byte[input.readInt()];
+        input.readFully(exchange.responseBody);
+        exchange.durationMicros = input.readLong();
+        return exchange;
+    }
+
+    // Path and query with the query parameters sorted, without the host, which differs between resources.
+    private static String normalize(HttpUrl url) {
+        StringBuilder builder = new StringBuilder(url.encodedPath());
+        char separator = '?';
+        for (String name : new TreeSet<>(url.queryParameterNames())) {
+            for (String value : url.queryParameterValues(name)) {
+                builder.append(separator).append(name).append('=').append(value);
+                separator = '&';
+            }
+        }
+        return builder.toString();
+    }
+
+    private static byte[] hash(Request request) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            if (request.body() != null) {
+                Buffer buffer = new Buffer();
+                request.body().writeTo(buffer);
+                digest.update(buffer.readByteArray());
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class HashingBody extends RequestBody {
+        private final RequestBody mBody;
+        private HashingSink mHashingSink;
+
+        HashingBody(RequestBody body) {
+            mBody = body;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mBody.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return mBody.contentLength();
+        }
+
+        // Each write starts a new hash, so a body written again is hashed once.
+        @Override
+        public void writeTo(final BufferedSink sink) throws IOException {
+            // Pass each write on as it comes, as the body would have emitted it.
+            mHashingSink = HashingSink.sha256(new ForwardingSink(sink) {
+                @Override
+                public void write(Buffer source, long byteCount) throws IOException {
+                    super.write(source, byteCount);
+                    sink.emit();
+                }
+            });
+            BufferedSink hashingSink = Okio.buffer(mHashingSink);
+            mBody.writeTo(hashingSink);
+            hashingSink.emit();
+        }
+
+        byte[] getHash() {
+            return (mHashingSink == null ? ByteString.EMPTY.sha256() : mHashingSink.hash()).toByteArray();
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,153 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call deadlines, cancellation, priority and recording applied to the requests of a face service client.
+ * Timeouts, token and priority that are not set keep those of the client the options are applied
+ * to, and 0 means no timeout.
+ */
+public class RequestOptions {
+    static final long NOT_SET = -1;
+
+    private long mConnectTimeoutMillis = NOT_SET;
+    private long mWriteTimeoutMillis = NOT_SET;
+    private long mReadTimeoutMillis = NOT_SET;
+    private long mCallTimeoutMillis = NOT_SET;
+    private CancellationToken mCancellationToken;
+    private RequestPriority mPriority;
+    private ExchangeRecorder mExchangeRecorder;
+    private ExchangeReplayer mExchangeReplayer;
+
+    /**
+     * Sets the timeout for establishing a connection.
+     */
+    public RequestOptions setConnectTimeout(long timeout, TimeUnit unit) {
+        mConnectTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Sets the timeout between two writes of the request body, which bounds stalled image uploads.
+     */
+    public RequestOptions setWriteTimeout(long timeout, TimeUnit unit) {
+        mWriteTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Sets the timeout between two reads of the response.
+     */
+    public RequestOptions setReadTimeout(long timeout, TimeUnit unit) {
+        mReadTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Sets the overall deadline of a call, from connecting to reading the whole response.
+     */
+    public RequestOptions setCallTimeout(long timeout, TimeUnit unit) {
+        mCallTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Sets the token that cancels the calls made with these options.
+     */
+    public RequestOptions setCancellationToken(CancellationToken cancellationToken) {
+        mCancellationToken = cancellationToken;
+        return this;
+    }
+
+    /**
+     * Sets the priority class under which a request scheduler admits the calls. Without it, the
+     * calls keep the priority of the client, interactive by default.
+     */
+    public RequestOptions setPriority(RequestPriority priority) {
+        mPriority = priority;
+        return this;
+    }
+
+    /**
+     * Records the exchanges of the calls made with these options.
+     */
+    public RequestOptions setExchangeRecorder(ExchangeRecorder exchangeRecorder) {
+        mExchangeRecorder = exchangeRecorder;
+        return this;
+    }
+
+    /**
+     * Answers the calls made with these options from a recording instead of the service.
+     */
+    public RequestOptions setExchangeReplayer(ExchangeReplayer exchangeReplayer) {
+        mExchangeReplayer = exchangeReplayer;
+        return this;
+    }
+
+    public long getConnectTimeoutMillis() {
+        return mConnectTimeoutMillis;
+    }
+
+    public long getWriteTimeoutMillis() {
+        return mWriteTimeoutMillis;
+    }
+
+    public long getReadTimeoutMillis() {
+        return mReadTimeoutMillis;
+    }
+
+    public long getCallTimeoutMillis() {
+        return mCallTimeoutMillis;
+    }
+
+    public CancellationToken getCancellationToken() {
+        return mCancellationToken;
+    }
+
+    /**
+     * Gets the priority set, or null if the calls keep the priority of the client.
+     */
+    public RequestPriority getPriority() {
+        return mPriority;
+    }
+
+    public ExchangeRecorder getExchangeRecorder() {
+        return mExchangeRecorder;
+    }
+
+    public ExchangeReplayer getExchangeReplayer() {
+        return mExchangeReplayer;
+    }
+}
@@ -0,0 +1,356 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admits requests by priority class, so that bulk traffic cannot starve interactive calls.
+ * Each class has its own concurrency limit and weight, and waiting classes share the free
+ * slots by weighted fair queuing. Queue time is recorded per class.
+ */
+public class RequestScheduler {
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 16;
+    private static final int DEFAULT_INTERACTIVE_WEIGHT = 4;
+    private static final int DEFAULT_BULK_WEIGHT = 1;
+    private static final long VIRTUAL_TIME_UNIT = 1 << 20;
+    private static final long CANCEL_POLL_MILLIS = 50;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final PriorityClass[] mClasses = new PriorityClass[RequestPriority.values().length];
+    private final AdaptiveConcurrencyLimit mAdaptiveLimit;
+    private int mMaxConcurrentRequests;
+    private int mInFlight;
+    private long mVirtualClock;
+
+    public RequestScheduler() {
+        this(DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Creates a scheduler. Interactive calls may use every slot, bulk calls at most half of them.
+     * @param maxConcurrentRequests The maximum number of requests in flight across all classes.
+     */
+    public RequestScheduler(int maxConcurrentRequests) {
+        this(maxConcurrentRequests, maxConcurrentRequests, null);
+    }
+
+    /**
+     * Creates a scheduler whose maximum number of requests in flight follows an adaptive limit.
+     * Interactive calls may use every slot, bulk calls at most half of the highest limit.
+     * @param adaptiveLimit The adaptive concurrency limit fed with the outcome of every request.
+     */
+    public RequestScheduler(AdaptiveConcurrencyLimit adaptiveLimit) {
+        this(adaptiveLimit.getLimit(), adaptiveLimit.getMaxLimit(), adaptiveLimit);
+    }
+
+    private RequestScheduler(int maxConcurrentRequests, int classLimit, AdaptiveConcurrencyLimit adaptiveLimit) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be positive");
+        }
+
+        mMaxConcurrentRequests = maxConcurrentRequests;
+        mAdaptiveLimit = adaptiveLimit;
+        mClasses[RequestPriority.INTERACTIVE.ordinal()] =
+                new PriorityClass(classLimit, DEFAULT_INTERACTIVE_WEIGHT);
+        mClasses[RequestPriority.BULK.ordinal()] =
+                new PriorityClass(Math.max(1, classLimit / 2), DEFAULT_BULK_WEIGHT);
+    }
+
+    /**
+     * Sets the concurrency limit and the fair queuing weight of a priority class.
+     * @param priority The priority class.
+     * @param maxConcurrentRequests The maximum number of requests of the class in flight.
+     * @param weight The share of free slots given to the class relative to the others.
+     */
+    public void setClassLimit(RequestPriority priority, int maxConcurrentRequests, int weight) {
+        if (maxConcurrentRequests < 1 || weight < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests and weight must be positive");
+        }
+
+        mLock.lock();
+        try {
+            PriorityClass priorityClass = mClasses[priority.ordinal()];
+            priorityClass.mLimit = maxConcurrentRequests;
+            priorityClass.mWeight = weight;
+            dispatch();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the maximum number of requests in flight across all classes.
+     * @throws IllegalStateException if the maximum follows an adaptive limit.
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be positive");
+        }
+        if (mAdaptiveLimit != null) {
+            throw new IllegalStateException("The maximum follows the adaptive concurrency limit");
+        }
+
+        mLock.lock();
+        try {
+            mMaxConcurrentRequests = maxConcurrentRequests;
+            dispatch();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the maximum number of requests in flight, which is the current adaptive limit if any.
+     */
+    public int getMaxConcurrentRequests() {
+        mLock.lock();
+        try {
+            return mMaxConcurrentRequests;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the queue time statistics of a priority class.
+     */
+    public QueueStats getQueueStats(RequestPriority priority) {
+        mLock.lock();
+        try {
+            return mClasses[priority.ordinal()].mStats.copy();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until a request of the given class may start.
+     * @throws IOException if the cancellation token is cancelled or the thread is interrupted while waiting.
+     */
+    void acquire(RequestPriority priority, CancellationToken cancellationToken) throws IOException {
+        PriorityClass priorityClass = mClasses[priority.ordinal()];
+        long enqueuedNanos = System.nanoTime();
+
+        mLock.lock();
+        try {
+            Waiter waiter = new Waiter(mLock.newCondition());
+            if (priorityClass.mWaiters.isEmpty()) {
+                // A class returning from idle must not spend credit banked while it had nothing to send.
+                priorityClass.mVirtualTime = Math.max(priorityClass.mVirtualTime, mVirtualClock);
+            }
+            priorityClass.mWaiters.addLast(waiter);
+            dispatch();
+
+            try {
+                while (!waiter.mGranted) {
+                    if (cancellationToken != null && cancellationToken.isCancelled()) {
+                        priorityClass.mWaiters.remove(waiter);
+                        throw new IOException("Canceled");
+                    }
+                    if (cancellationToken != null) {
+                        waiter.mCondition.await(CANCEL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    } else {
+                        waiter.mCondition.await();
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (waiter.mGranted) {
+                    release(priority);
+                } else {
+                    priorityClass.mWaiters.remove(waiter);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request slot");
+            }
+
+            priorityClass.mStats.record(System.nanoTime() - enqueuedNanos);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot taken by a request of the given class.
+     */
+    void release(RequestPriority priority) {
+        mLock.lock();
+        try {
+            mClasses[priority.ordinal()].mInFlight--;
+            mInFlight--;
+            dispatch();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Feeds the outcome of one attempt of a request to the adaptive limit, if any. The request
+     * keeps its slot until it is released.
+     * @param operation The operation of the request, its method and path with the ids left out.
+     * @param rttNanos The time the attempt took, until its response body was read.
+     * @param dropped Whether the request was throttled, rejected as unavailable or timed out.
+     */
+    void onSample(String operation, long rttNanos, boolean dropped) {
+        if (mAdaptiveLimit == null) {
+            return;
+        }
+
+        mLock.lock();
+        try {
+            mMaxConcurrentRequests = mAdaptiveLimit.onSample(operation, rttNanos, mInFlight, dropped);
+            dispatch();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    // Grants free slots to the eligible class with the smallest virtual time. Must hold mLock.
+    private void dispatch() {
+        while (mInFlight < mMaxConcurrentRequests) {
+            PriorityClass next = null;
+            for (PriorityClass priorityClass : mClasses) {
+                if (priorityClass.mWaiters.isEmpty() || priorityClass.mInFlight >= priorityClass.mLimit) {
+                    continue;
+                }
+                if (next == null || priorityClass.mVirtualTime < next.mVirtualTime) {
+                    next = priorityClass;
+                }
+            }
+
+            if (next == null) {
+                return;
+            }
+
+            Waiter waiter = next.mWaiters.removeFirst();
+            waiter.mGranted = true;
+            next.mInFlight++;
+            mInFlight++;
+            mVirtualClock = next.mVirtualTime;
+            next.mVirtualTime += VIRTUAL_TIME_UNIT / next.mWeight;
+            waiter.mCondition.signal();
+        }
+    }
+
+    /**
+     * Queue time statistics of a priority class. Percentiles are approximated by power-of-two
+     * millisecond buckets.
+     */
+    public static class QueueStats {
+        private static final int BUCKET_COUNT = 32;
+
+        private final long[] mBuckets = new long[BUCKET_COUNT];
+        private long mCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public double getMeanMillis() {
+            return mCount == 0 ? 0 : mTotalNanos / (double) mCount / 1e6;
+        }
+
+        public double getMaxMillis() {
+            return mMaxNanos / 1e6;
+        }
+
+        /**
+         * Gets the upper bound of the queue time below which the given fraction of requests fall.
+         * @param percentile The percentile, between 0 and 100.
+         */
+        public double getPercentileMillis(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(mCount * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return Math.min(1L << i, getMaxMillis());
+                }
+            }
+
+            return getMaxMillis();
+        }
+
+        void record(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = millis == 0 ? 0 : 64 - Long.numberOfLeadingZeros(millis);
+            mBuckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+            mCount++;
+            mTotalNanos += nanos;
+            mMaxNanos = Math.max(mMaxNanos, nanos);
+        }
+
+        QueueStats copy() {
+            QueueStats copy = new QueueStats();
+            System.arraycopy(mBuckets, 0, copy.mBuckets, 0, BUCKET_COUNT);
+            copy.mCount = mCount;
+            copy.mTotalNanos = mTotalNanos;
+            copy.mMaxNanos = mMaxNanos;
+            return copy;
+        }
+    }
+
+    private static class PriorityClass {
+        private final ArrayDeque<Waiter> mWaiters = new ArrayDeque<>();
+        private final QueueStats mStats = new QueueStats();
+        private int mLimit;
+        private int mWeight;
+        private int mInFlight;
+        private long mVirtualTime;
+
+        PriorityClass(int limit, int weight) {
+            mLimit = limit;
+            mWeight = weight;
+        }
+    }
+
+    private static class Waiter {
+        private final Condition mCondition;
+        private boolean mGranted;
+
+        Waiter(Condition condition) {
+            mCondition = condition;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import com.microsoft.projectoxford.face.common.RequestMethod;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Collapses identical reads in flight into one request whose response is shared by all callers.
+ * Reads are keyed on the normalized URL and on the options of the executor making them, so that a
+ * read only joins one made with the same timeouts, recorder and replayer. A caller waiting for a
+ * shared read still gives up at its own call timeout. Any write forgets the reads in flight, so
+ * that a read issued after a write never gets a response read before it.
+ */
+class SingleFlight {
+    private static final long CANCEL_POLL_MILLIS = 50;
+
+    // Operations sent as POST that do not change any state of the service.
+    private static final Set<String> READ_ONLY_POST_OPERATIONS = new HashSet<>(Arrays.asList(
+            "detect", "verify", "identify", "findsimilars", "group"));
+
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    private final Map<List<Object>, Flight> mFlights = new HashMap<>();
+
+    interface Loader {
+        String load() throws ClientException, IOException;
+    }
+
+    /**
+     * Loads the response of a read, or waits for the identical read in flight and shares its response.
+     * @param options What else than the URL has to match for two reads to be shared, compared with equals.
+     * @param callTimeoutMillis The call timeout of the caller, or 0 for none.
+     */
+    String execute(String url, Object options, long callTimeoutMillis, CancellationToken cancellationToken,
+                   Loader loader) throws ClientException, IOException {
+        List<Object> key = Arrays.asList(normalize(url), options);
+        long startNanos = System.nanoTime();
+        while (true) {
+            Flight flight;
+            boolean leader = false;
+            mLock.lock();
+            try {
+                flight = mFlights.get(key);
+                if (flight == null) {
+                    flight = new Flight();
+                    mFlights.put(key, flight);
+                    leader = true;
+                }
+            } finally {
+                mLock.unlock();
+            }
+
+            if (leader) {
+                return lead(key, flight, cancellationToken, loader);
+            }
+
+            await(flight, cancellationToken, startNanos, callTimeoutMillis);
+            if (flight.mLeaderCancelled) {
+                // The caller that made the request gave up, which says nothing about this caller.
+                continue;
+            }
+            if (flight.mClientException != null) {
+                throw flight.mClientException;
+            }
+            if (flight.mIOException != null) {
+                throw flight.mIOException;
+            }
+            return flight.mResult;
+        }
+    }
+
+    /**
+     * Whether a request may change state of the service that reads in flight could have read.
+     */
+    static boolean isWrite(String url, RequestMethod method) {
+        if (method == RequestMethod.GET || method == RequestMethod.HEAD || method == RequestMethod.OPTIONS) {
+            return false;
+        }
+        if (method != RequestMethod.POST) {
+            return true;
+        }
+
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            return true;
+        }
+        List<String> segments = httpUrl.pathSegments();
+        return !READ_ONLY_POST_OPERATIONS.contains(segments.get(segments.size() - 1));
+    }
+
+    /**
+     * Forgets the reads in flight. Called before and after every write.
+     */
+    void forgetInFlight() {
+        mLock.lock();
+        try {
+            mFlights.clear();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private String lead(List<Object> key, Flight flight, CancellationToken cancellationToken, Loader loader)
+            throws ClientException, IOException {
+        try {
+            flight.mResult = loader.load();
+            return flight.mResult;
+        } catch (ClientException e) {
+            flight.mClientException = e;
+            throw e;
+        } catch (IOException e) {
+            flight.mIOException = e;
+            flight.mLeaderCancelled = cancellationToken != null && cancellationToken.isCancelled();
+            throw e;
+        } catch (RuntimeException e) {
+            flight.mLeaderCancelled = true;
+            throw e;
+        } finally {
+            mLock.lock();
+            try {
+                if (mFlights.get(key) == flight) {
+                    mFlights.remove(key);
+                }
+            } finally {
+                mLock.unlock();
+            }
+            flight.mDone.countDown();
+        }
+    }
+
+    // Waits for the flight to land, until the caller is cancelled or its call timeout elapses.
+    private static void await(Flight flight, CancellationToken cancellationToken, long startNanos,
+                              long callTimeoutMillis) throws IOException {
+        try {
+            while (true) {
+                long waitMillis = cancellationToken == null ? Long.MAX_VALUE : CANCEL_POLL_MILLIS;
+                if (callTimeoutMillis > 0) {
+                    long remainingMillis = callTimeoutMillis
+                            - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                    if (remainingMillis <= 0) {
+                        throw new InterruptedIOException("timeout");
+                    }
+                    waitMillis = Math.min(waitMillis, remainingMillis);
+                }
+
+                if (flight.mDone.await(waitMillis, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                if (cancellationToken != null) {
+                    cancellationToken.throwIfCancelled();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an identical request");
+        }
+    }
+
+    // Scheme, host, port and path as normalized by OkHttp, with the query parameters sorted.
+    private static String normalize(String url) {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            return url;
+        }
+
+        HttpUrl.Builder builder = httpUrl.newBuilder().query(null);
+        for (String name : new TreeSet<>(httpUrl.queryParameterNames())) {
+            for (String value : httpUrl.queryParameterValues(name)) {
+                builder.addQueryParameter(name, value);
+            }
+        }
+        return builder.build().toString();
+    }
+
+    private static class Flight {
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private String mResult;
+        private ClientException mClientException;
+        private IOException mIOException;
+        private boolean mLeaderCancelled;
+    }
+}
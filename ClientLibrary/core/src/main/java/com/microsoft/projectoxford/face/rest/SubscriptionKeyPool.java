@@ -0,0 +1,323 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+/**
+ * Spreads requests over several subscription keys, each optionally bound to its own resource
+ * endpoint serving replicated data. Each request goes to the key with the most remaining quota
+ * and the fewest requests in flight. Keys answering 429 cool down for the time the service asks
+ * for, or for an exponentially growing time. Keys can be added and removed while requests run.
+ */
+public class SubscriptionKeyPool {
+    private static final long DEFAULT_COOL_DOWN_MILLIS = 1000;
+    private static final long MAX_COOL_DOWN_MILLIS = 60000;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    private final List<Key> mKeys = new ArrayList<>();
+
+    public SubscriptionKeyPool(String... subscriptionKeys) {
+        for (String subscriptionKey : subscriptionKeys) {
+            addKey(subscriptionKey);
+        }
+    }
+
+    /**
+     * Adds a key of the client's endpoint with an unknown quota.
+     */
+    public void addKey(String subscriptionKey) {
+        addKey(subscriptionKey, null, 0);
+    }
+
+    /**
+     * Adds a key, or updates it if already in the pool.
+     * @param subscriptionKey The subscription key.
+     * @param endpoint The endpoint of the resource of the key, such as https://eastus.api.cognitive.microsoft.com,
+     *                 or null to use the endpoint of the client.
+     * @param transactionsPerSecond The quota of the key, or 0 if unknown.
+     */
+    public void addKey(String subscriptionKey, String endpoint, double transactionsPerSecond) {
+        HttpUrl endpointUrl = null;
+        if (endpoint != null) {
+            endpointUrl = HttpUrl.parse(endpoint);
+            if (endpointUrl == null) {
+                throw new IllegalArgumentException("Invalid endpoint: " + endpoint);
+            }
+        }
+
+        mLock.lock();
+        try {
+            Key key = find(subscriptionKey);
+            if (key == null) {
+                key = new Key(subscriptionKey);
+                mKeys.add(key);
+            }
+            key.mEndpoint = endpointUrl;
+            key.mTransactionsPerSecond = transactionsPerSecond;
+            key.mTokens = transactionsPerSecond;
+            key.mRefilledNanos = System.nanoTime();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a key. Requests already sent with it complete normally.
+     * @return Whether the key was in the pool.
+     */
+    public boolean removeKey(String subscriptionKey) {
+        mLock.lock();
+        try {
+            Key key = find(subscriptionKey);
+            return key != null && mKeys.remove(key);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public int size() {
+        mLock.lock();
+        try {
+            return mKeys.size();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the usage of each key, with the keys masked.
+     */
+    public List<KeyStats> getKeyStats() {
+        long now = System.nanoTime();
+        List<KeyStats> stats = new ArrayList<>();
+        mLock.lock();
+        try {
+            for (Key key : mKeys) {
+                KeyStats keyStats = new KeyStats();
+                keyStats.maskedKey = mask(key.mSubscriptionKey);
+                keyStats.endpoint = key.mEndpoint == null ? null : key.mEndpoint.toString();
+                keyStats.inFlight = key.mInFlight;
+                keyStats.requestCount = key.mRequestCount;
+                keyStats.throttledCount = key.mThrottledCount;
+                keyStats.coolDownRemainingMillis = Math.max(0, (key.mCoolDownUntilNanos - now) / 1000000);
+                stats.add(keyStats);
+            }
+        } finally {
+            mLock.unlock();
+        }
+        return stats;
+    }
+
+    /**
+     * Picks the key for the next request. If every key is cooling down, picks the one ready first.
+     */
+    Key acquire() {
+        long now = System.nanoTime();
+        mLock.lock();
+        try {
+            if (mKeys.isEmpty()) {
+                throw new IllegalStateException("The subscription key pool is empty");
+            }
+
+            Key best = null;
+            double bestHeadroom = 0;
+            Key readyFirst = null;
+            for (Key key : mKeys) {
+                if (key.mCoolDownUntilNanos - now > 0) {
+                    if (readyFirst == null || key.mCoolDownUntilNanos - readyFirst.mCoolDownUntilNanos < 0) {
+                        readyFirst = key;
+                    }
+                    continue;
+                }
+
+                key.refill(now);
+                double headroom = (key.mTransactionsPerSecond > 0 ? key.mTokens : 0) - key.mInFlight;
+                if (best == null || headroom > bestHeadroom
+                        || (headroom == bestHeadroom && key.mRequestCount < best.mRequestCount)) {
+                    best = key;
+                    bestHeadroom = headroom;
+                }
+            }
+
+            if (best == null) {
+                best = readyFirst;
+            }
+            best.mTokens -= 1;
+            best.mInFlight++;
+            best.mRequestCount++;
+            return best;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Records the outcome of a request sent with a key.
+     * @param statusCode The response status code, or 0 if no response was received.
+     * @param retryAfter The Retry-After header of the response, if any.
+     */
+    void release(Key key, int statusCode, String retryAfter) {
+        mLock.lock();
+        try {
+            key.mInFlight--;
+            if (statusCode != HTTP_TOO_MANY_REQUESTS) {
+                if (statusCode != 0) {
+                    key.mConsecutiveThrottles = 0;
+                }
+                return;
+            }
+
+            key.mThrottledCount++;
+            key.mConsecutiveThrottles++;
+            key.mTokens = Math.min(key.mTokens, 0);
+            long coolDownMillis = parseRetryAfterMillis(retryAfter);
+            if (coolDownMillis <= 0) {
+                int shift = Math.min(key.mConsecutiveThrottles - 1, 16);
+                coolDownMillis = Math.min(DEFAULT_COOL_DOWN_MILLIS << shift, MAX_COOL_DOWN_MILLIS);
+            }
+            key.mCoolDownUntilNanos = System.nanoTime() + coolDownMillis * 1000000;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Whether a key other than the given one can take a request right away.
+     */
+    boolean hasAvailableKey(Key except) {
+        long now = System.nanoTime();
+        mLock.lock();
+        try {
+            for (Key key : mKeys) {
+                if (key != except && key.mCoolDownUntilNanos - now <= 0) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the subscription key header of a request, and points it to the endpoint of the key.
+     */
+    static Request authorize(Request request, Key key, String header) {
+        Request.Builder builder = request.newBuilder().header(header, key.mSubscriptionKey);
+        if (key.mEndpoint != null) {
+            builder.url(request.url().newBuilder()
+                    .scheme(key.mEndpoint.scheme())
+                    .host(key.mEndpoint.host())
+                    .port(key.mEndpoint.port())
+                    .build());
+        }
+        return builder.build();
+    }
+
+    private Key find(String subscriptionKey) {
+        for (Key key : mKeys) {
+            if (key.mSubscriptionKey.equals(subscriptionKey)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    private static long parseRetryAfterMillis(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+
+        try {
+            return Math.min(Long.parseLong(retryAfter.trim()) * 1000, MAX_COOL_DOWN_MILLIS);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String mask(String subscriptionKey) {
+        int visible = Math.min(4, subscriptionKey.length() / 4);
+        return "****" + subscriptionKey.substring(subscriptionKey.length() - visible);
+    }
+
+    /**
+     * Usage of a subscription key.
+     */
+    public static class KeyStats {
+        public String maskedKey;
+
+        public String endpoint;
+
+        public int inFlight;
+
+        public long requestCount;
+
+        public long throttledCount;
+
+        public long coolDownRemainingMillis;
+    }
+
+    static class Key {
+        private final String mSubscriptionKey;
+        private HttpUrl mEndpoint;
+        private double mTransactionsPerSecond;
+        private double mTokens;
+        private long mRefilledNanos;
+        private int mInFlight;
+        private long mRequestCount;
+        private long mThrottledCount;
+        private int mConsecutiveThrottles;
+        private long mCoolDownUntilNanos = System.nanoTime();
+
+        Key(String subscriptionKey) {
+            mSubscriptionKey = subscriptionKey;
+        }
+
+        // Token bucket holding at most one second of quota.
+        private void refill(long now) {
+            if (mTransactionsPerSecond > 0) {
+                mTokens = Math.min(mTransactionsPerSecond,
+                        mTokens + (now - mRefilledNanos) / 1e9 * mTransactionsPerSecond);
+            }
+            mRefilledNanos = now;
+        }
+    }
+}
@@ -0,0 +1,607 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import com.google.gson.Gson;
+import com.microsoft.projectoxford.face.common.RequestMethod;
+import com.microsoft.projectoxford.face.common.ServiceError;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+
+public class WebServiceRequest {
+    private static final String HEADER_KEY = "ocp-apim-subscription-key";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String APPLICATION_JSON = "application/json";
+    private static final String OCTET_STREAM = "octet-stream";
+    private static final String DATA = "data";
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final int STREAM_CHUNK_SIZE = 8192;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+    private static final Pattern API_VERSION_SEGMENT = Pattern.compile("v\\d+\\.\\d+");
+
+    private final OkHttpClient mClient;
+    private final CancellationToken mCancellationToken;
+    private final RequestScheduler mScheduler;
+    private final RequestPriority mPriority;
+    private final SubscriptionKeyPool mKeyPool;
+    private final SingleFlight mSingleFlight;
+    private Gson mGson = new Gson();
+
+    public WebServiceRequest(String key) {
+        this(key, null);
+    }
+
+    /**
+     * Creates a request executor whose requests are admitted by the given scheduler.
+     * @param key The subscription key.
+     * @param scheduler The request scheduler, or null to start every request immediately.
+     */
+    public WebServiceRequest(String key, RequestScheduler scheduler) {
+        this(new SubscriptionKeyPool(key), scheduler);
+    }
+
+    /**
+     * Creates a request executor that spreads its requests over a pool of subscription keys.
+     * @param keyPool The subscription key pool, which may change while requests run.
+     * @param scheduler The request scheduler, or null to start every request immediately.
+     */
+    public WebServiceRequest(SubscriptionKeyPool keyPool, RequestScheduler scheduler) {
+        this.mKeyPool = keyPool;
+        this.mSingleFlight = new SingleFlight();
+        this.mClient = new OkHttpClient();
+        this.mCancellationToken = null;
+        this.mScheduler = scheduler;
+        this.mPriority = RequestPriority.INTERACTIVE;
+    }
+
+    private WebServiceRequest(WebServiceRequest base, RequestOptions options) {
+        this.mKeyPool = base.mKeyPool;
+        this.mSingleFlight = base.mSingleFlight;
+        this.mCancellationToken = options.getCancellationToken() != null
+                ? options.getCancellationToken()
+                : base.mCancellationToken;
+        this.mScheduler = base.mScheduler;
+        this.mPriority = options.getPriority() != null ? options.getPriority() : base.mPriority;
+
+        // Derived clients share the connection pool and dispatcher of the base client.
+        OkHttpClient.Builder builder = base.mClient.newBuilder();
+        if (options.getConnectTimeoutMillis() != RequestOptions.NOT_SET) {
+            builder.connectTimeout(options.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (options.getWriteTimeoutMillis() != RequestOptions.NOT_SET) {
+            builder.writeTimeout(options.getWriteTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (options.getReadTimeoutMillis() != RequestOptions.NOT_SET) {
+            builder.readTimeout(options.getReadTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (options.getCallTimeoutMillis() != RequestOptions.NOT_SET) {
+            builder.callTimeout(options.getCallTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (options.getExchangeRecorder() != null) {
+            builder.addInterceptor(options.getExchangeRecorder().getInterceptor());
+        }
+        if (options.getExchangeReplayer() != null) {
+            builder.addInterceptor(options.getExchangeReplayer().getInterceptor());
+        }
+        this.mClient = builder.build();
+    }
+
+    /**
+     * Creates a request executor that applies the given deadlines and cancellation token over the
+     * options of this one, sharing connections with it.
+     */
+    public WebServiceRequest withOptions(RequestOptions options) {
+        return new WebServiceRequest(this, options);
+    }
+
+    /**
+     * Throws if the cancellation token of this request executor has been cancelled.
+     * @throws IOException
+     */
+    public void throwIfCancelled() throws IOException {
+        if (mCancellationToken != null) {
+            mCancellationToken.throwIfCancelled();
+        }
+    }
+
+    /**
+     * Sends a request. Identical GET requests in flight at the same time share one response.
+     */
+    public Object request(String url, RequestMethod method, Map<String, Object> data, String contentType) throws ClientException, IOException {
+        Object stream = data != null ? data.get(DATA) : null;
+        if (stream instanceof InputStream) {
+            // Stop the writer of a piped image once the request is over, whether or not it was read.
+            try {
+                return requestOnce(url, method, data, contentType);
+            } finally {
+                ((InputStream) stream).close();
+            }
+        }
+        return requestOnce(url, method, data, contentType);
+    }
+
+    private Object requestOnce(String url, RequestMethod method, Map<String, Object> data, String contentType) throws ClientException, IOException {
+        if (method == RequestMethod.GET) {
+            return get(url);
+        }
+        if (!SingleFlight.isWrite(url, method)) {
+            return send(url, method, data, contentType);
+        }
+
+        mSingleFlight.forgetInFlight();
+        try {
+            return send(url, method, data, contentType);
+        } finally {
+            mSingleFlight.forgetInFlight();
+        }
+    }
+
+    private Object send(String url, RequestMethod method, Map<String, Object> data, String contentType) throws ClientException, IOException {
+        switch (method) {
+            case GET:
+                return get(url);
+            case HEAD:
+                break;
+            case POST:
+                return post(url, data, contentType);
+            case PATCH:
+                return patch(url, data, contentType);
+            case DELETE:
+                return delete(url, data);
+            case PUT:
+                return put(url, data);
+            case OPTIONS:
+                break;
+            case TRACE:
+                break;
+        }
+
+        return null;
+    }
+
+    private Object get(final String url) throws ClientException, IOException {
+        SingleFlight.Loader loader = new SingleFlight.Loader() {
+            @Override
+            public String load() throws ClientException, IOException {
+                return getOnce(url);
+            }
+        };
+        return mSingleFlight.execute(url, getFlightOptions(), mClient.callTimeoutMillis(), mCancellationToken, loader);
+    }
+
+    // Reads are only shared between executors whose requests would go through the same interceptors,
+    // such as a recorder or replayer, and give up at the same time.
+    private List<Object> getFlightOptions() {
+        return Arrays.<Object>asList(mClient.connectTimeoutMillis(), mClient.writeTimeoutMillis(),
+                mClient.readTimeoutMillis(), mClient.callTimeoutMillis(), mClient.interceptors());
+    }
+
+    private String getOnce(String url) throws ClientException, IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .get()
+                .build();
+
+        Response response = execute(request);
+        if (response.isSuccessful()) {
+            return readInput(response);
+        } else {
+            String json = readInput(response);
+            if (json != null) {
+                ServiceError error = mGson.fromJson(json, ServiceError.class);
+                if (error != null) {
+                    throw new ClientException(error.error, response.code());
+                }
+            }
+
+            throw new ClientException("Error executing GET request!", response.code());
+        }
+    }
+
+
+    private Object patch(String url, Map<String, Object> data, String contentType) throws ClientException, IOException {
+        String json = mGson.toJson(data);
+
+        Request request = new Request.Builder()
+                .url(url)
+                .patch(RequestBody.create(MediaType.get(APPLICATION_JSON), json))
+                .header(CONTENT_TYPE, APPLICATION_JSON)
+                .build();
+
+        Response response = execute(request);
+
+        if (response.isSuccessful()) {
+            return readInput(response);
+        } else {
+            json = readInput(response);
+            if (json != null) {
+                ServiceError error = mGson.fromJson(json, ServiceError.class);
+                if (error != null) {
+                    throw new ClientException(error.error, response.code());
+                }
+            }
+
+            throw new ClientException("Error executing Patch request!", response.code());
+        }
+    }
+
+
+    private Object post(String url, Map<String, Object> data, String contentType) throws ClientException, IOException {
+        Request.Builder builder = new Request.Builder()
+                .url(url);
+
+        boolean isStream = false;
+
+        if (contentType != null && !(contentType.length() == 0)) {
+            builder.header(CONTENT_TYPE, contentType);
+
+            if (contentType.toLowerCase(Locale.ENGLISH).contains(OCTET_STREAM)) {
+                isStream = true;
+            }
+        } else {
+            builder.header(CONTENT_TYPE, APPLICATION_JSON);
+        }
+
+        if (!isStream) {
+            String json = mGson.toJson(data);
+            builder.post(RequestBody.create(MediaType.get(APPLICATION_JSON), json));
+        } else {
+            Object stream = data.get(DATA);
+            builder.post(stream instanceof InputStream
+                    ? new PipedBody(MediaType.get(contentType), (InputStream) stream, mKeyPool.size() > 1)
+                    : createStreamBody(MediaType.get(contentType), (byte[]) stream));
+        }
+
+        Response response = execute(builder.build());
+
+        if (response.isSuccessful()) {
+            return readInput(response);
+        } else {
+            String json = readInput(response);
+            if (json != null) {
+                ServiceError error = mGson.fromJson(json, ServiceError.class);
+                if (error != null) {
+                    throw new ClientException(error.error, response.code());
+                }
+            }
+
+            throw new ClientException("Error executing POST request!", response.code());
+        }
+    }
+
+    private Object put(String url, Map<String, Object> data) throws ClientException, IOException {
+        String json = mGson.toJson(data);
+
+        Request request = new Request.Builder()
+                .url(url)
+                .header(CONTENT_TYPE, APPLICATION_JSON)
+                .put(RequestBody.create(MediaType.get(APPLICATION_JSON), json))
+                .build();
+
+        Response response = execute(request);
+
+        if (response.isSuccessful()) {
+            return readInput(response);
+        } else {
+            json = readInput(response);
+            if (json != null) {
+                ServiceError error = mGson.fromJson(json, ServiceError.class);
+                if (error != null) {
+                    throw new ClientException(error.error, response.code());
+                }
+            }
+
+            throw new ClientException("Error executing PUT request!", response.code());
+        }
+    }
+
+
+    private Object delete(String url, Map<String, Object> data) throws ClientException, IOException {
+        Request.Builder builder = new Request.Builder()
+                .url(url);
+
+        if (data == null || data.isEmpty()) {
+            builder.delete();
+        } else {
+            String json = mGson.toJson(data);
+            builder.delete(RequestBody.create(MediaType.get(APPLICATION_JSON), json));
+            builder.header(CONTENT_TYPE, APPLICATION_JSON);
+        }
+
+        Response response = execute(builder.build());
+
+        if (!response.isSuccessful()) {
+            String json = readInput(response);
+            if (json != null) {
+                ServiceError error = mGson.fromJson(json, ServiceError.class);
+                if (error != null) {
+                    throw new ClientException(error.error, response.code());
+                }
+            }
+
+            throw new ClientException("Error executing DELETE request!", response.code());
+        }
+
+        return readInput(response);
+    }
+
+
+    public static String getUrl(String path, Map<String, Object> params) {
+        StringBuilder url = new StringBuilder(path);
+
+        boolean start = true;
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            if (start) {
+                url.append("?");
+                start = false;
+            } else {
+                url.append("&");
+            }
+
+            try {
+                url.append(param.getKey());
+                url.append("=");
+                url.append(URLEncoder.encode(param.getValue().toString(), "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return url.toString();
+    }
+
+    private Response execute(Request request) throws IOException {
+        if (mScheduler == null) {
+            return executeAndRelease(request);
+        }
+
+        mScheduler.acquire(mPriority, mCancellationToken);
+        try {
+            return executeAndRelease(request);
+        } finally {
+            mScheduler.release(mPriority);
+        }
+    }
+
+    // No attempt is left once the call returns, stop keeping what was sent of a piped image.
+    private Response executeAndRelease(Request request) throws IOException {
+        try {
+            return executeCall(request);
+        } finally {
+            if (request.body() instanceof PipedBody) {
+                ((PipedBody) request.body()).release();
+            }
+        }
+    }
+
+    // Sends the request with the best key of the pool. A throttled request is sent again
+    // with another key as long as one is not cooling down. Only the last attempt is fed to the
+    // adaptive limit, since a key out of quota does not mean the service is overloaded.
+    private Response executeCall(Request request) throws IOException {
+        String operation = getOperation(request);
+        int attempts = mKeyPool.size();
+        while (true) {
+            SubscriptionKeyPool.Key key = mKeyPool.acquire();
+            long startNanos = System.nanoTime();
+            Response response;
+            try {
+                response = executeOnce(SubscriptionKeyPool.authorize(request, key, HEADER_KEY));
+            } catch (IOException e) {
+                mKeyPool.release(key, 0, null);
+                if (mCancellationToken == null || !mCancellationToken.isCancelled()) {
+                    // Timeouts and connection failures are overload signals as much as 503s are.
+                    onSample(operation, System.nanoTime() - startNanos, true);
+                }
+                throw e;
+            } catch (RuntimeException e) {
+                mKeyPool.release(key, 0, null);
+                throw e;
+            }
+
+            int code = response.code();
+            mKeyPool.release(key, code, response.header(RETRY_AFTER));
+            if (code != HTTP_TOO_MANY_REQUESTS || --attempts <= 0 || !mKeyPool.hasAvailableKey(key)) {
+                onSample(operation, System.nanoTime() - startNanos,
+                        code == HTTP_TOO_MANY_REQUESTS || code == HTTP_SERVICE_UNAVAILABLE);
+                return response;
+            }
+            response.close();
+        }
+    }
+
+    private void onSample(String operation, long rttNanos, boolean dropped) {
+        if (mScheduler != null) {
+            mScheduler.onSample(operation, rttNanos, dropped);
+        }
+    }
+
+    // The operation of a request is its method and the path after the API version with the ids
+    // left out, such as "GET largepersongroups/*/persons/*". Face API paths alternate collection
+    // names and ids.
+    private static String getOperation(Request request) {
+        List<String> segments = request.url().pathSegments();
+        int start = 0;
+        for (int i = 0; i < segments.size(); ++i) {
+            if (API_VERSION_SEGMENT.matcher(segments.get(i)).matches()) {
+                start = i + 1;
+                break;
+            }
+        }
+
+        StringBuilder operation = new StringBuilder(request.method());
+        for (int i = start; i < segments.size(); ++i) {
+            operation.append(i == start ? ' ' : '/');
+            operation.append((i - start) % 2 == 0 ? segments.get(i) : "*");
+        }
+        return operation.toString();
+    }
+
+    // The call stays registered with the cancellation token until the body has been read, so that
+    // cancelling also stops a slow response body.
+    private Response executeOnce(Request request) throws IOException {
+        Call call = mClient.newCall(request);
+        if (mCancellationToken == null) {
+            return readBody(call.execute());
+        }
+
+        mCancellationToken.register(call);
+        try {
+            return readBody(call.execute());
+        } finally {
+            mCancellationToken.unregister(call);
+        }
+    }
+
+    // Reads and closes the body of the response, and returns the response with the body in memory.
+    private static Response readBody(Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (body == null) {
+            return response;
+        }
+
+        byte[] bytes = body.bytes();
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), bytes))
+                .build();
+    }
+
+    // Writes the image in chunks so that a cancelled upload stops between chunks
+    // even before the cancelled call closes the socket.
+    private RequestBody createStreamBody(final MediaType mediaType, final byte[] bytes) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return mediaType;
+            }
+
+            @Override
+            public long contentLength() {
+                return bytes.length;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                for (int offset = 0; offset < bytes.length; offset += STREAM_CHUNK_SIZE) {
+                    throwIfCancelled();
+                    sink.write(bytes, offset, Math.min(STREAM_CHUNK_SIZE, bytes.length - offset));
+                }
+            }
+        };
+    }
+
+    // Sends a piped image as it is written, with chunked encoding since its length is not known.
+    // The bytes sent are kept only while the request may be sent again with another subscription
+    // key, and dropped once no attempt is left. A body that was not kept cannot be written twice.
+    private class PipedBody extends RequestBody {
+        private final MediaType mMediaType;
+        private final InputStream mStream;
+        private Buffer mSent;
+        private boolean mStarted;
+        private boolean mEnded;
+
+        PipedBody(MediaType mediaType, InputStream stream, boolean resendable) {
+            mMediaType = mediaType;
+            mStream = stream;
+            mSent = resendable ? new Buffer() : null;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mMediaType;
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            if (mStarted) {
+                if (mSent == null) {
+                    throw new IOException("The piped image cannot be sent again");
+                }
+                mSent.copyTo(sink.buffer(), 0, mSent.size());
+                sink.emit();
+            }
+            mStarted = true;
+
+            byte[] chunk = new byte[STREAM_CHUNK_SIZE];
+            while (!mEnded) {
+                throwIfCancelled();
+                int count = mStream.read(chunk);
+                if (count == -1) {
+                    mEnded = true;
+                    break;
+                }
+                if (mSent != null) {
+                    mSent.write(chunk, 0, count);
+                }
+                sink.write(chunk, 0, count);
+                sink.emit();
+            }
+        }
+
+        void release() {
+            mSent = null;
+        }
+    }
+
+    private String readInput(Response response) throws IOException {
+        if (response.body() == null) {
+            return null;
+        }
+
+        return response.body().string();
+    }
+}
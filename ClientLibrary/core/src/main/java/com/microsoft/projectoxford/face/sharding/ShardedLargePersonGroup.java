@@ -0,0 +1,456 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.sharding;
+
+import com.microsoft.projectoxford.face.FaceServiceClient;
+import com.microsoft.projectoxford.face.contract.AddPersistedFaceResult;
+import com.microsoft.projectoxford.face.contract.Candidate;
+import com.microsoft.projectoxford.face.contract.CreatePersonResult;
+import com.microsoft.projectoxford.face.contract.FaceRectangle;
+import com.microsoft.projectoxford.face.contract.IdentifyResult;
+import com.microsoft.projectoxford.face.contract.TrainingStatus;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
+import com.microsoft.projectoxford.face.rest.ClientException;
+import com.microsoft.projectoxford.face.rest.RequestOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A population of persons too large for one large person group, spread across several. Each person
+ * is placed in a shard by consistent hashing of a key chosen by the caller, such as a user id, so
+ * the shard of a person can be found again from the key alone. Identification asks all the shards
+ * at once and merges their candidates, and training runs the shards in parallel.
+ *
+ * Adding a shard moves only the keys of about one shard's share of the ring. Persons already
+ * enrolled stay in the group they were created in, so the caller has to re-enroll the moved ones.
+ */
+public class ShardedLargePersonGroup {
+    // Points of each shard on the hash ring, so that persons spread evenly across shards.
+    private static final int RING_POINTS_PER_SHARD = 128;
+
+    private static final long TRAINING_POLL_INTERVAL_MILLIS = 1000;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ShardedLargePersonGroup");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    // Threads asking the shards, shared by all sharded groups. Calls beyond them wait in line.
+    private static final int MAX_SHARD_THREADS = 16;
+    private static final long SHARD_THREAD_KEEP_ALIVE_SECONDS = 60;
+    private static final ExecutorService SHARD_EXECUTOR = newShardExecutor();
+
+    // Threads training the shards. Training polls for minutes, so it does not hold the shared
+    // threads, and its concurrency is bounded by the training permits instead.
+    private static final ExecutorService TRAINING_EXECUTOR = Executors.newCachedThreadPool(THREAD_FACTORY);
+
+    private final FaceServiceClient mClient;
+    private final List<String> mShardIds;
+    private final TreeMap<Long, String> mRing = new TreeMap<>();
+    private final Semaphore mTrainingPermits;
+
+    /**
+     * @param client The client calling the service.
+     * @param largePersonGroupIds The ids of the large person groups the persons are spread across.
+     * @param maxConcurrentTrainings The maximum number of groups training at the same time, across
+     *                               all calls to train.
+     */
+    public ShardedLargePersonGroup(FaceServiceClient client, List<String> largePersonGroupIds, int maxConcurrentTrainings) {
+        if (largePersonGroupIds.isEmpty()) {
+            throw new IllegalArgumentException("largePersonGroupIds must not be empty");
+        }
+        if (maxConcurrentTrainings < 1) {
+            throw new IllegalArgumentException("maxConcurrentTrainings must be positive");
+        }
+
+        mClient = client;
+        mShardIds = Collections.unmodifiableList(new ArrayList<>(largePersonGroupIds));
+        mTrainingPermits = new Semaphore(maxConcurrentTrainings);
+        for (String shardId : mShardIds) {
+            for (int i = 0; i < RING_POINTS_PER_SHARD; ++i) {
+                mRing.put(hash(shardId + "#" + i), shardId);
+            }
+        }
+    }
+
+    public List<String> getShardIds() {
+        return mShardIds;
+    }
+
+    /**
+     * Gets the large person group a person with the given key is placed in.
+     */
+    public String getShardId(String personKey) {
+        Map.Entry<Long, String> entry = mRing.ceilingEntry(hash(personKey));
+        return entry != null ? entry.getValue() : mRing.firstEntry().getValue();
+    }
+
+    /**
+     * Creates the large person groups of all the shards.
+     * @param name The name of the population. Each group is named after it and its shard.
+     * @param userData The user data of each group.
+     */
+    public void create(final String name, final String userData) throws ClientException, IOException {
+        List<ShardCall<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < mShardIds.size(); ++i) {
+            final String shardId = mShardIds.get(i);
+            final String shardName = name + " (" + (i + 1) + "/" + mShardIds.size() + ")";
+            calls.add(new ShardCall<Void>() {
+                @Override
+                public Void call(FaceServiceClient client) throws ClientException, IOException {
+                    client.createLargePersonGroup(shardId, shardName, userData);
+                    return null;
+                }
+            });
+        }
+        invokeAll(calls, SHARD_EXECUTOR);
+    }
+
+    /**
+     * Creates a person in the shard of its key.
+     */
+    public CreatePersonResult createPerson(String personKey, String name, String userData) throws ClientException, IOException {
+        return mClient.createPersonInLargePersonGroup(getShardId(personKey), name, userData);
+    }
+
+    /**
+     * Adds a face to a person created with the same key.
+     */
+    public AddPersistedFaceResult addPersonFace(String personKey, UUID personId, String url, String userData, FaceRectangle targetFace) throws ClientException, IOException {
+        return mClient.addPersonFaceInLargePersonGroup(getShardId(personKey), personId, url, userData, targetFace);
+    }
+
+    /**
+     * Adds a face to a person created with the same key.
+     */
+    public AddPersistedFaceResult addPersonFace(String personKey, UUID personId, InputStream imageStream, String userData, FaceRectangle targetFace) throws ClientException, IOException {
+        return mClient.addPersonFaceInLargePersonGroup(getShardId(personKey), personId, imageStream, userData, targetFace);
+    }
+
+    /**
+     * Identifies faces in all the shards at once.
+     * @param faceIds The detected faces, as for identityInLargePersonGroup.
+     * @param confidenceThreshold The confidence below which candidates are left out.
+     * @param maxNumOfCandidatesReturned The number of candidates kept for each face across all shards.
+     * @return One result for each face, in the order of faceIds. Its candidates are ShardedCandidates
+     *         in descending order of confidence.
+     */
+    public IdentifyResult[] identify(UUID[] faceIds, float confidenceThreshold, int maxNumOfCandidatesReturned) throws ClientException, IOException {
+        List<ShardCall<IdentifyResult[]>> calls = new ArrayList<>();
+        for (String shardId : mShardIds) {
+            calls.add(newIdentifyCall(shardId, faceIds, confidenceThreshold, maxNumOfCandidatesReturned));
+        }
+        return merge(faceIds, invokeAll(calls, SHARD_EXECUTOR), maxNumOfCandidatesReturned);
+    }
+
+    /**
+     * Identifies faces in all the shards at once, and returns when the timeout elapses with the
+     * candidates of the shards that answered in time. A shard that fails counts as not answering.
+     * The calls of the shards that did not answer are cancelled, and none outlives the timeout.
+     * @param faceIds The detected faces, as for identityInLargePersonGroup.
+     * @param confidenceThreshold The confidence below which candidates are left out.
+     * @param maxNumOfCandidatesReturned The number of candidates kept for each face across the shards.
+     * @param timeout The time to wait for the shards.
+     * @param unit The unit of the timeout.
+     * @return The merged results and the shards they come from.
+     * @throws ClientException If every shard failed, the failure of the first.
+     */
+    public PartialIdentifyResult identify(UUID[] faceIds, float confidenceThreshold, int maxNumOfCandidatesReturned, long timeout, TimeUnit unit) throws ClientException, IOException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<CancellationToken> tokens = new ArrayList<>();
+        List<Future<IdentifyResult[]>> futures = new ArrayList<>();
+        try {
+            for (String shardId : mShardIds) {
+                // A call timeout of 0 would mean none, so give at least a millisecond.
+                CancellationToken token = new CancellationToken();
+                FaceServiceClient client = withRequestOptions(new RequestOptions()
+                        .setCancellationToken(token)
+                        .setCallTimeout(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())),
+                                TimeUnit.MILLISECONDS));
+                tokens.add(token);
+                futures.add(SHARD_EXECUTOR.submit(bind(
+                        newIdentifyCall(shardId, faceIds, confidenceThreshold, maxNumOfCandidatesReturned), client)));
+            }
+
+            PartialIdentifyResult partialResult = new PartialIdentifyResult();
+            List<IdentifyResult[]> shardResults = new ArrayList<>();
+            Throwable failure = null;
+            for (int i = 0; i < futures.size(); ++i) {
+                boolean completed = false;
+                try {
+                    shardResults.add(futures.get(i).get(
+                            Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                    completed = true;
+                } catch (TimeoutException e) {
+                    // Cancelled below with the others still running.
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+                partialResult.shardsCompleted.put(mShardIds.get(i), completed);
+            }
+
+            if (shardResults.isEmpty() && failure != null) {
+                if (failure instanceof ClientException) {
+                    throw (ClientException) failure;
+                } else if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                throw new IllegalStateException(failure);
+            }
+            partialResult.results = merge(faceIds, shardResults, maxNumOfCandidatesReturned);
+            return partialResult;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            // Abort the reads of the shards still answering, and the calls still waiting for a thread.
+            for (int i = 0; i < futures.size(); ++i) {
+                if (!futures.get(i).isDone()) {
+                    futures.get(i).cancel(false);
+                    tokens.get(i).cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * Trains all the shards, at most the maximum number of them at the same time, and waits until
+     * they are trained.
+     * @throws ClientException If a shard failed to train. The other shards are trained still.
+     */
+    public void train() throws ClientException, IOException {
+        List<ShardCall<TrainingStatus>> calls = new ArrayList<>();
+        for (final String shardId : mShardIds) {
+            calls.add(new ShardCall<TrainingStatus>() {
+                @Override
+                public TrainingStatus call(FaceServiceClient client) throws ClientException, IOException, InterruptedException {
+                    mTrainingPermits.acquire();
+                    try {
+                        return trainShard(client, shardId);
+                    } finally {
+                        mTrainingPermits.release();
+                    }
+                }
+            });
+        }
+
+        List<TrainingStatus> statuses = invokeAll(calls, TRAINING_EXECUTOR);
+        for (int i = 0; i < statuses.size(); ++i) {
+            TrainingStatus status = statuses.get(i);
+            if (status.status == TrainingStatus.Status.Failed) {
+                throw new ClientException("Training " + mShardIds.get(i) + " failed: " + status.message);
+            }
+        }
+    }
+
+    // Identify in one shard, with candidates naming the shard.
+    private static ShardCall<IdentifyResult[]> newIdentifyCall(final String shardId, final UUID[] faceIds, final float confidenceThreshold, final int maxNumOfCandidatesReturned) {
+        return new ShardCall<IdentifyResult[]>() {
+            @Override
+            public IdentifyResult[] call(FaceServiceClient client) throws ClientException, IOException {
+                IdentifyResult[] results = client.identityInLargePersonGroup(
+                        shardId, faceIds, confidenceThreshold, maxNumOfCandidatesReturned);
+                for (IdentifyResult result : results) {
+                    List<Candidate> candidates = new ArrayList<>();
+                    for (Candidate candidate : result.candidates) {
+                        ShardedCandidate shardedCandidate = new ShardedCandidate();
+                        shardedCandidate.personId = candidate.personId;
+                        shardedCandidate.confidence = candidate.confidence;
+                        shardedCandidate.largePersonGroupId = shardId;
+                        candidates.add(shardedCandidate);
+                    }
+                    result.candidates = candidates;
+                }
+                return results;
+            }
+        };
+    }
+
+    private static TrainingStatus trainShard(FaceServiceClient client, String shardId) throws ClientException, IOException, InterruptedException {
+        client.trainLargePersonGroup(shardId);
+        while (true) {
+            TrainingStatus status = client.getLargePersonGroupTrainingStatus(shardId);
+            if (status.status != TrainingStatus.Status.Running) {
+                return status;
+            }
+            Thread.sleep(TRAINING_POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    // Keep the most confident candidates of each face from all the shards.
+    private static IdentifyResult[] merge(UUID[] faceIds, List<IdentifyResult[]> shardResults, int maxNumOfCandidatesReturned) {
+        IdentifyResult[] results = new IdentifyResult[faceIds.length];
+        for (int i = 0; i < faceIds.length; ++i) {
+            results[i] = new IdentifyResult();
+            results[i].faceId = faceIds[i];
+        }
+        for (IdentifyResult[] shardResult : shardResults) {
+            for (IdentifyResult result : shardResult) {
+                for (int i = 0; i < faceIds.length; ++i) {
+                    if (faceIds[i].equals(result.faceId)) {
+                        results[i].candidates.addAll(result.candidates);
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (IdentifyResult result : results) {
+            Collections.sort(result.candidates, new Comparator<Candidate>() {
+                @Override
+                public int compare(Candidate candidate1, Candidate candidate2) {
+                    return Double.compare(candidate2.confidence, candidate1.confidence);
+                }
+            });
+            if (result.candidates.size() > maxNumOfCandidatesReturned) {
+                result.candidates = new ArrayList<>(result.candidates.subList(0, maxNumOfCandidatesReturned));
+            }
+        }
+        return results;
+    }
+
+    // Run the calls in parallel and return their results in order, or throw the first failure.
+    private <T> List<T> invokeAll(List<ShardCall<T>> calls, ExecutorService executor) throws ClientException, IOException {
+        List<CancellationToken> tokens = new ArrayList<>();
+        List<Future<T>> futures = new ArrayList<>();
+        try {
+            for (ShardCall<T> call : calls) {
+                CancellationToken token = new CancellationToken();
+                tokens.add(token);
+                futures.add(executor.submit(bind(call,
+                        withRequestOptions(new RequestOptions().setCancellationToken(token)))));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ClientException) {
+                throw (ClientException) e.getCause();
+            } else if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof InterruptedException) {
+                throw new InterruptedIOException();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // After a failure, abort the calls still running: the interrupt stops a training
+            // waiting to poll, and the token a request in flight.
+            for (int i = 0; i < futures.size(); ++i) {
+                if (!futures.get(i).isDone()) {
+                    futures.get(i).cancel(true);
+                    tokens.get(i).cancel();
+                }
+            }
+        }
+    }
+
+    // The client for the calls of one shard. A client without request options is used as is, and
+    // its calls in flight cannot be aborted.
+    private FaceServiceClient withRequestOptions(RequestOptions options) {
+        try {
+            return mClient.withRequestOptions(options);
+        } catch (UnsupportedOperationException e) {
+            return mClient;
+        }
+    }
+
+    private static <T> Callable<T> bind(final ShardCall<T> call, final FaceServiceClient client) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return call.call(client);
+            }
+        };
+    }
+
+    private static ExecutorService newShardExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_SHARD_THREADS, MAX_SHARD_THREADS,
+                SHARD_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                THREAD_FACTORY);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // A call to one shard, made with a client whose calls a token of the shard's own cancels.
+    private interface ShardCall<T> {
+        T call(FaceServiceClient client) throws ClientException, IOException, InterruptedException;
+    }
+
+    // The first 8 bytes of the MD5 of the string, which spreads similar keys across the ring.
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; ++i) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.offline;
+
+import com.microsoft.projectoxford.face.FaceServiceClient;
+import com.microsoft.projectoxford.face.contract.CreatePersonResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OfflineMutationQueueTest {
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("offline", "");
+        if (!mDirectory.delete() || !mDirectory.mkdir()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDirectory);
+    }
+
+    @Test
+    public void appendAfterTornRecordSurvivesReopening() throws IOException {
+        new OfflineMutationQueue(mDirectory, null).createPersonInLargePersonGroup("group", "first", null);
+
+        // A crash in the middle of an append leaves part of a line at the end of the journal.
+        try (FileOutputStream journal = new FileOutputStream(new File(mDirectory, "mutations.journal"), true)) {
+            journal.write("{\"kind\":\"mutation\",\"mutat".getBytes(Charset.forName("UTF-8")));
+        }
+
+        OfflineMutationQueue queue = new OfflineMutationQueue(mDirectory, null);
+        assertEquals(1, queue.getPendingCount());
+        queue.createPersonInLargePersonGroup("group", "second", null);
+
+        assertEquals(2, new OfflineMutationQueue(mDirectory, null).getPendingCount());
+    }
+
+    @Test
+    public void resolvedIdSurvivesCompactionAndReopening() throws IOException {
+        final UUID serviceId = UUID.randomUUID();
+        OfflineMutationQueue queue = new OfflineMutationQueue(mDirectory, newClient(serviceId));
+        UUID localId = queue.createPersonInLargePersonGroup("group", "name", null);
+
+        assertTrue(queue.replay(1));
+        assertEquals(serviceId, queue.resolveId(localId));
+        assertEquals(serviceId, new OfflineMutationQueue(mDirectory, null).resolveId(localId));
+    }
+
+    // A client whose person creations succeed with the given id.
+    private static FaceServiceClient newClient(final UUID personId) {
+        return (FaceServiceClient) Proxy.newProxyInstance(FaceServiceClient.class.getClassLoader(),
+                new Class<?>[] { FaceServiceClient.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (!method.getName().equals("createPersonInLargePersonGroup")) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        CreatePersonResult result = new CreatePersonResult();
+                        result.personId = personId;
+                        return result;
+                    }
+                });
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,126 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.rest;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+    private static final String URL = "https://localhost/face/v1.0/largepersongroups/group";
+
+    @Test
+    public void followerGivesUpAtItsCallTimeout() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch release = new CountDownLatch(1);
+        Thread leader = startLeader(singleFlight, "options", release, new AtomicInteger());
+
+        long startNanos = System.nanoTime();
+        try {
+            singleFlight.execute(URL, "options", 100, null, new CountingLoader(new AtomicInteger()));
+            fail("The follower waited past its call timeout");
+        } catch (InterruptedIOException e) {
+            assertEquals("timeout", e.getMessage());
+        } finally {
+            release.countDown();
+            leader.join();
+        }
+        assertTrue(System.nanoTime() - startNanos < 1000000000L);
+    }
+
+    @Test
+    public void readsWithDifferentOptionsAreNotShared() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Thread leader = startLeader(singleFlight, "recorded", release, loads);
+        try {
+            assertEquals("1", singleFlight.execute(URL, "plain", 0, null, new CountingLoader(loads)));
+        } finally {
+            release.countDown();
+            leader.join();
+        }
+        assertEquals(2, loads.get());
+    }
+
+    // Starts a read that stays in flight until released.
+    private static Thread startLeader(final SingleFlight singleFlight, final Object options,
+                                      final CountDownLatch release, final AtomicInteger loads) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    singleFlight.execute(URL, options, 0, null, new SingleFlight.Loader() {
+                        @Override
+                        public String load() throws InterruptedIOException {
+                            loads.incrementAndGet();
+                            started.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                throw new InterruptedIOException();
+                            }
+                            return "leader";
+                        }
+                    });
+                } catch (ClientException | IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        leader.start();
+        started.await();
+        return leader;
+    }
+
+    private static class CountingLoader implements SingleFlight.Loader {
+        private final AtomicInteger mLoads;
+
+        CountingLoader(AtomicInteger loads) {
+            mLoads = loads;
+        }
+
+        @Override
+        public String load() {
+            return String.valueOf(mLoads.incrementAndGet() - 1);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.loadtest;
+
+import com.microsoft.projectoxford.face.FaceServiceClient;
+import com.microsoft.projectoxford.face.contract.Face;
+import com.microsoft.projectoxford.face.loadtest.OperationMix.Operation;
+import com.microsoft.projectoxford.face.rest.CallExecutor;
+import com.microsoft.projectoxford.face.rest.ClientException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a client with a mix of operations on a large person group, for a fixed duration.
+ *
+ * In open-loop mode requests arrive at a constant rate whatever the client does, as users would,
+ * and their response time counts from their scheduled arrival. In closed-loop mode a fixed number
+ * of workers each send a request as soon as their previous one completes, which finds the
+ * throughput the client sustains.
+ */
+public class LoadGenerator {
+    private static final int MAX_FACES_PER_IDENTIFY = 10;
+
+    public enum Mode {
+        OPEN,
+
+        CLOSED
+    }
+
+    private final FaceServiceClient mClient;
+    private final String mLargePersonGroupId;
+    private final List<byte[]> mImages;
+    private final AtomicLong mEnrolledCount = new AtomicLong();
+    private Mode mMode = Mode.OPEN;
+    private double mRequestsPerSecond = 10;
+    private int mConcurrency = 16;
+    private int mMaxInFlight = 1024;
+    private long mDurationMillis = 60000;
+    private long mWarmUpMillis;
+    private long mReportIntervalMillis = 10000;
+    private long mRandomSeed = 1;
+    private OperationMix mOperationMix = OperationMix.parse("identify=80,enroll=15,train=5");
+    private PrintStream mOut = System.out;
+
+    /**
+     * @param client The client under test.
+     * @param largePersonGroupId The large person group to enroll and identify in, trained beforehand.
+     * @param images The images to send, each with at least one face.
+     */
+    public LoadGenerator(FaceServiceClient client, String largePersonGroupId, List<byte[]> images) {
+        if (images.isEmpty()) {
+            throw new IllegalArgumentException("At least one image is needed");
+        }
+
+        mClient = client;
+        mLargePersonGroupId = largePersonGroupId;
+        mImages = images;
+    }
+
+    public LoadGenerator setMode(Mode mode) {
+        mMode = mode;
+        return this;
+    }
+
+    /**
+     * Sets the arrival rate of the open-loop mode.
+     */
+    public LoadGenerator setRequestsPerSecond(double requestsPerSecond) {
+        mRequestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    /**
+     * Sets the number of workers of the closed-loop mode.
+     */
+    public LoadGenerator setConcurrency(int concurrency) {
+        mConcurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets the most requests in flight in open-loop mode. Arrivals beyond it wait, and their wait counts.
+     */
+    public LoadGenerator setMaxInFlight(int maxInFlight) {
+        mMaxInFlight = maxInFlight;
+        return this;
+    }
+
+    public LoadGenerator setDuration(long duration, TimeUnit unit) {
+        mDurationMillis = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * Sets the time at the start of the run whose requests are sent but not recorded.
+     */
+    public LoadGenerator setWarmUp(long warmUp, TimeUnit unit) {
+        mWarmUpMillis = unit.toMillis(warmUp);
+        return this;
+    }
+
+    /**
+     * Sets how often progress is printed, 0 for never. Long soak runs print heap and GC stats with it.
+     */
+    public LoadGenerator setReportInterval(long reportInterval, TimeUnit unit) {
+        mReportIntervalMillis = unit.toMillis(reportInterval);
+        return this;
+    }
+
+    public LoadGenerator setOperationMix(OperationMix operationMix) {
+        mOperationMix = operationMix;
+        return this;
+    }
+
+    /**
+     * Seeds the sequence of operations and images, for runs that can be compared.
+     */
+    public LoadGenerator setRandomSeed(long randomSeed) {
+        mRandomSeed = randomSeed;
+        return this;
+    }
+
+    public LoadGenerator setOutput(PrintStream out) {
+        mOut = out;
+        return this;
+    }
+
+    /**
+     * Runs the load, blocking until the duration elapsed and every request sent completed.
+     */
+    public LoadReport run() throws InterruptedException {
+        final long startNanos = System.nanoTime();
+        final long recordFromNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(mWarmUpMillis);
+        final long endNanos = recordFromNanos + TimeUnit.MILLISECONDS.toNanos(mDurationMillis);
+        final LoadReport report = new LoadReport(recordFromNanos);
+
+        Thread reporter = startReporter(report, recordFromNanos);
+        try {
+            if (mMode == Mode.OPEN) {
+                runOpenLoop(report, recordFromNanos, endNanos);
+            } else {
+                runClosedLoop(report, recordFromNanos, endNanos);
+            }
+        } finally {
+            if (reporter != null) {
+                reporter.interrupt();
+            }
+        }
+
+        report.finish();
+        return report;
+    }
+
+    private void runOpenLoop(final LoadReport report, final long recordFromNanos, long endNanos)
+            throws InterruptedException {
+        CallExecutor executor = CallExecutor.newVirtualThreadExecutor(mMaxInFlight);
+        Random random = new Random(mRandomSeed);
+        long intervalNanos = (long) (1e9 / mRequestsPerSecond);
+        long intendedStartNanos = System.nanoTime();
+        try {
+            while (intendedStartNanos - endNanos < 0) {
+                long waitNanos = intendedStartNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                    continue;
+                }
+
+                final Operation operation = mOperationMix.pick(random);
+                final byte[] image = mImages.get(random.nextInt(mImages.size()));
+                final long intendedStart = intendedStartNanos;
+                executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        perform(operation, image, report, intendedStart, intendedStart - recordFromNanos >= 0);
+                        return null;
+                    }
+                });
+                // The next arrival is due on schedule, however late this one was submitted.
+                intendedStartNanos += intervalNanos;
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void runClosedLoop(final LoadReport report, final long recordFromNanos, final long endNanos)
+            throws InterruptedException {
+        CallExecutor executor = CallExecutor.newVirtualThreadExecutor(mConcurrency);
+        try {
+            for (int i = 0; i < mConcurrency; i++) {
+                final Random random = new Random(mRandomSeed + i);
+                executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        long now;
+                        while ((now = System.nanoTime()) - endNanos < 0 && !Thread.currentThread().isInterrupted()) {
+                            Operation operation = mOperationMix.pick(random);
+                            byte[] image = mImages.get(random.nextInt(mImages.size()));
+                            perform(operation, image, report, now, now - recordFromNanos >= 0);
+                        }
+                        return null;
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void perform(Operation operation, byte[] image, LoadReport report, long intendedStartNanos, boolean record) {
+        long startNanos = System.nanoTime();
+        try {
+            switch (operation) {
+                case DETECT:
+                    mClient.detect(new ByteArrayInputStream(image), true, false, null);
+                    break;
+                case IDENTIFY:
+                    Face[] faces = mClient.detect(new ByteArrayInputStream(image), true, false, null);
+                    UUID[] faceIds = new UUID[Math.min(faces.length, MAX_FACES_PER_IDENTIFY)];
+                    for (int i = 0; i < faceIds.length; i++) {
+                        faceIds[i] = faces[i].faceId;
+                    }
+                    if (faceIds.length > 0) {
+                        mClient.identityInLargePersonGroup(mLargePersonGroupId, faceIds, 1);
+                    }
+                    break;
+                case ENROLL:
+                    UUID personId = mClient.createPersonInLargePersonGroup(mLargePersonGroupId,
+                            "load-" + mEnrolledCount.incrementAndGet(), null).personId;
+                    mClient.addPersonFaceInLargePersonGroup(mLargePersonGroupId, personId,
+                            new ByteArrayInputStream(image), null, null);
+                    break;
+                case TRAIN:
+                    mClient.trainLargePersonGroup(mLargePersonGroupId);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operation " + operation);
+            }
+            if (record) {
+                report.recordSuccess(operation, intendedStartNanos, startNanos, System.nanoTime());
+            }
+        } catch (ClientException e) {
+            if (record) {
+                report.recordFailure(operation, e.error.code == null ? "ClientException" : e.error.code);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (record) {
+                report.recordFailure(operation, e.getClass().getSimpleName());
+            }
+        }
+    }
+
+    // Prints progress, throughput and heap every report interval, so that soak runs show drift as it happens.
+    private Thread startReporter(final LoadReport report, final long recordFromNanos) {
+        if (mReportIntervalMillis <= 0) {
+            return null;
+        }
+
+        Thread reporter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long[] previousCounts = new long[2];
+                // Only requests after warm-up are counted, so rates are over the time since then.
+                long previousNanos = recordFromNanos;
+                try {
+                    while (true) {
+                        Thread.sleep(mReportIntervalMillis);
+                        long now = System.nanoTime();
+                        long succeeded = report.getSucceededCount();
+                        long failed = report.getFailedCount();
+                        double seconds = Math.max(0, now - previousNanos) / 1e9;
+                        if (seconds == 0) {
+                            // Still warming up.
+                            seconds = Double.POSITIVE_INFINITY;
+                        }
+                        LoadReport.JvmSnapshot jvm = LoadReport.JvmSnapshot.take();
+                        mOut.println(String.format(Locale.ENGLISH,
+                                "[%6.0fs] %7.1f ok/s %6.1f failed/s, heap %d MB, live %d MB, %d GCs %d ms",
+                                report.getElapsedSeconds(),
+                                (succeeded - previousCounts[0]) / seconds, (failed - previousCounts[1]) / seconds,
+                                jvm.heapUsedBytes >> 20, jvm.liveHeapBytes >> 20,
+                                jvm.gcCount - report.getJvmBefore().gcCount,
+                                jvm.gcTimeMillis - report.getJvmBefore().gcTimeMillis));
+                        previousCounts = new long[] { succeeded, failed };
+                        previousNanos = now - recordFromNanos >= 0 ? now : recordFromNanos;
+                    }
+                } catch (InterruptedException e) {
+                    // The run is over.
+                }
+            }
+        }, "load-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+        return reporter;
+    }
+}
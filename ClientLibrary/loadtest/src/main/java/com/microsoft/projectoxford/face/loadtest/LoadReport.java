@@ -0,0 +1,225 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.loadtest;
+
+import com.microsoft.projectoxford.face.loadtest.OperationMix.Operation;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of a load run: latencies per operation, errors per operation and error code, and the
+ * state of the heap and garbage collector before and after.
+ *
+ * Response time is measured from when a request was meant to start according to the arrival rate,
+ * so that requests delayed behind slow ones count their wait, and service time from when it
+ * actually started. Without that correction a saturated client reports flattering latencies.
+ */
+public class LoadReport {
+    private final Map<Operation, LatencyHistogram> mResponseTimes = new EnumMap<>(Operation.class);
+    private final Map<Operation, LatencyHistogram> mServiceTimes = new EnumMap<>(Operation.class);
+    private final ConcurrentHashMap<String, AtomicLong> mErrors = new ConcurrentHashMap<>();
+    private final AtomicLong mSucceeded = new AtomicLong();
+    private final AtomicLong mFailed = new AtomicLong();
+    private final JvmSnapshot mJvmBefore = JvmSnapshot.take();
+    private final long mStartNanos;
+    private JvmSnapshot mJvmAfter;
+    private long mEndNanos;
+
+    /**
+     * @param recordFromNanos The System.nanoTime() at which warm-up ends and requests start to be
+     *                        recorded, from which elapsed time and throughput are measured.
+     */
+    public LoadReport(long recordFromNanos) {
+        mStartNanos = recordFromNanos;
+        for (Operation operation : Operation.values()) {
+            mResponseTimes.put(operation, new LatencyHistogram());
+            mServiceTimes.put(operation, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * The heap and garbage collector statistics of the JVM at one point.
+     */
+    public static class JvmSnapshot {
+        public long heapUsedBytes;
+
+        /**
+         * The heap still used after the last collection of each heap pool, the best signal of a leak.
+         */
+        public long liveHeapBytes;
+
+        public long gcCount;
+
+        public long gcTimeMillis;
+
+        public static JvmSnapshot take() {
+            JvmSnapshot snapshot = new JvmSnapshot();
+            snapshot.heapUsedBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (pool.getType() == MemoryType.HEAP && usage != null) {
+                    snapshot.liveHeapBytes += usage.getUsed();
+                }
+            }
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                snapshot.gcCount += Math.max(0, collector.getCollectionCount());
+                snapshot.gcTimeMillis += Math.max(0, collector.getCollectionTime());
+            }
+            return snapshot;
+        }
+    }
+
+    void recordSuccess(Operation operation, long intendedStartNanos, long startNanos, long endNanos) {
+        mSucceeded.incrementAndGet();
+        mResponseTimes.get(operation).recordMicros((endNanos - intendedStartNanos) / 1000);
+        mServiceTimes.get(operation).recordMicros((endNanos - startNanos) / 1000);
+    }
+
+    void recordFailure(Operation operation, String errorCode) {
+        mFailed.incrementAndGet();
+        String key = operation.name().toLowerCase(Locale.ENGLISH) + " " + errorCode;
+        AtomicLong count = mErrors.get(key);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = mErrors.putIfAbsent(key, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    void finish() {
+        mEndNanos = System.nanoTime();
+        mJvmAfter = JvmSnapshot.take();
+    }
+
+    public LatencyHistogram getResponseTimes(Operation operation) {
+        return mResponseTimes.get(operation);
+    }
+
+    public LatencyHistogram getServiceTimes(Operation operation) {
+        return mServiceTimes.get(operation);
+    }
+
+    public long getSucceededCount() {
+        return mSucceeded.get();
+    }
+
+    public long getFailedCount() {
+        return mFailed.get();
+    }
+
+    /**
+     * Gets the failure count per operation and error code, such as "identify RateLimitExceeded".
+     */
+    public Map<String, Long> getErrors() {
+        Map<String, Long> errors = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : mErrors.entrySet()) {
+            errors.put(entry.getKey(), entry.getValue().get());
+        }
+        return errors;
+    }
+
+    public double getElapsedSeconds() {
+        long end = mEndNanos == 0 ? System.nanoTime() : mEndNanos;
+        return Math.max(0, end - mStartNanos) / 1e9;
+    }
+
+    /**
+     * Gets the completed requests per second, successful or not.
+     */
+    public double getThroughput() {
+        double elapsed = getElapsedSeconds();
+        return elapsed <= 0 ? 0 : (mSucceeded.get() + mFailed.get()) / elapsed;
+    }
+
+    public JvmSnapshot getJvmBefore() {
+        return mJvmBefore;
+    }
+
+    public JvmSnapshot getJvmAfter() {
+        return mJvmAfter;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ENGLISH, "%.1fs, %d succeeded, %d failed, %.1f requests/s%n",
+                getElapsedSeconds(), mSucceeded.get(), mFailed.get(), getThroughput()));
+
+        builder.append(String.format(Locale.ENGLISH, "%-9s %8s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        for (Operation operation : Operation.values()) {
+            appendLatencies(builder, operation.name().toLowerCase(Locale.ENGLISH), mResponseTimes.get(operation));
+            appendLatencies(builder, "  service", mServiceTimes.get(operation));
+        }
+
+        if (!mErrors.isEmpty()) {
+            builder.append("errors:\n");
+            for (Map.Entry<String, Long> entry : getErrors().entrySet()) {
+                builder.append(String.format(Locale.ENGLISH, "  %-40s %d%n", entry.getKey(), entry.getValue()));
+            }
+        }
+
+        JvmSnapshot after = mJvmAfter == null ? JvmSnapshot.take() : mJvmAfter;
+        builder.append(String.format(Locale.ENGLISH,
+                "heap used %d MB, live after GC %d MB (%+d MB), %d collections taking %d ms%n",
+                after.heapUsedBytes >> 20, after.liveHeapBytes >> 20,
+                (after.liveHeapBytes - mJvmBefore.liveHeapBytes) >> 20,
+                after.gcCount - mJvmBefore.gcCount, after.gcTimeMillis - mJvmBefore.gcTimeMillis));
+        return builder.toString();
+    }
+
+    private static void appendLatencies(StringBuilder builder, String label, LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+
+        builder.append(String.format(Locale.ENGLISH, "%-9s %8d %7.1fms %7.1fms %7.1fms %7.1fms %7.1fms %7.1fms%n",
+                label, histogram.getCount(), histogram.getMeanMillis(),
+                histogram.getPercentileMillis(50), histogram.getPercentileMillis(90),
+                histogram.getPercentileMillis(99), histogram.getPercentileMillis(99.9),
+                histogram.getMaxMillis()));
+    }
+}
@@ -0,0 +1,275 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.loadtest;
+
+import com.microsoft.projectoxford.face.FaceServiceClient;
+import com.microsoft.projectoxford.face.FaceServiceRestClient;
+import com.microsoft.projectoxford.face.contract.TrainingStatus;
+import com.microsoft.projectoxford.face.rest.AdaptiveConcurrencyLimit;
+import com.microsoft.projectoxford.face.rest.ClientException;
+import com.microsoft.projectoxford.face.rest.RequestPriority;
+import com.microsoft.projectoxford.face.rest.RequestScheduler;
+import com.microsoft.projectoxford.face.standin.LatencyDistribution;
+import com.microsoft.projectoxford.face.standin.StandInServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line load and soak test of the client, against the service or a local stand-in server.
+ *
+ * Usage: LoadTest [--standin | --endpoint URL --key KEY] [--data ../Data] [--group loadtest]
+ * [--mode open|closed] [--rate 50] [--concurrency 16] [--max-in-flight 1024]
+ * [--duration 60] [--warm-up 10] [--interval 10] [--mix identify=80,enroll=15,train=5]
+ * [--max-concurrent-requests 16 | --adaptive] [--seed 1]
+ * [--standin-latency-median 80 --standin-latency-p99 400] [--standin-tps 0] [--standin-throttle 0]
+ */
+public class LoadTest {
+    private static final long TRAINING_POLL_MILLIS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        String endpoint = null;
+        String key = null;
+        boolean standIn = false;
+        File dataDirectory = new File("../Data");
+        String largePersonGroupId = "loadtest";
+        LoadGenerator.Mode mode = LoadGenerator.Mode.OPEN;
+        double rate = 50;
+        int concurrency = 16;
+        int maxInFlight = 1024;
+        long durationSeconds = 60;
+        long warmUpSeconds = 10;
+        long intervalSeconds = 10;
+        String mix = "identify=80,enroll=15,train=5";
+        int maxConcurrentRequests = 16;
+        boolean adaptive = false;
+        long seed = 1;
+        long standInLatencyMedian = 80;
+        long standInLatencyP99 = 400;
+        double standInTps = 0;
+        double standInThrottle = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--standin":
+                    standIn = true;
+                    continue;
+                case "--adaptive":
+                    adaptive = true;
+                    continue;
+                default:
+                    break;
+            }
+
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value of " + args[i]);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--endpoint":
+                    endpoint = value;
+                    break;
+                case "--key":
+                    key = value;
+                    break;
+                case "--data":
+                    dataDirectory = new File(value);
+                    break;
+                case "--group":
+                    largePersonGroupId = value;
+                    break;
+                case "--mode":
+                    mode = LoadGenerator.Mode.valueOf(value.toUpperCase(Locale.ENGLISH));
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(value);
+                    break;
+                case "--max-in-flight":
+                    maxInFlight = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    durationSeconds = Long.parseLong(value);
+                    break;
+                case "--warm-up":
+                    warmUpSeconds = Long.parseLong(value);
+                    break;
+                case "--interval":
+                    intervalSeconds = Long.parseLong(value);
+                    break;
+                case "--mix":
+                    mix = value;
+                    break;
+                case "--max-concurrent-requests":
+                    maxConcurrentRequests = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--standin-latency-median":
+                    standInLatencyMedian = Long.parseLong(value);
+                    break;
+                case "--standin-latency-p99":
+                    standInLatencyP99 = Long.parseLong(value);
+                    break;
+                case "--standin-tps":
+                    standInTps = Double.parseDouble(value);
+                    break;
+                case "--standin-throttle":
+                    standInThrottle = Double.parseDouble(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+            }
+        }
+
+        StandInServer server = null;
+        if (standIn) {
+            server = new StandInServer()
+                    .setLatency(LatencyDistribution.logNormal(standInLatencyMedian, Math.max(standInLatencyMedian, standInLatencyP99)))
+                    .setTransactionsPerSecond(standInTps)
+                    .setThrottleProbability(standInThrottle)
+                    .setRandomSeed(seed);
+            server.start(0);
+            endpoint = server.getEndpoint();
+            key = "stand-in";
+        } else if (endpoint == null || key == null) {
+            throw new IllegalArgumentException("Either --standin or both --endpoint and --key are needed");
+        }
+
+        RequestScheduler scheduler = adaptive
+                ? new RequestScheduler(new AdaptiveConcurrencyLimit())
+                : new RequestScheduler(maxConcurrentRequests);
+        FaceServiceClient client = new FaceServiceRestClient(endpoint, key, scheduler);
+        prepare(client, largePersonGroupId, new File(dataDirectory, "PersonGroup"));
+
+        System.out.println(String.format(Locale.ENGLISH, "%s loop against %s, mix %s", mode, endpoint, mix));
+        LoadReport report = new LoadGenerator(client, largePersonGroupId, readImages(dataDirectory))
+                .setMode(mode)
+                .setRequestsPerSecond(rate)
+                .setConcurrency(concurrency)
+                .setMaxInFlight(maxInFlight)
+                .setDuration(durationSeconds, TimeUnit.SECONDS)
+                .setWarmUp(warmUpSeconds, TimeUnit.SECONDS)
+                .setReportInterval(intervalSeconds, TimeUnit.SECONDS)
+                .setOperationMix(OperationMix.parse(mix))
+                .setRandomSeed(seed)
+                .run();
+
+        System.out.print(report);
+        RequestScheduler.QueueStats queueStats = scheduler.getQueueStats(RequestPriority.INTERACTIVE);
+        System.out.println(String.format(Locale.ENGLISH,
+                "scheduler queue: mean %.1f ms, p99 %.1f ms, max %.1f ms, limit %d",
+                queueStats.getMeanMillis(), queueStats.getPercentileMillis(99), queueStats.getMaxMillis(),
+                scheduler.getMaxConcurrentRequests()));
+        if (server != null) {
+            System.out.println(String.format(Locale.ENGLISH, "stand-in served %d requests, throttled %d",
+                    server.getRequestCount(), server.getThrottledCount()));
+            server.stop();
+        }
+    }
+
+    // Creates the large person group with a person per directory of the data if missing, and trains it.
+    private static void prepare(FaceServiceClient client, String largePersonGroupId, File personGroupDirectory)
+            throws ClientException, IOException, InterruptedException {
+        try {
+            client.getLargePersonGroup(largePersonGroupId);
+        } catch (ClientException e) {
+            if (!"LargePersonGroupNotFound".equals(e.error.code)) {
+                throw e;
+            }
+
+            client.createLargePersonGroup(largePersonGroupId, largePersonGroupId, null);
+            File[] personDirectories = personGroupDirectory.listFiles();
+            if (personDirectories != null) {
+                Arrays.sort(personDirectories);
+                for (File personDirectory : personDirectories) {
+                    List<byte[]> images = readImages(personDirectory);
+                    if (images.isEmpty()) {
+                        continue;
+                    }
+                    UUID personId = client.createPersonInLargePersonGroup(
+                            largePersonGroupId, personDirectory.getName(), null).personId;
+                    for (byte[] image : images) {
+                        client.addPersonFaceInLargePersonGroup(largePersonGroupId, personId,
+                                new ByteArrayInputStream(image), null, null);
+                    }
+                }
+            }
+        }
+
+        client.trainLargePersonGroup(largePersonGroupId);
+        while (client.getLargePersonGroupTrainingStatus(largePersonGroupId).status == TrainingStatus.Status.Running) {
+            Thread.sleep(TRAINING_POLL_MILLIS);
+        }
+    }
+
+    // The JPEG images in a directory and its subdirectories.
+    private static List<byte[]> readImages(File directory) throws IOException {
+        List<byte[]> images = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return images;
+        }
+
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                images.addAll(readImages(file));
+            } else if (file.getName().toLowerCase(Locale.ENGLISH).endsWith(".jpg")) {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                try (InputStream inputStream = new FileInputStream(file)) {
+                    byte[] buffer = new byte[8192];
+                    int count;
+                    while ((count = inputStream.read(buffer)) > 0) {
+                        outputStream.write(buffer, 0, count);
+                    }
+                }
+                images.add(outputStream.toByteArray());
+            }
+        }
+        return images;
+    }
+}
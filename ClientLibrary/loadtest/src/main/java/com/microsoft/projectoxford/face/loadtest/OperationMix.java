@@ -0,0 +1,133 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.loadtest;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The share of each operation in the generated load, such as identify=80,enroll=15,train=5.
+ */
+public class OperationMix {
+    public enum Operation {
+        /**
+         * Detects the faces of an image.
+         */
+        DETECT,
+
+        /**
+         * Detects the faces of an image and identifies them in the large person group.
+         */
+        IDENTIFY,
+
+        /**
+         * Creates a person in the large person group and adds a face to it.
+         */
+        ENROLL,
+
+        /**
+         * Trains the large person group.
+         */
+        TRAIN
+    }
+
+    private final Map<Operation, Double> mWeights = new EnumMap<>(Operation.class);
+    private double mTotalWeight;
+
+    public OperationMix set(Operation operation, double weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight for " + operation);
+        }
+
+        Double previous = mWeights.put(operation, weight);
+        mTotalWeight += weight - (previous == null ? 0 : previous);
+        return this;
+    }
+
+    /**
+     * Parses a mix written as comma separated operation=weight pairs.
+     */
+    public static OperationMix parse(String mix) {
+        OperationMix operationMix = new OperationMix();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight, got " + entry);
+            }
+            operationMix.set(Operation.valueOf(parts[0].trim().toUpperCase(Locale.ENGLISH)), Double.parseDouble(parts[1].trim()));
+        }
+        return operationMix;
+    }
+
+    /**
+     * Picks the operation of the next request.
+     */
+    public Operation pick(Random random) {
+        if (mTotalWeight <= 0) {
+            throw new IllegalStateException("The operation mix is empty");
+        }
+
+        double point = random.nextDouble() * mTotalWeight;
+        Operation last = null;
+        for (Map.Entry<Operation, Double> entry : mWeights.entrySet()) {
+            if (entry.getValue() <= 0) {
+                continue;
+            }
+            last = entry.getKey();
+            point -= entry.getValue();
+            if (point < 0) {
+                break;
+            }
+        }
+        return last;
+    }
+
+    public boolean contains(Operation operation) {
+        Double weight = mWeights.get(operation);
+        return weight != null && weight > 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<Operation, Double> entry : mWeights.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(entry.getKey().name().toLowerCase(Locale.ENGLISH)).append('=').append(entry.getValue());
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,99 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.standin;
+
+import java.util.Random;
+
+/**
+ * Distribution of the time the stand-in server takes to answer a request.
+ */
+public abstract class LatencyDistribution {
+    // The 99th percentile of the standard normal distribution.
+    private static final double Z_99 = 2.3263;
+
+    /**
+     * Samples the latency of one request.
+     * @param random The source of randomness, seeded by the server for reproducible runs.
+     * @return The latency in milliseconds.
+     */
+    public abstract long sampleMillis(Random random);
+
+    /**
+     * Answers right away.
+     */
+    public static LatencyDistribution none() {
+        return fixed(0);
+    }
+
+    public static LatencyDistribution fixed(final long millis) {
+        return new LatencyDistribution() {
+            @Override
+            public long sampleMillis(Random random) {
+                return millis;
+            }
+        };
+    }
+
+    public static LatencyDistribution uniform(final long minMillis, final long maxMillis) {
+        if (maxMillis < minMillis) {
+            throw new IllegalArgumentException("maxMillis must not be less than minMillis");
+        }
+
+        return new LatencyDistribution() {
+            @Override
+            public long sampleMillis(Random random) {
+                return minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+            }
+        };
+    }
+
+    /**
+     * A log-normal distribution, the usual shape of service latencies with their long tail.
+     * @param medianMillis The median latency.
+     * @param p99Millis The 99th percentile latency.
+     */
+    public static LatencyDistribution logNormal(long medianMillis, long p99Millis) {
+        if (medianMillis <= 0 || p99Millis < medianMillis) {
+            throw new IllegalArgumentException("Expected 0 < medianMillis <= p99Millis");
+        }
+
+        final double mu = Math.log(medianMillis);
+        final double sigma = Math.log((double) p99Millis / medianMillis) / Z_99;
+        return new LatencyDistribution() {
+            @Override
+            public long sampleMillis(Random random) {
+                return Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+            }
+        };
+    }
+}
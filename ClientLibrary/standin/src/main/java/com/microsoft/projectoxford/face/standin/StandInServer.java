@@ -0,0 +1,913 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.standin;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.microsoft.projectoxford.face.common.ClientError;
+import com.microsoft.projectoxford.face.common.ServiceError;
+import com.microsoft.projectoxford.face.contract.Face;
+import com.microsoft.projectoxford.face.contract.FaceRectangle;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A local stand-in for the Face API, serving the REST surface used by FaceServiceRestClient for
+ * detection, verification, identification, similar faces, grouping, large person groups and large
+ * face lists from in-memory state. It makes load and latency tests reproducible without the service.
+ *
+ * Latency, throttling and payload limits are configurable. Faces are not recognized: detection
+ * finds one face in the middle of each image, and faces match only if they come from the same
+ * image bytes, see {@link StandInStore}. Seeding a large person group from the sample's
+ * Data/PersonGroup directory therefore makes detect and identify on those images find their person.
+ */
+public class StandInServer {
+    private static final String BASE_PATH = "/face/v1.0";
+    private static final String HEADER_KEY = "ocp-apim-subscription-key";
+    private static final String APPLICATION_JSON = "application/json; charset=utf-8";
+    private static final String APPLICATION_OCTET_STREAM = "application/octet-stream";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long DEFAULT_MAX_PAYLOAD_BYTES = 6 * 1024 * 1024;
+    private static final int DEFAULT_TOP = 1000;
+    private static final int DEFAULT_FIND_SIMILAR_CANDIDATES = 20;
+    private static final Set<String> IMAGE_EXTENSIONS = new HashSet<>(Arrays.asList("jpg", "jpeg", "png", "bmp", "gif"));
+
+    private final StandInStore mStore = new StandInStore();
+    private final Gson mGson = new GsonBuilder().setDateFormat("MM/dd/yyyy HH:mm:ss").create();
+    private final ReentrantLock mThrottleLock = new ReentrantLock();
+    private final Map<String, LatencyDistribution> mOperationLatencies = new HashMap<>();
+    private final Set<String> mSubscriptionKeys = new HashSet<>();
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mThrottledCount = new AtomicLong();
+    private Random mRandom = new Random();
+    private LatencyDistribution mLatency = LatencyDistribution.none();
+    private double mThrottleProbability;
+    private double mTransactionsPerSecond;
+    private double mTokens;
+    private long mRefilledNanos;
+    private long mRetryAfterSeconds = 1;
+    private long mMaxPayloadBytes = DEFAULT_MAX_PAYLOAD_BYTES;
+    private HttpServer mServer;
+    private ExecutorService mExecutor;
+
+    /* mark Configuration */
+
+    /**
+     * Sets the latency of every operation without a latency of its own.
+     */
+    public StandInServer setLatency(LatencyDistribution latency) {
+        mLatency = latency;
+        return this;
+    }
+
+    /**
+     * Sets the latency of one operation.
+     * @param operation The first segment of the path, such as detect, identify or largepersongroups.
+     */
+    public StandInServer setLatency(String operation, LatencyDistribution latency) {
+        mOperationLatencies.put(operation, latency);
+        return this;
+    }
+
+    /**
+     * Answers the given share of requests with 429, regardless of the request rate.
+     */
+    public StandInServer setThrottleProbability(double throttleProbability) {
+        mThrottleProbability = throttleProbability;
+        return this;
+    }
+
+    /**
+     * Answers 429 to requests beyond a quota, as the service does for a subscription key.
+     * @param transactionsPerSecond The quota, or 0 for none.
+     */
+    public StandInServer setTransactionsPerSecond(double transactionsPerSecond) {
+        mThrottleLock.lock();
+        try {
+            mTransactionsPerSecond = transactionsPerSecond;
+            mTokens = transactionsPerSecond;
+            mRefilledNanos = System.nanoTime();
+        } finally {
+            mThrottleLock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Sets the Retry-After of throttled responses.
+     */
+    public StandInServer setRetryAfterSeconds(long retryAfterSeconds) {
+        mRetryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * Sets the largest request body accepted, 6 MB by default like the service.
+     */
+    public StandInServer setMaxPayloadBytes(long maxPayloadBytes) {
+        mMaxPayloadBytes = maxPayloadBytes;
+        return this;
+    }
+
+    /**
+     * Accepts only the given subscription key, in addition to keys added before. By default any key is accepted.
+     */
+    public StandInServer addSubscriptionKey(String subscriptionKey) {
+        mSubscriptionKeys.add(subscriptionKey);
+        return this;
+    }
+
+    /**
+     * Seeds the latencies and throttling decisions, for runs that can be compared.
+     */
+    public StandInServer setRandomSeed(long seed) {
+        mRandom = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Creates and trains a large person group with a person per subdirectory, named after the
+     * subdirectory, holding a face per image file in it.
+     * @param largePersonGroupId The id of the large person group.
+     * @param directory The directory, laid out like Data/PersonGroup.
+     * @throws IOException If the directory cannot be read.
+     */
+    public StandInServer seedLargePersonGroup(String largePersonGroupId, File directory) throws IOException {
+        File[] personDirectories = directory.listFiles();
+        if (personDirectories == null) {
+            throw new IOException("Cannot list " + directory);
+        }
+        Arrays.sort(personDirectories);
+
+        try {
+            mStore.createLargePersonGroup(largePersonGroupId, directory.getName(), null);
+            for (File personDirectory : personDirectories) {
+                File[] images = personDirectory.listFiles();
+                if (!personDirectory.isDirectory() || images == null) {
+                    continue;
+                }
+                Arrays.sort(images);
+
+                UUID personId = mStore.createPerson(largePersonGroupId, personDirectory.getName(), null).personId;
+                for (File image : images) {
+                    String name = image.getName();
+                    String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+                    if (IMAGE_EXTENSIONS.contains(extension)) {
+                        mStore.addPersonFace(largePersonGroupId, personId, sha256(readFile(image)), name);
+                    }
+                }
+            }
+            mStore.trainLargePersonGroup(largePersonGroupId);
+        } catch (StandInException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return this;
+    }
+
+    /* mark Lifecycle */
+
+    /**
+     * Starts serving on localhost.
+     * @param port The port, or 0 for any free port.
+     */
+    public void start(int port) throws IOException {
+        final AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "stand-in-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        mServer = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.start();
+    }
+
+    public void stop() {
+        if (mServer != null) {
+            mServer.stop(0);
+            mExecutor.shutdownNow();
+            mServer = null;
+        }
+    }
+
+    /**
+     * Gets the endpoint to give to FaceServiceRestClient.
+     */
+    public String getEndpoint() {
+        return "http://localhost:" + mServer.getAddress().getPort() + BASE_PATH;
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public long getThrottledCount() {
+        return mThrottledCount.get();
+    }
+
+    /* mark Serving */
+
+    private void serve(HttpExchange exchange) throws IOException {
+        mRequestCount.incrementAndGet();
+        try {
+            String key = exchange.getRequestHeaders().getFirst(HEADER_KEY);
+            if (key == null || (!mSubscriptionKeys.isEmpty() && !mSubscriptionKeys.contains(key))) {
+                throw new StandInException(401, "Unspecified", "Access denied due to invalid subscription key.");
+            }
+
+            List<String> segments = getSegments(exchange);
+            if (isThrottled()) {
+                mThrottledCount.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", Long.toString(mRetryAfterSeconds));
+                throw new StandInException(429, "RateLimitExceeded", "Rate limit is exceeded. Try again later.");
+            }
+
+            byte[] body = readBody(exchange);
+            sleep(segments.isEmpty() ? null : segments.get(0));
+            Object result = route(exchange.getRequestMethod(), segments, getQuery(exchange),
+                    exchange.getRequestHeaders().getFirst("Content-Type"), body);
+            if (result == null) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                respond(exchange, 200, mGson.toJson(result));
+            }
+        } catch (StandInException e) {
+            ServiceError error = new ServiceError();
+            error.error = new ClientError();
+            error.error.code = e.code;
+            error.error.message = e.getMessage();
+            respond(exchange, e.statusCode, mGson.toJson(error));
+        }
+    }
+
+    private Object route(String method, List<String> segments, Map<String, String> query, String contentType,
+                         byte[] body) throws StandInException {
+        int count = segments.size();
+        String operation = count > 0 ? segments.get(0) : "";
+        switch (operation) {
+            case "detect":
+                if (count == 1 && method.equals("POST")) {
+                    return detect(query, contentType, body);
+                }
+                break;
+            case "verify":
+                if (count == 1 && method.equals("POST")) {
+                    return verify(parseObject(body));
+                }
+                break;
+            case "identify":
+                if (count == 1 && method.equals("POST")) {
+                    JsonObject json = parseObject(body);
+                    return mStore.identify(getRequiredString(json, "largePersonGroupId"), getUuids(json, "faceIds"),
+                            getInt(json, "maxNumOfCandidatesReturned", 1), getDouble(json, "confidenceThreshold", 0.5));
+                }
+                break;
+            case "findsimilars":
+                if (count == 1 && method.equals("POST")) {
+                    return findSimilar(parseObject(body));
+                }
+                break;
+            case "group":
+                if (count == 1 && method.equals("POST")) {
+                    return mStore.group(getUuids(parseObject(body), "faceIds"));
+                }
+                break;
+            case "largepersongroups":
+                return routeLargePersonGroups(method, segments, query, contentType, body);
+            case "largefacelists":
+                return routeLargeFaceLists(method, segments, query, contentType, body);
+            default:
+                break;
+        }
+        throw notSupported(method, segments);
+    }
+
+    private Object routeLargePersonGroups(String method, List<String> segments, Map<String, String> query,
+                                          String contentType, byte[] body) throws StandInException {
+        int count = segments.size();
+        if (count == 1 && method.equals("GET")) {
+            return mStore.listLargePersonGroups(query.get("start"), getTop(query));
+        }
+        if (count < 2) {
+            throw notSupported(method, segments);
+        }
+
+        String groupId = segments.get(1);
+        if (count == 2) {
+            switch (method) {
+                case "PUT":
+                    JsonObject json = parseObject(body);
+                    mStore.createLargePersonGroup(groupId, getRequiredString(json, "name"), getString(json, "userData"));
+                    return null;
+                case "DELETE":
+                    mStore.deleteLargePersonGroup(groupId);
+                    return null;
+                case "PATCH":
+                    json = parseObject(body);
+                    mStore.updateLargePersonGroup(groupId, getString(json, "name"), getString(json, "userData"));
+                    return null;
+                case "GET":
+                    return mStore.getLargePersonGroup(groupId);
+                default:
+                    throw notSupported(method, segments);
+            }
+        }
+
+        String resource = segments.get(2);
+        if (count == 3 && resource.equals("train") && method.equals("POST")) {
+            mStore.trainLargePersonGroup(groupId);
+            return null;
+        }
+        if (count == 3 && resource.equals("training") && method.equals("GET")) {
+            return mStore.getLargePersonGroupTrainingStatus(groupId);
+        }
+        if (!resource.equals("persons")) {
+            throw notSupported(method, segments);
+        }
+
+        if (count == 3) {
+            switch (method) {
+                case "POST":
+                    JsonObject json = parseObject(body);
+                    return mStore.createPerson(groupId, getRequiredString(json, "name"), getString(json, "userData"));
+                case "GET":
+                    return mStore.listPersons(groupId, query.get("start"), getTop(query));
+                default:
+                    throw notSupported(method, segments);
+            }
+        }
+
+        UUID personId = parseUuid(segments.get(3));
+        if (count == 4) {
+            switch (method) {
+                case "DELETE":
+                    mStore.deletePerson(groupId, personId);
+                    return null;
+                case "PATCH":
+                    JsonObject json = parseObject(body);
+                    mStore.updatePerson(groupId, personId, getString(json, "name"), getString(json, "userData"));
+                    return null;
+                case "GET":
+                    return mStore.getPersonInfo(groupId, personId);
+                default:
+                    throw notSupported(method, segments);
+            }
+        }
+
+        if (!segments.get(4).equals("persistedfaces")) {
+            throw notSupported(method, segments);
+        }
+        if (count == 5 && method.equals("POST")) {
+            return mStore.addPersonFace(groupId, personId, getFaceSignature(contentType, body), query.get("userData"));
+        }
+        if (count != 6) {
+            throw notSupported(method, segments);
+        }
+
+        UUID persistedFaceId = parseUuid(segments.get(5));
+        switch (method) {
+            case "DELETE":
+                mStore.deletePersonFace(groupId, personId, persistedFaceId);
+                return null;
+            case "PATCH":
+                mStore.updatePersonFace(groupId, personId, persistedFaceId, getString(parseObject(body), "userData"));
+                return null;
+            case "GET":
+                return mStore.getPersonFace(groupId, personId, persistedFaceId);
+            default:
+                throw notSupported(method, segments);
+        }
+    }
+
+    private Object routeLargeFaceLists(String method, List<String> segments, Map<String, String> query,
+                                       String contentType, byte[] body) throws StandInException {
+        int count = segments.size();
+        if (count == 1 && method.equals("GET")) {
+            return mStore.listLargeFaceLists(query.get("start"), getTop(query));
+        }
+        if (count < 2) {
+            throw notSupported(method, segments);
+        }
+
+        String faceListId = segments.get(1);
+        if (count == 2) {
+            switch (method) {
+                case "PUT":
+                    JsonObject json = parseObject(body);
+                    mStore.createLargeFaceList(faceListId, getRequiredString(json, "name"), getString(json, "userData"));
+                    return null;
+                case "DELETE":
+                    mStore.deleteLargeFaceList(faceListId);
+                    return null;
+                case "PATCH":
+                    json = parseObject(body);
+                    mStore.updateLargeFaceList(faceListId, getString(json, "name"), getString(json, "userData"));
+                    return null;
+                case "GET":
+                    return mStore.getLargeFaceList(faceListId);
+                default:
+                    throw notSupported(method, segments);
+            }
+        }
+
+        String resource = segments.get(2);
+        if (count == 3 && resource.equals("train") && method.equals("POST")) {
+            mStore.trainLargeFaceList(faceListId);
+            return null;
+        }
+        if (count == 3 && resource.equals("training") && method.equals("GET")) {
+            return mStore.getLargeFaceListTrainingStatus(faceListId);
+        }
+        if (!resource.equals("persistedfaces")) {
+            throw notSupported(method, segments);
+        }
+
+        if (count == 3) {
+            switch (method) {
+                case "POST":
+                    return mStore.addLargeFaceListFace(faceListId, getFaceSignature(contentType, body), query.get("userData"));
+                case "GET":
+                    return mStore.listLargeFaceListFaces(faceListId, query.get("start"), getTop(query));
+                default:
+                    throw notSupported(method, segments);
+            }
+        }
+        if (count != 4) {
+            throw notSupported(method, segments);
+        }
+
+        UUID persistedFaceId = parseUuid(segments.get(3));
+        switch (method) {
+            case "DELETE":
+                mStore.deleteLargeFaceListFace(faceListId, persistedFaceId);
+                return null;
+            case "PATCH":
+                mStore.updateLargeFaceListFace(faceListId, persistedFaceId, getString(parseObject(body), "userData"));
+                return null;
+            case "GET":
+                return mStore.getLargeFaceListFace(faceListId, persistedFaceId);
+            default:
+                throw notSupported(method, segments);
+        }
+    }
+
+    /* mark Operations */
+
+    private List<Face> detect(Map<String, String> query, String contentType, byte[] body) throws StandInException {
+        FaceRectangle faceRectangle = new FaceRectangle();
+        String signature;
+        if (isImage(contentType)) {
+            int[] size = getImageSize(body);
+            int side = Math.min(size[0], size[1]) / 2;
+            faceRectangle.width = side;
+            faceRectangle.height = side;
+            faceRectangle.left = (size[0] - side) / 2;
+            faceRectangle.top = (size[1] - side) / 2;
+            signature = sha256(body);
+        } else {
+            // Images given by URL are not downloaded.
+            signature = sha256(getRequiredString(parseObject(body), "url").getBytes(UTF_8));
+            faceRectangle.width = 100;
+            faceRectangle.height = 100;
+        }
+
+        Face face = new Face();
+        face.faceRectangle = faceRectangle;
+        UUID faceId = mStore.detect(signature);
+        if (!"false".equals(query.get("returnFaceId"))) {
+            face.faceId = faceId;
+        }
+        return Collections.singletonList(face);
+    }
+
+    private Object verify(JsonObject json) throws StandInException {
+        if (json.has("faceId1")) {
+            return mStore.verify(getUuid(json, "faceId1"), getUuid(json, "faceId2"));
+        }
+        if (json.has("largePersonGroupId")) {
+            return mStore.verify(getUuid(json, "faceId"), getRequiredString(json, "largePersonGroupId"), getUuid(json, "personId"));
+        }
+        throw StandInException.badArgument("Only verification of two faces or against a large person group is supported.");
+    }
+
+    private Object findSimilar(JsonObject json) throws StandInException {
+        UUID faceId = getUuid(json, "faceId");
+        int maxNumOfCandidatesReturned = getInt(json, "maxNumOfCandidatesReturned", DEFAULT_FIND_SIMILAR_CANDIDATES);
+        boolean matchPerson = !"matchFace".equalsIgnoreCase(getString(json, "mode"));
+        if (json.has("faceIds")) {
+            return mStore.findSimilar(faceId, getUuids(json, "faceIds"), maxNumOfCandidatesReturned, matchPerson);
+        }
+        if (json.has("largeFaceListId")) {
+            return mStore.findSimilar(faceId, getRequiredString(json, "largeFaceListId"), maxNumOfCandidatesReturned, matchPerson);
+        }
+        throw StandInException.badArgument("Either faceIds or largeFaceListId is required.");
+    }
+
+    // Signature of a face added to a person or face list, from an image or an image URL.
+    private String getFaceSignature(String contentType, byte[] body) throws StandInException {
+        if (isImage(contentType)) {
+            getImageSize(body);
+            return sha256(body);
+        }
+        return sha256(getRequiredString(parseObject(body), "url").getBytes(UTF_8));
+    }
+
+    /* mark Admission */
+
+    private boolean isThrottled() {
+        mThrottleLock.lock();
+        try {
+            if (mThrottleProbability > 0 && mRandom.nextDouble() < mThrottleProbability) {
+                return true;
+            }
+            if (mTransactionsPerSecond <= 0) {
+                return false;
+            }
+
+            long now = System.nanoTime();
+            mTokens = Math.min(mTransactionsPerSecond, mTokens + (now - mRefilledNanos) / 1e9 * mTransactionsPerSecond);
+            mRefilledNanos = now;
+            if (mTokens < 1) {
+                return true;
+            }
+            mTokens -= 1;
+            return false;
+        } finally {
+            mThrottleLock.unlock();
+        }
+    }
+
+    private void sleep(String operation) {
+        LatencyDistribution latency = mOperationLatencies.get(operation);
+        if (latency == null) {
+            latency = mLatency;
+        }
+
+        long millis;
+        mThrottleLock.lock();
+        try {
+            millis = latency.sampleMillis(mRandom);
+        } finally {
+            mThrottleLock.unlock();
+        }
+
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private byte[] readBody(HttpExchange exchange) throws IOException, StandInException {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null && Long.parseLong(contentLength) > mMaxPayloadBytes) {
+            throw payloadTooLarge(exchange);
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        InputStream inputStream = exchange.getRequestBody();
+        int count;
+        while ((count = inputStream.read(buffer)) > 0) {
+            body.write(buffer, 0, count);
+            if (body.size() > mMaxPayloadBytes) {
+                throw payloadTooLarge(exchange);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static StandInException payloadTooLarge(HttpExchange exchange) {
+        if (isImage(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+            return StandInException.badArgument("Image size is too big.");
+        }
+        return new StandInException(413, "RequestEntityTooLarge", "Request body is too large.");
+    }
+
+    /* mark Parsing */
+
+    private static List<String> getSegments(HttpExchange exchange) throws StandInException {
+        String path = exchange.getRequestURI().getRawPath();
+        if (path.startsWith(BASE_PATH)) {
+            path = path.substring(BASE_PATH.length());
+        }
+
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(decode(segment));
+            }
+        }
+        return segments;
+    }
+
+    private static Map<String, String> getQuery(HttpExchange exchange) throws StandInException {
+        Map<String, String> query = new HashMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    query.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static int getTop(Map<String, String> query) throws StandInException {
+        String top = query.get("top");
+        if (top == null || top.isEmpty()) {
+            return DEFAULT_TOP;
+        }
+        try {
+            return Integer.parseInt(top.trim());
+        } catch (NumberFormatException e) {
+            throw StandInException.badArgument("Invalid top: " + top);
+        }
+    }
+
+    private static JsonObject parseObject(byte[] body) throws StandInException {
+        try {
+            JsonElement element = new JsonParser().parse(new String(body, UTF_8));
+            if (!element.isJsonObject()) {
+                throw StandInException.badArgument("Request body must be a JSON object.");
+            }
+            return element.getAsJsonObject();
+        } catch (JsonParseException e) {
+            throw StandInException.badArgument("Invalid request body: " + e.getMessage());
+        }
+    }
+
+    private static String getString(JsonObject json, String name) {
+        JsonElement element = json.get(name);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static String getRequiredString(JsonObject json, String name) throws StandInException {
+        String value = getString(json, name);
+        if (value == null) {
+            throw StandInException.badArgument(name + " is required.");
+        }
+        return value;
+    }
+
+    private static int getInt(JsonObject json, String name, int defaultValue) throws StandInException {
+        String value = getString(json, name);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw StandInException.badArgument("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static double getDouble(JsonObject json, String name, double defaultValue) throws StandInException {
+        String value = getString(json, name);
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw StandInException.badArgument("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static UUID getUuid(JsonObject json, String name) throws StandInException {
+        return parseUuid(getRequiredString(json, name));
+    }
+
+    private static List<UUID> getUuids(JsonObject json, String name) throws StandInException {
+        JsonElement element = json.get(name);
+        if (element == null || !element.isJsonArray()) {
+            throw StandInException.badArgument(name + " is required.");
+        }
+
+        List<UUID> uuids = new ArrayList<>();
+        JsonArray array = element.getAsJsonArray();
+        for (Iterator<JsonElement> iterator = array.iterator(); iterator.hasNext(); ) {
+            uuids.add(parseUuid(iterator.next().getAsString()));
+        }
+        return uuids;
+    }
+
+    private static UUID parseUuid(String value) throws StandInException {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw StandInException.badArgument("Invalid id: " + value);
+        }
+    }
+
+    private static String decode(String value) throws StandInException {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw StandInException.badArgument("Invalid URL encoding: " + value);
+        }
+    }
+
+    private static boolean isImage(String contentType) {
+        return contentType != null && contentType.startsWith(APPLICATION_OCTET_STREAM);
+    }
+
+    // Width and height of an image, read from its header without decoding it.
+    private static int[] getImageSize(byte[] image) throws StandInException {
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+            if (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(inputStream);
+                    return new int[] { reader.getWidth(0), reader.getHeight(0) };
+                } finally {
+                    reader.dispose();
+                }
+            }
+        } catch (IOException e) {
+            // Reported below.
+        }
+        throw new StandInException(400, "InvalidImage", "Decoding error, image format unsupported.");
+    }
+
+    private static StandInException notSupported(String method, List<String> segments) {
+        return StandInException.notFound("NotSupported",
+                method + " /" + String.join("/", segments) + " is not served by the stand-in server.");
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String json) throws IOException {
+        byte[] bytes = json.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", APPLICATION_JSON);
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (InputStream inputStream = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, count);
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Runs the stand-in server until killed.
+     * Usage: StandInServer [--port 8080] [--seed Data/PersonGroup] [--group sample_group]
+     * [--latency-median 80 --latency-p99 400] [--tps 10] [--throttle 0.01] [--max-payload 6291456] [--random-seed 1]
+     */
+    public static void main(String[] args) throws IOException {
+        StandInServer server = new StandInServer();
+        int port = 8080;
+        File seedDirectory = null;
+        String groupId = "sample_group";
+        long latencyMedian = 0;
+        long latencyP99 = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seedDirectory = new File(value);
+                    break;
+                case "--group":
+                    groupId = value;
+                    break;
+                case "--latency-median":
+                    latencyMedian = Long.parseLong(value);
+                    break;
+                case "--latency-p99":
+                    latencyP99 = Long.parseLong(value);
+                    break;
+                case "--tps":
+                    server.setTransactionsPerSecond(Double.parseDouble(value));
+                    break;
+                case "--throttle":
+                    server.setThrottleProbability(Double.parseDouble(value));
+                    break;
+                case "--max-payload":
+                    server.setMaxPayloadBytes(Long.parseLong(value));
+                    break;
+                case "--random-seed":
+                    server.setRandomSeed(Long.parseLong(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        if (latencyMedian > 0) {
+            server.setLatency(LatencyDistribution.logNormal(latencyMedian, Math.max(latencyMedian, latencyP99)));
+        }
+        if (seedDirectory != null) {
+            server.seedLargePersonGroup(groupId, seedDirectory);
+        }
+        server.start(port);
+        System.out.println("Serving " + server.getEndpoint());
+    }
+}
@@ -0,0 +1,751 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.standin;
+
+import com.microsoft.projectoxford.face.contract.AddPersistedFaceResult;
+import com.microsoft.projectoxford.face.contract.Candidate;
+import com.microsoft.projectoxford.face.contract.CreatePersonResult;
+import com.microsoft.projectoxford.face.contract.FaceMetadata;
+import com.microsoft.projectoxford.face.contract.GroupResult;
+import com.microsoft.projectoxford.face.contract.IdentifyResult;
+import com.microsoft.projectoxford.face.contract.LargeFaceList;
+import com.microsoft.projectoxford.face.contract.LargePersonGroup;
+import com.microsoft.projectoxford.face.contract.Person;
+import com.microsoft.projectoxford.face.contract.PersonFace;
+import com.microsoft.projectoxford.face.contract.SimilarFace;
+import com.microsoft.projectoxford.face.contract.SimilarPersistedFace;
+import com.microsoft.projectoxford.face.contract.TrainingStatus;
+import com.microsoft.projectoxford.face.contract.VerifyResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory state of the stand-in server: detected faces, large person groups and large face lists.
+ *
+ * Faces are not recognized. Each face carries a signature, the hash of the image it was detected
+ * in, and two faces are the same person exactly when their signatures are equal. Other pairs get a
+ * stable pseudo-random similarity below the identity threshold, so that results are reproducible.
+ */
+class StandInStore {
+    private static final double IDENTICAL_THRESHOLD = 0.5;
+    private static final int MAX_DETECTED_FACES = 100000;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Map<String, Container> mLargePersonGroups = new TreeMap<>();
+    private final Map<String, Container> mLargeFaceLists = new TreeMap<>();
+    private final Map<UUID, String> mDetectedFaces = new LinkedHashMap<UUID, String>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, String> eldest) {
+            // Detected faces expire on the service too, only later.
+            return size() > MAX_DETECTED_FACES;
+        }
+    };
+
+    // A large person group, whose entries are persons, or a large face list, whose only entry holds the faces.
+    private static class Container {
+        String id;
+        String name;
+        String userData;
+        TrainingStatus trainingStatus;
+        final Map<String, Entry> entries = new TreeMap<>();
+    }
+
+    private static class Entry {
+        UUID id;
+        String name;
+        String userData;
+        final Map<String, StoredFace> faces = new TreeMap<>();
+    }
+
+    private static class StoredFace {
+        UUID id;
+        String userData;
+        String signature;
+    }
+
+    private static final String FACE_LIST_ENTRY = "faces";
+
+    /* mark Detection */
+
+    UUID detect(String signature) {
+        UUID faceId = UUID.randomUUID();
+        mLock.lock();
+        try {
+            mDetectedFaces.put(faceId, signature);
+        } finally {
+            mLock.unlock();
+        }
+        return faceId;
+    }
+
+    VerifyResult verify(UUID faceId1, UUID faceId2) throws StandInException {
+        mLock.lock();
+        try {
+            return verifyResult(similarity(getDetected(faceId1), getDetected(faceId2)));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    VerifyResult verify(UUID faceId, String largePersonGroupId, UUID personId) throws StandInException {
+        mLock.lock();
+        try {
+            String signature = getDetected(faceId);
+            Entry person = getPerson(largePersonGroupId, personId);
+            return verifyResult(maxSimilarity(signature, person));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    List<IdentifyResult> identify(String largePersonGroupId, List<UUID> faceIds, int maxNumOfCandidatesReturned,
+                                  double confidenceThreshold) throws StandInException {
+        mLock.lock();
+        try {
+            Container group = getLargePersonGroupContainer(largePersonGroupId);
+            if (group.trainingStatus == null) {
+                throw StandInException.badArgument("Large person group not trained.");
+            }
+
+            List<IdentifyResult> results = new ArrayList<>();
+            for (UUID faceId : faceIds) {
+                String signature = getDetected(faceId);
+                List<Candidate> candidates = new ArrayList<>();
+                for (Entry person : group.entries.values()) {
+                    double confidence = maxSimilarity(signature, person);
+                    if (confidence >= confidenceThreshold) {
+                        Candidate candidate = new Candidate();
+                        candidate.personId = person.id;
+                        candidate.confidence = confidence;
+                        candidates.add(candidate);
+                    }
+                }
+                Collections.sort(candidates, new Comparator<Candidate>() {
+                    @Override
+                    public int compare(Candidate left, Candidate right) {
+                        return Double.compare(right.confidence, left.confidence);
+                    }
+                });
+
+                IdentifyResult result = new IdentifyResult();
+                result.faceId = faceId;
+                result.candidates = new ArrayList<>(candidates.subList(0, Math.min(maxNumOfCandidatesReturned, candidates.size())));
+                results.add(result);
+            }
+            return results;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    List<SimilarFace> findSimilar(UUID faceId, List<UUID> faceIds, int maxNumOfCandidatesReturned, boolean matchPerson)
+            throws StandInException {
+        mLock.lock();
+        try {
+            String signature = getDetected(faceId);
+            List<SimilarFace> similarFaces = new ArrayList<>();
+            for (UUID candidateId : faceIds) {
+                double confidence = similarity(signature, getDetected(candidateId));
+                if (!matchPerson || confidence >= IDENTICAL_THRESHOLD) {
+                    SimilarFace similarFace = new SimilarFace();
+                    similarFace.faceId = candidateId;
+                    similarFace.confidence = confidence;
+                    similarFaces.add(similarFace);
+                }
+            }
+            Collections.sort(similarFaces, new Comparator<SimilarFace>() {
+                @Override
+                public int compare(SimilarFace left, SimilarFace right) {
+                    return Double.compare(right.confidence, left.confidence);
+                }
+            });
+            return new ArrayList<>(similarFaces.subList(0, Math.min(maxNumOfCandidatesReturned, similarFaces.size())));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    List<SimilarPersistedFace> findSimilar(UUID faceId, String largeFaceListId, int maxNumOfCandidatesReturned,
+                                           boolean matchPerson) throws StandInException {
+        mLock.lock();
+        try {
+            String signature = getDetected(faceId);
+            Container faceList = getLargeFaceListContainer(largeFaceListId);
+            if (faceList.trainingStatus == null) {
+                throw StandInException.badArgument("Large face list not trained.");
+            }
+
+            List<SimilarPersistedFace> similarFaces = new ArrayList<>();
+            for (StoredFace face : getFaces(faceList).faces.values()) {
+                double confidence = similarity(signature, face.signature);
+                if (!matchPerson || confidence >= IDENTICAL_THRESHOLD) {
+                    SimilarPersistedFace similarFace = new SimilarPersistedFace();
+                    similarFace.persistedFaceId = face.id;
+                    similarFace.confidence = confidence;
+                    similarFaces.add(similarFace);
+                }
+            }
+            Collections.sort(similarFaces, new Comparator<SimilarPersistedFace>() {
+                @Override
+                public int compare(SimilarPersistedFace left, SimilarPersistedFace right) {
+                    return Double.compare(right.confidence, left.confidence);
+                }
+            });
+            return new ArrayList<>(similarFaces.subList(0, Math.min(maxNumOfCandidatesReturned, similarFaces.size())));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    GroupResult group(List<UUID> faceIds) throws StandInException {
+        mLock.lock();
+        try {
+            Map<String, List<UUID>> bySignature = new LinkedHashMap<>();
+            for (UUID faceId : faceIds) {
+                String signature = getDetected(faceId);
+                List<UUID> faces = bySignature.get(signature);
+                if (faces == null) {
+                    faces = new ArrayList<>();
+                    bySignature.put(signature, faces);
+                }
+                faces.add(faceId);
+            }
+
+            GroupResult result = new GroupResult();
+            result.groups = new ArrayList<>();
+            result.messyGroup = new ArrayList<>();
+            for (List<UUID> faces : bySignature.values()) {
+                if (faces.size() > 1) {
+                    result.groups.add(faces.toArray(new UUID[faces.size()]));
+                } else {
+                    result.messyGroup.addAll(faces);
+                }
+            }
+            return result;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /* mark Large Person Group */
+
+    void createLargePersonGroup(String largePersonGroupId, String name, String userData) throws StandInException {
+        createContainer(mLargePersonGroups, largePersonGroupId, name, userData, "LargePersonGroupExists");
+    }
+
+    void deleteLargePersonGroup(String largePersonGroupId) throws StandInException {
+        mLock.lock();
+        try {
+            if (mLargePersonGroups.remove(largePersonGroupId) == null) {
+                throw largePersonGroupNotFound(largePersonGroupId);
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    void updateLargePersonGroup(String largePersonGroupId, String name, String userData) throws StandInException {
+        mLock.lock();
+        try {
+            update(getLargePersonGroupContainer(largePersonGroupId), name, userData);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    LargePersonGroup getLargePersonGroup(String largePersonGroupId) throws StandInException {
+        mLock.lock();
+        try {
+            return toLargePersonGroup(getLargePersonGroupContainer(largePersonGroupId));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    List<LargePersonGroup> listLargePersonGroups(String start, int top) {
+        mLock.lock();
+        try {
+            List<LargePersonGroup> groups = new ArrayList<>();
+            for (Container container : page(mLargePersonGroups, start, top)) {
+                groups.add(toLargePersonGroup(container));
+            }
+            return groups;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    void trainLargePersonGroup(String largePersonGroupId) throws StandInException {
+        mLock.lock();
+        try {
+            train(getLargePersonGroupContainer(largePersonGroupId));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    TrainingStatus getLargePersonGroupTrainingStatus(String largePersonGroupId) throws StandInException {
+        mLock.lock();
+        try {
+            return getTrainingStatus(getLargePersonGroupContainer(largePersonGroupId));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /* mark Person */
+
+    CreatePersonResult createPerson(String largePersonGroupId, String name, String userData) throws StandInException {
+        mLock.lock();
+        try {
+            Container group = getLargePersonGroupContainer(largePersonGroupId);
+            Entry person = new Entry();
+            person.id = UUID.randomUUID();
+            person.name = name;
+            person.userData = userData;
+            group.entries.put(person.id.toString(), person);
+
+            CreatePersonResult result = new CreatePersonResult();
+            result.personId = person.id;
+            return result;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    void deletePerson(String largePersonGroupId, UUID personId) throws StandInException {
+        mLock.lock();
+        try {
+            getPerson(largePersonGroupId, personId);
+            getLargePersonGroupContainer(largePersonGroupId).entries.remove(personId.toString());
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    void updatePerson(String largePersonGroupId, UUID personId, String name, String userData) throws StandInException {
+        mLock.lock();
+        try {
+            Entry person = getPerson(largePersonGroupId, personId);
+            if (name != null) {
+                person.name = name;
+            }
+            if (userData != null) {
+                person.userData = userData;
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    Person getPersonInfo(String largePersonGroupId, UUID personId) throws StandInException {
+        mLock.lock();
+        try {
+            return toPerson(getPerson(largePersonGroupId, personId));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    List<Person> listPersons(String largePersonGroupId, String start, int top) throws StandInException {
+        mLock.lock();
+        try {
+            List<Person> persons = new ArrayList<>();
+            for (Entry person : page(getLargePersonGroupContainer(largePersonGroupId).entries, start, top)) {
+                persons.add(toPerson(person));
+            }
+            return persons;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    AddPersistedFaceResult addPersonFace(String largePersonGroupId, UUID personId, String signature, String userData)
+            throws StandInException {
+        mLock.lock();
+        try {
+            return addFace(getPerson(largePersonGroupId, personId), signature, userData);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    void deletePersonFace(String largePersonGroupId, UUID personId, UUID persistedFaceId) throws StandInException {
+        mLock.lock();
+        try {
+            Entry person = getPerson(largePersonGroupId, personId);
+            getFace(person, persistedFaceId);
+            person.faces.remove(persistedFaceId.toString());
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    void updatePersonFace(String largePersonGroupId, UUID personId, UUID persistedFaceId, String userData)
+            throws StandInException {
+        mLock.lock();
+        try {
+            getFace(getPerson(largePersonGroupId, personId), persistedFaceId).userData = userData;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    PersonFace getPersonFace(String largePersonGroupId, UUID personId, UUID persistedFaceId) throws StandInException {
+        mLock.lock();
+        try {
+            StoredFace face = getFace(getPerson(largePersonGroupId, personId), persistedFaceId);
+            PersonFace personFace = new PersonFace();
+            personFace.persistedFaceId = face.id;
+            personFace.userData = face.userData;
+            return personFace;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /* mark Large Face List */
+
+    void createLargeFaceList(String largeFaceListId, String name, String userData) throws StandInException {
+        createContainer(mLargeFaceLists, largeFaceListId, name, userData, "LargeFaceListExists");
+    }
+
+    void deleteLargeFaceList(String largeFaceListId) throws StandInException {
+        mLock.lock();
+        try {
+            if (mLargeFaceLists.remove(largeFaceListId) == null) {
+                throw largeFaceListNotFound(largeFaceListId);
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    void updateLargeFaceList(String largeFaceListId, String name, String userData) throws StandInException {
+        mLock.lock();
+        try {
+            update(getLargeFaceListContainer(largeFaceListId), name, userData);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    LargeFaceList getLargeFaceList(String largeFaceListId) throws StandInException {
+        mLock.lock();
+        try {
+            return toLargeFaceList(getLargeFaceListContainer(largeFaceListId));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    List<LargeFaceList> listLargeFaceLists(String start, int top) {
+        mLock.lock();
+        try {
+            List<LargeFaceList> faceLists = new ArrayList<>();
+            for (Container container : page(mLargeFaceLists, start, top)) {
+                faceLists.add(toLargeFaceList(container));
+            }
+            return faceLists;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    void trainLargeFaceList(String largeFaceListId) throws StandInException {
+        mLock.lock();
+        try {
+            train(getLargeFaceListContainer(largeFaceListId));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    TrainingStatus getLargeFaceListTrainingStatus(String largeFaceListId) throws StandInException {
+        mLock.lock();
+        try {
+            return getTrainingStatus(getLargeFaceListContainer(largeFaceListId));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    AddPersistedFaceResult addLargeFaceListFace(String largeFaceListId, String signature, String userData)
+            throws StandInException {
+        mLock.lock();
+        try {
+            return addFace(getFaces(getLargeFaceListContainer(largeFaceListId)), signature, userData);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    void deleteLargeFaceListFace(String largeFaceListId, UUID persistedFaceId) throws StandInException {
+        mLock.lock();
+        try {
+            Entry faces = getFaces(getLargeFaceListContainer(largeFaceListId));
+            getFace(faces, persistedFaceId);
+            faces.faces.remove(persistedFaceId.toString());
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    void updateLargeFaceListFace(String largeFaceListId, UUID persistedFaceId, String userData) throws StandInException {
+        mLock.lock();
+        try {
+            getFace(getFaces(getLargeFaceListContainer(largeFaceListId)), persistedFaceId).userData = userData;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    FaceMetadata getLargeFaceListFace(String largeFaceListId, UUID persistedFaceId) throws StandInException {
+        mLock.lock();
+        try {
+            return toFaceMetadata(getFace(getFaces(getLargeFaceListContainer(largeFaceListId)), persistedFaceId));
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    List<FaceMetadata> listLargeFaceListFaces(String largeFaceListId, String start, int top) throws StandInException {
+        mLock.lock();
+        try {
+            List<FaceMetadata> faces = new ArrayList<>();
+            for (StoredFace face : page(getFaces(getLargeFaceListContainer(largeFaceListId)).faces, start, top)) {
+                faces.add(toFaceMetadata(face));
+            }
+            return faces;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /* mark Helpers */
+
+    private void createContainer(Map<String, Container> containers, String id, String name, String userData,
+                                 String existsCode) throws StandInException {
+        mLock.lock();
+        try {
+            if (containers.containsKey(id)) {
+                throw new StandInException(409, existsCode, "'" + id + "' already exists.");
+            }
+
+            Container container = new Container();
+            container.id = id;
+            container.name = name;
+            container.userData = userData;
+            containers.put(id, container);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private static void update(Container container, String name, String userData) {
+        if (name != null) {
+            container.name = name;
+        }
+        if (userData != null) {
+            container.userData = userData;
+        }
+    }
+
+    private static void train(Container container) {
+        Date now = new Date();
+        TrainingStatus status = new TrainingStatus();
+        status.status = TrainingStatus.Status.Succeeded;
+        status.createdDateTime = now;
+        status.lastActionDateTime = now;
+        container.trainingStatus = status;
+    }
+
+    private static TrainingStatus getTrainingStatus(Container container) throws StandInException {
+        if (container.trainingStatus == null) {
+            throw StandInException.notFound("TrainingNotStarted", "Training not started.");
+        }
+        return container.trainingStatus;
+    }
+
+    private static AddPersistedFaceResult addFace(Entry entry, String signature, String userData) {
+        StoredFace face = new StoredFace();
+        face.id = UUID.randomUUID();
+        face.signature = signature;
+        face.userData = userData;
+        entry.faces.put(face.id.toString(), face);
+
+        AddPersistedFaceResult result = new AddPersistedFaceResult();
+        result.persistedFaceId = face.id;
+        return result;
+    }
+
+    private String getDetected(UUID faceId) throws StandInException {
+        String signature = mDetectedFaces.get(faceId);
+        if (signature == null) {
+            throw StandInException.notFound("FaceNotFound", "Face " + faceId + " is not found or expired.");
+        }
+        return signature;
+    }
+
+    private Container getLargePersonGroupContainer(String largePersonGroupId) throws StandInException {
+        Container group = mLargePersonGroups.get(largePersonGroupId);
+        if (group == null) {
+            throw largePersonGroupNotFound(largePersonGroupId);
+        }
+        return group;
+    }
+
+    private Container getLargeFaceListContainer(String largeFaceListId) throws StandInException {
+        Container faceList = mLargeFaceLists.get(largeFaceListId);
+        if (faceList == null) {
+            throw largeFaceListNotFound(largeFaceListId);
+        }
+        return faceList;
+    }
+
+    private Entry getPerson(String largePersonGroupId, UUID personId) throws StandInException {
+        Entry person = getLargePersonGroupContainer(largePersonGroupId).entries.get(personId.toString());
+        if (person == null) {
+            throw StandInException.notFound("PersonNotFound", "Person " + personId + " is not found.");
+        }
+        return person;
+    }
+
+    private static Entry getFaces(Container faceList) {
+        Entry faces = faceList.entries.get(FACE_LIST_ENTRY);
+        if (faces == null) {
+            faces = new Entry();
+            faceList.entries.put(FACE_LIST_ENTRY, faces);
+        }
+        return faces;
+    }
+
+    private static StoredFace getFace(Entry entry, UUID persistedFaceId) throws StandInException {
+        StoredFace face = entry.faces.get(persistedFaceId.toString());
+        if (face == null) {
+            throw StandInException.notFound("PersistedFaceNotFound", "Persisted face " + persistedFaceId + " is not found.");
+        }
+        return face;
+    }
+
+    // The values with a key after start, at most top of them.
+    private static <T> List<T> page(Map<String, T> map, String start, int top) {
+        Map<String, T> tail = start == null || start.isEmpty()
+                ? map : ((TreeMap<String, T>) map).tailMap(start, false);
+        List<T> values = new ArrayList<>();
+        for (T value : tail.values()) {
+            if (values.size() >= top) {
+                break;
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
+    private static double maxSimilarity(String signature, Entry person) {
+        double max = 0;
+        for (StoredFace face : person.faces.values()) {
+            max = Math.max(max, similarity(signature, face.signature));
+        }
+        return max;
+    }
+
+    private static double similarity(String left, String right) {
+        if (left.equals(right)) {
+            return 1.0;
+        }
+
+        String pair = left.compareTo(right) < 0 ? left + right : right + left;
+        return (pair.hashCode() & 0xFFFF) / 65536.0 * IDENTICAL_THRESHOLD;
+    }
+
+    private static VerifyResult verifyResult(double confidence) {
+        VerifyResult result = new VerifyResult();
+        result.confidence = confidence;
+        result.isIdentical = confidence >= IDENTICAL_THRESHOLD;
+        return result;
+    }
+
+    private static LargePersonGroup toLargePersonGroup(Container container) {
+        LargePersonGroup group = new LargePersonGroup();
+        group.largePersonGroupId = container.id;
+        group.name = container.name;
+        group.userData = container.userData;
+        return group;
+    }
+
+    private static LargeFaceList toLargeFaceList(Container container) {
+        LargeFaceList faceList = new LargeFaceList();
+        faceList.largeFaceListId = container.id;
+        faceList.name = container.name;
+        faceList.userData = container.userData;
+        return faceList;
+    }
+
+    private static Person toPerson(Entry entry) {
+        Person person = new Person();
+        person.personId = entry.id;
+        person.name = entry.name;
+        person.userData = entry.userData;
+        person.persistedFaceIds = new UUID[entry.faces.size()];
+        int i = 0;
+        for (StoredFace face : entry.faces.values()) {
+            person.persistedFaceIds[i++] = face.id;
+        }
+        return person;
+    }
+
+    private static FaceMetadata toFaceMetadata(StoredFace face) {
+        FaceMetadata metadata = new FaceMetadata();
+        metadata.persistedFaceId = face.id;
+        metadata.userData = face.userData;
+        return metadata;
+    }
+
+    private static StandInException largePersonGroupNotFound(String largePersonGroupId) {
+        return StandInException.notFound("LargePersonGroupNotFound", "Large person group '" + largePersonGroupId + "' is not found.");
+    }
+
+    private static StandInException largeFaceListNotFound(String largeFaceListId) {
+        return StandInException.notFound("LargeFaceListNotFound", "Large face list '" + largeFaceListId + "' is not found.");
+    }
+}
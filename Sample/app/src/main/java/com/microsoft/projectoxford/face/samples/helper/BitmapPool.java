@@ -0,0 +1,168 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.samples.helper;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bitmaps that are no longer shown, kept for reuse so that working on an image does not allocate
+ * a new full size bitmap at every step. Bitmaps are bucketed by allocation size and reconfigured to
+ * the requested dimensions, or handed to BitmapFactory through Options.inBitmap.
+ */
+public class BitmapPool {
+    // Use at most an eighth of the heap for pooled bitmaps.
+    private static final int HEAP_DIVISOR = 8;
+
+    // Do not hand out a bitmap more than twice as large as needed, it would waste the memory.
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private static BitmapPool sInstance;
+
+    private final TreeMap<Integer, Deque<Bitmap>> mBuckets = new TreeMap<>();
+    private final long mMaxBytes;
+    private long mBytes;
+
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool(Runtime.getRuntime().maxMemory() / HEAP_DIVISOR);
+        }
+        return sInstance;
+    }
+
+    private BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a mutable bitmap of the given size, cleared to transparent.
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = getDirty(width, height, config);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Gets a mutable bitmap of the given size whose content is undefined. Only use it when every
+     * pixel is about to be overwritten.
+     */
+    public Bitmap getDirty(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = poll(width * height * getBytesPerPixel(config));
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.reconfigure(width, height, config);
+        return bitmap;
+    }
+
+    /**
+     * Gives a bitmap back to the pool. The caller must not use or show it afterwards.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (size > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        Deque<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.push(bitmap);
+        mBytes += size;
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Drops pooled bitmaps when the system asks for memory. Called from the application's
+     * onTrimMemory.
+     */
+    public synchronized void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mBytes / 2);
+        }
+    }
+
+    // Takes the smallest pooled bitmap that holds the given number of bytes, if one is close enough.
+    private synchronized Bitmap poll(int bytes) {
+        Map.Entry<Integer, Deque<Bitmap>> entry = mBuckets.ceilingEntry(bytes);
+        if (entry == null || entry.getKey() > (long) bytes * MAX_SIZE_MULTIPLE) {
+            return null;
+        }
+        Bitmap bitmap = entry.getValue().pop();
+        if (entry.getValue().isEmpty()) {
+            mBuckets.remove(entry.getKey());
+        }
+        mBytes -= entry.getKey();
+        return bitmap;
+    }
+
+    // Recycle the largest bitmaps first, they are the least likely to fit a request.
+    private void trimToSize(long maxBytes) {
+        while (mBytes > maxBytes) {
+            Map.Entry<Integer, Deque<Bitmap>> entry = mBuckets.lastEntry();
+            entry.getValue().pop().recycle();
+            if (entry.getValue().isEmpty()) {
+                mBuckets.remove(entry.getKey());
+            }
+            mBytes -= entry.getKey();
+        }
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
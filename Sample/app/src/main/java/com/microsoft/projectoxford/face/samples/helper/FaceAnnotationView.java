@@ -0,0 +1,190 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.samples.helper;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.widget.ImageView;
+
+import com.microsoft.projectoxford.face.contract.Face;
+import com.microsoft.projectoxford.face.contract.FaceLandmarks;
+import com.microsoft.projectoxford.face.contract.FaceRectangle;
+import com.microsoft.projectoxford.face.contract.FeatureCoordinate;
+
+/**
+ * An image view that draws detected face rectangles and landmarks over its bitmap, instead of
+ * drawing them into a copy of the bitmap. The geometry is computed once in image coordinates when
+ * the faces are set, and only mapped to view coordinates on each draw.
+ */
+public class FaceAnnotationView extends ImageView {
+    private static final float RECTANGLE_STROKE_WIDTH_DP = 2;
+    private static final float LANDMARK_DIAMETER_DP = 4;
+
+    private final Paint mRectanglePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mLandmarkPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Matrix mDrawMatrix = new Matrix();
+
+    private Bitmap mBitmap;
+
+    // Left, top, right and bottom of each face rectangle, and x and y of each landmark, in image
+    // coordinates, and the same mapped to view coordinates at the last draw.
+    private float[] mRectangles = new float[0];
+    private float[] mLandmarks = new float[0];
+    private float[] mViewRectangles = new float[0];
+    private float[] mViewLandmarks = new float[0];
+
+    public FaceAnnotationView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        mRectanglePaint.setStyle(Paint.Style.STROKE);
+        mRectanglePaint.setColor(Color.GREEN);
+        mRectanglePaint.setStrokeWidth(toPixels(RECTANGLE_STROKE_WIDTH_DP));
+
+        mLandmarkPaint.setColor(Color.GREEN);
+        mLandmarkPaint.setStrokeCap(Paint.Cap.ROUND);
+        mLandmarkPaint.setStrokeWidth(toPixels(LANDMARK_DIAMETER_DP));
+    }
+
+    @Override
+    public void setImageBitmap(Bitmap bitmap) {
+        mBitmap = bitmap;
+        setFaces(null, false);
+        super.setImageBitmap(bitmap);
+    }
+
+    // Draw the faces detected in the bitmap shown, with all their landmarks if drawLandmarks is true
+    // and the landmarks were returned.
+    public void setFaces(Face[] faces, boolean drawLandmarks) {
+        int faceCount = faces == null || mBitmap == null ? 0 : faces.length;
+        FeatureCoordinate[][] landmarks = new FeatureCoordinate[faceCount][];
+        int landmarkCount = 0;
+        for (int i = 0; i < faceCount; ++i) {
+            landmarks[i] = drawLandmarks && faces[i].faceLandmarks != null
+                    ? getLandmarks(faces[i].faceLandmarks) : new FeatureCoordinate[0];
+            for (FeatureCoordinate landmark: landmarks[i]) {
+                if (landmark != null) {
+                    ++landmarkCount;
+                }
+            }
+        }
+
+        mRectangles = new float[faceCount * 4];
+        mLandmarks = new float[landmarkCount * 2];
+        int landmarkOffset = 0;
+        for (int i = 0; i < faceCount; ++i) {
+            FaceRectangle faceRectangle = ImageHelper.calculateFaceRectangle(
+                    mBitmap, faces[i].faceRectangle, ImageHelper.FACE_RECT_SCALE_RATIO);
+            mRectangles[i * 4] = faceRectangle.left;
+            mRectangles[i * 4 + 1] = faceRectangle.top;
+            mRectangles[i * 4 + 2] = faceRectangle.left + faceRectangle.width;
+            mRectangles[i * 4 + 3] = faceRectangle.top + faceRectangle.height;
+
+            for (FeatureCoordinate landmark: landmarks[i]) {
+                if (landmark != null) {
+                    mLandmarks[landmarkOffset++] = (float) landmark.x;
+                    mLandmarks[landmarkOffset++] = (float) landmark.y;
+                }
+            }
+        }
+        mViewRectangles = new float[mRectangles.length];
+        mViewLandmarks = new float[mLandmarks.length];
+
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mRectangles.length == 0) {
+            return;
+        }
+
+        // The same transform the image is drawn with.
+        mDrawMatrix.set(getImageMatrix());
+        mDrawMatrix.postTranslate(getPaddingLeft(), getPaddingTop());
+
+        mDrawMatrix.mapPoints(mViewRectangles, mRectangles);
+        for (int i = 0; i < mViewRectangles.length; i += 4) {
+            canvas.drawRect(mViewRectangles[i], mViewRectangles[i + 1],
+                    mViewRectangles[i + 2], mViewRectangles[i + 3], mRectanglePaint);
+        }
+
+        if (mLandmarks.length > 0) {
+            mDrawMatrix.mapPoints(mViewLandmarks, mLandmarks);
+            canvas.drawPoints(mViewLandmarks, mLandmarkPaint);
+        }
+    }
+
+    static FeatureCoordinate[] getLandmarks(FaceLandmarks faceLandmarks) {
+        return new FeatureCoordinate[] {
+                faceLandmarks.pupilLeft,
+                faceLandmarks.pupilRight,
+                faceLandmarks.noseTip,
+                faceLandmarks.mouthLeft,
+                faceLandmarks.mouthRight,
+                faceLandmarks.eyebrowLeftOuter,
+                faceLandmarks.eyebrowLeftInner,
+                faceLandmarks.eyeLeftOuter,
+                faceLandmarks.eyeLeftTop,
+                faceLandmarks.eyeLeftBottom,
+                faceLandmarks.eyeLeftInner,
+                faceLandmarks.eyebrowRightInner,
+                faceLandmarks.eyebrowRightOuter,
+                faceLandmarks.eyeRightInner,
+                faceLandmarks.eyeRightTop,
+                faceLandmarks.eyeRightBottom,
+                faceLandmarks.eyeRightOuter,
+                faceLandmarks.noseRootLeft,
+                faceLandmarks.noseRootRight,
+                faceLandmarks.noseLeftAlarTop,
+                faceLandmarks.noseRightAlarTop,
+                faceLandmarks.noseLeftAlarOutTip,
+                faceLandmarks.noseRightAlarOutTip,
+                faceLandmarks.upperLipTop,
+                faceLandmarks.upperLipBottom,
+                faceLandmarks.underLipTop,
+                faceLandmarks.underLipBottom,
+        };
+    }
+
+    private float toPixels(float dp) {
+        return TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_DIP, dp, getResources().getDisplayMetrics());
+    }
+}
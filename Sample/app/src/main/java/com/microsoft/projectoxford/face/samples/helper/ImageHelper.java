@@ -33,23 +33,38 @@
 package com.microsoft.projectoxford.face.samples.helper;
 
 import android.content.ContentResolver;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.media.ExifInterface;
+import android.graphics.RectF;
 import android.net.Uri;
-import android.provider.MediaStore;
+import android.widget.ImageView;
 
 import com.microsoft.projectoxford.face.contract.Face;
 import com.microsoft.projectoxford.face.contract.FaceRectangle;
+import com.microsoft.projectoxford.face.contract.FeatureCoordinate;
+import com.microsoft.projectoxford.face.rest.ImageUploadPipe;
+import com.microsoft.projectoxford.face.samples.R;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Defined several functions to load, draw, save, resize, and rotate images.
@@ -60,8 +75,27 @@ public class ImageHelper {
     // Resize the image if its side length is larger than the maximum.
     private static final int IMAGE_MAX_SIDE_LENGTH = 1280;
 
+    // The EXIF header is read from the first bytes of the image, and the rest of the header up to
+    // the image size is kept in the buffer so that the stream can be rewound to decode.
+    private static final int HEADER_BUFFER_SIZE = 64 * 1024;
+    private static final int HEADER_MARK_LIMIT = 256 * 1024;
+
+    // The same quality the activities used when they encoded the whole image up front.
+    static final int UPLOAD_JPEG_QUALITY = 100;
+
+    private static final int EXIF_ENTRY_LENGTH = 12;
+    private static final int EXIF_TAG_ORIENTATION = 0x0112;
+    private static final int EXIF_ORIENTATION_ROTATE_180 = 3;
+    private static final int EXIF_ORIENTATION_ROTATE_90 = 6;
+    private static final int EXIF_ORIENTATION_ROTATE_270 = 8;
+
     // Ratio to scale a detected face rectangle, the face rectangle scaled up looks more natural.
-    private static final double FACE_RECT_SCALE_RATIO = 1.3;
+    static final double FACE_RECT_SCALE_RATIO = 1.3;
+
+    // The formats BitmapFactory decodes into an inBitmap, and the size of their decoded pixels.
+    private static final Set<String> REUSABLE_MIME_TYPES = new HashSet<>(
+            Arrays.asList("image/jpeg", "image/png", "image/webp"));
+    private static final int ARGB_8888_BYTES_PER_PIXEL = 4;
 
     // Decode image from imageUri, and resize according to the expectedMaxImageSideLength
     // If expectedMaxImageSideLength is
@@ -69,18 +103,38 @@ public class ImageHelper {
     //     (2) more than the actual max size length of the bitmap
     //     then return the original bitmap
     // Else, return the scaled bitmap
+    // The image is read once: the header is parsed for its size and EXIF orientation from a marked
+    // buffer, then decoded, and scaling and rotation are applied together in one more bitmap.
     public static Bitmap loadSizeLimitedBitmapFromUri(
             Uri imageUri,
             ContentResolver contentResolver) {
+        InputStream imageInputStream = null;
         try {
             // Load the image into InputStream.
-            InputStream imageInputStream = contentResolver.openInputStream(imageUri);
+            imageInputStream = new BufferedInputStream(
+                    contentResolver.openInputStream(imageUri), HEADER_BUFFER_SIZE);
 
-            // For saving memory, only decode the image meta and get the side length.
+            // Read the rotation from the EXIF header, then rewind.
+            imageInputStream.mark(HEADER_BUFFER_SIZE);
+            int angle = readExifRotationAngle(imageInputStream);
+            imageInputStream.reset();
+
+            // For saving memory, only decode the image meta and get the side length, then rewind.
             BitmapFactory.Options options = new BitmapFactory.Options();
             options.inJustDecodeBounds = true;
             Rect outPadding = new Rect();
+            imageInputStream.mark(HEADER_MARK_LIMIT);
             BitmapFactory.decodeStream(imageInputStream, outPadding, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+            try {
+                imageInputStream.reset();
+            } catch (IOException e) {
+                // The header was longer than the mark limit, open the image again.
+                imageInputStream.close();
+                imageInputStream = contentResolver.openInputStream(imageUri);
+            }
 
             // Calculate shrink rate when loading the image into memory.
             int maxSideLength =
@@ -88,109 +142,33 @@ public class ImageHelper {
             options.inSampleSize = 1;
             options.inSampleSize = calculateSampleSize(maxSideLength, IMAGE_MAX_SIDE_LENGTH);
             options.inJustDecodeBounds = false;
-            if (imageInputStream != null) {
-                imageInputStream.close();
-            }
 
-            // Load the bitmap and resize it to the expected size length
-            imageInputStream = contentResolver.openInputStream(imageUri);
-            Bitmap bitmap = BitmapFactory.decodeStream(imageInputStream, outPadding, options);
+            // Load the bitmap into a pooled one, and resize it to the expected size length
+            Bitmap bitmap = decodeIntoPooledBitmap(imageInputStream, outPadding, options);
+            if (bitmap == null) {
+                return null;
+            }
             maxSideLength = bitmap.getWidth() > bitmap.getHeight()
                     ? bitmap.getWidth(): bitmap.getHeight();
-            double ratio = IMAGE_MAX_SIDE_LENGTH / (double) maxSideLength;
-            if (ratio < 1) {
-                bitmap = Bitmap.createScaledBitmap(
-                        bitmap,
-                        (int)(bitmap.getWidth() * ratio),
-                        (int)(bitmap.getHeight() * ratio),
-                        false);
-            }
+            double ratio = Math.min(IMAGE_MAX_SIDE_LENGTH / (double) maxSideLength, 1);
 
-            return rotateBitmap(bitmap, getImageRotationAngle(imageUri, contentResolver));
+            return transformBitmap(bitmap, ratio, angle);
         } catch (Exception e) {
             return null;
-        }
-    }
-
-    // Draw detected face rectangles in the original image. And return the image drawn.
-    // If drawLandmarks is set to be true, draw the five main landmarks of each face.
-    public static Bitmap drawFaceRectanglesOnBitmap(
-            Bitmap originalBitmap, Face[] faces, boolean drawLandmarks) {
-        Bitmap bitmap = originalBitmap.copy(Bitmap.Config.ARGB_8888, true);
-        Canvas canvas = new Canvas(bitmap);
-
-        Paint paint = new Paint();
-        paint.setAntiAlias(true);
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setColor(Color.GREEN);
-        int stokeWidth = Math.max(originalBitmap.getWidth(), originalBitmap.getHeight()) / 100;
-        if (stokeWidth == 0) {
-            stokeWidth = 1;
-        }
-        paint.setStrokeWidth(stokeWidth);
-
-        if (faces != null) {
-            for (Face face : faces) {
-                FaceRectangle faceRectangle =
-                        calculateFaceRectangle(bitmap, face.faceRectangle, FACE_RECT_SCALE_RATIO);
-
-                canvas.drawRect(
-                        faceRectangle.left,
-                        faceRectangle.top,
-                        faceRectangle.left + faceRectangle.width,
-                        faceRectangle.top + faceRectangle.height,
-                        paint);
-
-                if (drawLandmarks) {
-                    int radius = face.faceRectangle.width / 30;
-                    if (radius == 0) {
-                        radius = 1;
-                    }
-                    paint.setStyle(Paint.Style.FILL);
-                    paint.setStrokeWidth(radius);
-
-                    canvas.drawCircle(
-                            (float) face.faceLandmarks.pupilLeft.x,
-                            (float) face.faceLandmarks.pupilLeft.y,
-                            radius,
-                            paint);
-
-                    canvas.drawCircle(
-                            (float) face.faceLandmarks.pupilRight.x,
-                            (float) face.faceLandmarks.pupilRight.y,
-                            radius,
-                            paint);
-
-                    canvas.drawCircle(
-                            (float) face.faceLandmarks.noseTip.x,
-                            (float) face.faceLandmarks.noseTip.y,
-                            radius,
-                            paint);
-
-                    canvas.drawCircle(
-                            (float) face.faceLandmarks.mouthLeft.x,
-                            (float) face.faceLandmarks.mouthLeft.y,
-                            radius,
-                            paint);
-
-                    canvas.drawCircle(
-                            (float) face.faceLandmarks.mouthRight.x,
-                            (float) face.faceLandmarks.mouthRight.y,
-                            radius,
-                            paint);
-
-                    paint.setStyle(Paint.Style.STROKE);
-                    paint.setStrokeWidth(stokeWidth);
+        } finally {
+            if (imageInputStream != null) {
+                try {
+                    imageInputStream.close();
+                } catch (IOException e) {
+                    // Nothing left to read.
                 }
             }
         }
-
-        return bitmap;
     }
 
     // Highlight the selected face thumbnail in face list.
     public static Bitmap highlightSelectedFaceThumbnail(Bitmap originalBitmap) {
-        Bitmap bitmap = originalBitmap.copy(Bitmap.Config.ARGB_8888, true);
+        Bitmap bitmap = copyToPooledBitmap(originalBitmap);
         Canvas canvas = new Canvas(bitmap);
         Paint paint = new Paint();
         paint.setAntiAlias(true);
@@ -220,13 +198,226 @@ public class ImageHelper {
         FaceRectangle faceRect =
                 calculateFaceRectangle(originalBitmap, faceRectangle, FACE_RECT_SCALE_RATIO);
 
-        return Bitmap.createBitmap(
-                originalBitmap, faceRect.left, faceRect.top, faceRect.width, faceRect.height);
+        Bitmap bitmap = BitmapPool.getInstance().get(
+                faceRect.width, faceRect.height, Bitmap.Config.ARGB_8888);
+        new Canvas(bitmap).drawBitmap(
+                originalBitmap,
+                new Rect(faceRect.left, faceRect.top,
+                        faceRect.left + faceRect.width, faceRect.top + faceRect.height),
+                new Rect(0, 0, faceRect.width, faceRect.height),
+                null);
+        return bitmap;
+    }
+
+    // Crop the face thumbnails out from the original image at the given uri rather than from the
+    // downsampled bitmap the faces were detected in, so that small faces in large images stay sharp.
+    // Only each face's enlarged rectangle is decoded, at about the given side length, and the faces
+    // are decoded in parallel. A face that cannot be decoded this way is cropped from the bitmap.
+    public static List<Bitmap> generateFaceThumbnails(
+            final Uri imageUri,
+            final ContentResolver contentResolver,
+            final Bitmap bitmap,
+            List<FaceRectangle> faceRectangles,
+            final int thumbnailSideLength) throws IOException {
+        // Each decoder serializes its own decodes, so every task opens the image once for its faces.
+        int taskCount = Math.min(faceRectangles.size(), Runtime.getRuntime().availableProcessors());
+        List<Future<Bitmap[]>> futures = new ArrayList<>();
+        for (int i = 0; i < taskCount; ++i) {
+            final List<FaceRectangle> taskFaceRectangles = new ArrayList<>();
+            for (int j = i; j < faceRectangles.size(); j += taskCount) {
+                taskFaceRectangles.add(faceRectangles.get(j));
+            }
+            FutureTask<Bitmap[]> future = new FutureTask<>(new Callable<Bitmap[]>() {
+                @Override
+                public Bitmap[] call() throws IOException {
+                    return decodeFaceRegions(
+                            imageUri, contentResolver, bitmap, taskFaceRectangles, thumbnailSideLength);
+                }
+            });
+            TaskEngine.getDecodeExecutor().execute(future);
+            futures.add(future);
+        }
+
+        Bitmap[] thumbnails = new Bitmap[faceRectangles.size()];
+        for (int i = 0; i < taskCount; ++i) {
+            Bitmap[] taskThumbnails;
+            try {
+                taskThumbnails = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                taskThumbnails = null;
+            }
+            for (int j = i, k = 0; j < faceRectangles.size(); j += taskCount, ++k) {
+                thumbnails[j] = taskThumbnails != null ? taskThumbnails[k] : null;
+            }
+        }
+
+        List<Bitmap> faceThumbnails = new ArrayList<>();
+        for (int i = 0; i < thumbnails.length; ++i) {
+            faceThumbnails.add(thumbnails[i] != null
+                    ? thumbnails[i] : generateFaceThumbnail(bitmap, faceRectangles.get(i)));
+        }
+        return faceThumbnails;
+    }
+
+    // Encode the bitmap as a JPEG on the decode pool and return the stream to upload. The upload
+    // starts with the first bytes encoded instead of waiting for the whole image. The bitmap must
+    // not be released until the request has finished.
+    public static InputStream encodeForUpload(final Bitmap bitmap) {
+        final ImageUploadPipe pipe = new ImageUploadPipe();
+        TaskEngine.getDecodeExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                OutputStream outputStream = pipe.getOutputStream();
+                try {
+                    if (!bitmap.compress(Bitmap.CompressFormat.JPEG, UPLOAD_JPEG_QUALITY, outputStream)) {
+                        pipe.fail(new IOException("Cannot encode the image"));
+                        return;
+                    }
+                    outputStream.close();
+                } catch (IOException e) {
+                    // The request ended before reading the whole image.
+                    pipe.fail(e);
+                } catch (RuntimeException e) {
+                    pipe.fail(new IOException("Cannot encode the image", e));
+                }
+            }
+        });
+        return pipe.getInputStream();
+    }
+
+    // Show the bitmap in the view. If releaseWhenReplaced is true, the view owns the bitmap and
+    // gives it back to the pool once this method shows another bitmap in the view, so no other
+    // view may show it.
+    public static void setImageBitmap(ImageView imageView, Bitmap bitmap, boolean releaseWhenReplaced) {
+        Object previous = imageView.getTag(R.id.pooled_bitmap);
+        imageView.setImageBitmap(bitmap);
+        imageView.setTag(R.id.pooled_bitmap, releaseWhenReplaced ? bitmap : null);
+        if (previous != null && previous != bitmap) {
+            BitmapPool.getInstance().put((Bitmap) previous);
+        }
+    }
+
+    // Decode the image reusing a pooled bitmap. A bitmap the decoder would reject fails the decode
+    // after the stream has been read from, so the pooled bitmap is only passed when it is known to
+    // fit: a format the decoder writes into inBitmap, and enough bytes for the sampled size.
+    private static Bitmap decodeIntoPooledBitmap(
+            InputStream imageInputStream, Rect outPadding, BitmapFactory.Options options) {
+        int sampleSize = Math.max(options.inSampleSize, 1);
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inBitmap = null;
+        if (REUSABLE_MIME_TYPES.contains(options.outMimeType)) {
+            Bitmap pooled = BitmapPool.getInstance().getDirty(width, height, Bitmap.Config.ARGB_8888);
+            if (canReuse(pooled, width, height)) {
+                options.inBitmap = pooled;
+            } else {
+                BitmapPool.getInstance().put(pooled);
+            }
+        }
+
+        Bitmap bitmap = null;
+        try {
+            bitmap = BitmapFactory.decodeStream(imageInputStream, outPadding, options);
+            return bitmap;
+        } finally {
+            // A decode that failed or was refused leaves the pooled bitmap unused.
+            if (bitmap == null) {
+                BitmapPool.getInstance().put(options.inBitmap);
+                options.inBitmap = null;
+            }
+        }
+    }
+
+    // Whether the decoder can write an ARGB_8888 image of the given size into the bitmap.
+    private static boolean canReuse(Bitmap bitmap, int width, int height) {
+        return bitmap.isMutable() && !bitmap.isRecycled()
+                && bitmap.getAllocationByteCount() >= (long) width * height * ARGB_8888_BYTES_PER_PIXEL;
+    }
+
+    // Decode the enlarged rectangles of the faces detected in the bitmap from the original image.
+    // The bitmap was scaled and rotated from it by loadSizeLimitedBitmapFromUri.
+    private static Bitmap[] decodeFaceRegions(
+            Uri imageUri,
+            ContentResolver contentResolver,
+            Bitmap bitmap,
+            List<FaceRectangle> faceRectangles,
+            int thumbnailSideLength) throws IOException {
+        InputStream imageInputStream = contentResolver.openInputStream(imageUri);
+        int angle;
+        try {
+            angle = readExifRotationAngle(imageInputStream);
+        } finally {
+            imageInputStream.close();
+        }
+
+        imageInputStream = contentResolver.openInputStream(imageUri);
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(imageInputStream, false);
+        } finally {
+            imageInputStream.close();
+        }
+
+        try {
+            // Map from the bitmap to the original image: scale up, then undo the rotation.
+            Matrix rotation = new Matrix();
+            rotation.postRotate(angle);
+            RectF bounds = new RectF(0, 0, decoder.getWidth(), decoder.getHeight());
+            rotation.mapRect(bounds);
+            rotation.postTranslate(-bounds.left, -bounds.top);
+            Matrix toOriginal = new Matrix();
+            rotation.invert(toOriginal);
+            float scale = bounds.width() / bitmap.getWidth();
+            toOriginal.preScale(scale, scale);
+
+            Bitmap[] thumbnails = new Bitmap[faceRectangles.size()];
+            for (int i = 0; i < thumbnails.length; ++i) {
+                FaceRectangle faceRect =
+                        calculateFaceRectangle(bitmap, faceRectangles.get(i), FACE_RECT_SCALE_RATIO);
+                RectF faceRegion = new RectF(faceRect.left, faceRect.top,
+                        faceRect.left + faceRect.width, faceRect.top + faceRect.height);
+                toOriginal.mapRect(faceRegion);
+                Rect regionInOriginal = new Rect();
+                faceRegion.round(regionInOriginal);
+                if (!regionInOriginal.intersect(0, 0, decoder.getWidth(), decoder.getHeight())) {
+                    continue;
+                }
+
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inMutable = true;
+                options.inSampleSize = calculateSampleSize(
+                        Math.max(regionInOriginal.width(), regionInOriginal.height()),
+                        thumbnailSideLength);
+                Bitmap region = decoder.decodeRegion(regionInOriginal, options);
+                if (region == null) {
+                    continue;
+                }
+                double ratio = Math.min(
+                        thumbnailSideLength / (double) Math.max(region.getWidth(), region.getHeight()), 1);
+                thumbnails[i] = transformBitmap(region, ratio, angle);
+            }
+            return thumbnails;
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    // Copy the bitmap into a mutable one from the pool.
+    private static Bitmap copyToPooledBitmap(Bitmap originalBitmap) {
+        Bitmap bitmap = BitmapPool.getInstance().get(
+                originalBitmap.getWidth(), originalBitmap.getHeight(), Bitmap.Config.ARGB_8888);
+        new Canvas(bitmap).drawBitmap(originalBitmap, 0, 0, null);
+        return bitmap;
     }
 
     // Return the number of times for the image to shrink when loading it into memory.
     // The SampleSize can only be a final value based on powers of 2.
-    private static int calculateSampleSize(int maxSideLength, int expectedMaxImageSideLength) {
+    static int calculateSampleSize(int maxSideLength, int expectedMaxImageSideLength) {
         int inSampleSize = 1;
 
         while (maxSideLength > 2 * expectedMaxImageSideLength) {
@@ -237,56 +428,143 @@ public class ImageHelper {
         return inSampleSize;
     }
 
-    // Get the rotation angle of the image taken.
-    private static int getImageRotationAngle(
-            Uri imageUri, ContentResolver contentResolver) throws IOException {
-        int angle = 0;
-        Cursor cursor = contentResolver.query(imageUri,
-                new String[] { MediaStore.Images.ImageColumns.ORIENTATION }, null, null, null);
-        if (cursor != null) {
-            if (cursor.getCount() == 1) {
-                cursor.moveToFirst();
-                angle = cursor.getInt(0);
+    // Get the rotation angle of the image taken from the orientation in its EXIF header. Reads at
+    // most the header buffer, returns 0 if the image is not a JPEG or has no orientation.
+    static int readExifRotationAngle(InputStream imageInputStream) throws IOException {
+        byte[] header = new byte[HEADER_BUFFER_SIZE];
+        int length = 0;
+        int count;
+        while (length < header.length
+                && (count = imageInputStream.read(header, length, header.length - length)) > 0) {
+            length += count;
+        }
+
+        // Walk the JPEG segments up to the EXIF one.
+        if (length < 4 || (header[0] & 0xFF) != 0xFF || (header[1] & 0xFF) != 0xD8) {
+            return 0;
+        }
+        int offset = 2;
+        while (offset + 4 <= length && (header[offset] & 0xFF) == 0xFF) {
+            int marker = header[offset + 1] & 0xFF;
+            int segmentLength = readShort(header, offset + 2, false);
+            if (marker == 0xE1 && offset + 10 <= length
+                    && new String(header, offset + 4, 4, "US-ASCII").equals("Exif")) {
+                return readTiffRotationAngle(header, offset + 10, Math.min(length, offset + 2 + segmentLength));
+            }
+            if (marker == 0xDA || segmentLength < 2) {
+                // The image data starts, no EXIF header before it.
+                return 0;
             }
-            cursor.close();
-        } else {
-            ExifInterface exif = new ExifInterface(imageUri.getPath());
-            int orientation = exif.getAttributeInt(
-                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
-
-            switch (orientation) {
-                case ExifInterface.ORIENTATION_ROTATE_270:
-                    angle = 270;
-                    break;
-                case ExifInterface.ORIENTATION_ROTATE_180:
-                    angle = 180;
-                    break;
-                case ExifInterface.ORIENTATION_ROTATE_90:
-                    angle = 90;
-                    break;
-                default:
-                    break;
+            offset += 2 + segmentLength;
+        }
+        return 0;
+    }
+
+    // Find the orientation tag in the first image directory of the TIFF structure in EXIF.
+    private static int readTiffRotationAngle(byte[] header, int tiffStart, int end) {
+        if (tiffStart + 8 > end) {
+            return 0;
+        }
+        boolean littleEndian = header[tiffStart] == 'I';
+        int directory = tiffStart + readInt(header, tiffStart + 4, littleEndian);
+        if (directory < tiffStart || directory + 2 > end) {
+            return 0;
+        }
+        int entryCount = readShort(header, directory, littleEndian);
+        for (int i = 0; i < entryCount; ++i) {
+            int entry = directory + 2 + i * EXIF_ENTRY_LENGTH;
+            if (entry + EXIF_ENTRY_LENGTH > end) {
+                break;
+            }
+            if (readShort(header, entry, littleEndian) == EXIF_TAG_ORIENTATION) {
+                switch (readShort(header, entry + 8, littleEndian)) {
+                    case EXIF_ORIENTATION_ROTATE_90:
+                        return 90;
+                    case EXIF_ORIENTATION_ROTATE_180:
+                        return 180;
+                    case EXIF_ORIENTATION_ROTATE_270:
+                        return 270;
+                    default:
+                        return 0;
+                }
             }
         }
-        return angle;
+        return 0;
     }
 
-    // Rotate the original bitmap according to the given orientation angle
-    private static Bitmap rotateBitmap(Bitmap bitmap, int angle) {
-        // If the rotate angle is 0, then return the original image, else return the rotated image
-        if (angle != 0) {
-            Matrix matrix = new Matrix();
-            matrix.postRotate(angle);
-            return Bitmap.createBitmap(
-                    bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-        } else {
+    private static int readShort(byte[] bytes, int offset, boolean littleEndian) {
+        int first = bytes[offset] & 0xFF;
+        int second = bytes[offset + 1] & 0xFF;
+        return littleEndian ? (second << 8) | first : (first << 8) | second;
+    }
+
+    private static int readInt(byte[] bytes, int offset, boolean littleEndian) {
+        int high = readShort(bytes, littleEndian ? offset + 2 : offset, littleEndian);
+        int low = readShort(bytes, littleEndian ? offset : offset + 2, littleEndian);
+        return (high << 16) | low;
+    }
+
+    // Scale the bitmap by the given ratio and rotate it by the given angle in one pass into a
+    // pooled bitmap, and give the original back to the pool.
+    static Bitmap transformBitmap(Bitmap bitmap, double ratio, int angle) {
+        // If there is nothing to do, then return the original image
+        if (ratio == 1 && angle == 0) {
             return bitmap;
         }
+
+        Matrix matrix = new Matrix();
+        matrix.postScale((float) ratio, (float) ratio);
+        matrix.postRotate(angle);
+        RectF bounds = new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+
+        Bitmap transformed = BitmapPool.getInstance().get(
+                Math.max(1, Math.round(bounds.width())),
+                Math.max(1, Math.round(bounds.height())),
+                Bitmap.Config.ARGB_8888);
+        new Canvas(transformed).drawBitmap(bitmap, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        BitmapPool.getInstance().put(bitmap);
+        return transformed;
+    }
+
+    // Map the rectangle and landmarks of a face detected in a scaled or cropped image back into the
+    // image it came from: scale, then translate.
+    static void transformFace(
+            Face face, double translateX, double translateY, double scaleX, double scaleY) {
+        FaceRectangle rect = face.faceRectangle;
+        FaceRectangle transformed = new FaceRectangle();
+        transformed.left = (int) Math.round(translateX + rect.left * scaleX);
+        transformed.top = (int) Math.round(translateY + rect.top * scaleY);
+        transformed.width = Math.max(1, (int) Math.round(rect.width * scaleX));
+        transformed.height = Math.max(1, (int) Math.round(rect.height * scaleY));
+        face.faceRectangle = transformed;
+        if (face.faceLandmarks != null) {
+            for (FeatureCoordinate landmark: FaceAnnotationView.getLandmarks(face.faceLandmarks)) {
+                if (landmark != null) {
+                    landmark.x = translateX + landmark.x * scaleX;
+                    landmark.y = translateY + landmark.y * scaleY;
+                }
+            }
+        }
+    }
+
+    // Scale the bitmap by the given ratio into a pooled bitmap, keeping the original.
+    static Bitmap scaleToPooledBitmap(Bitmap bitmap, double ratio) {
+        Bitmap scaled = BitmapPool.getInstance().get(
+                Math.max(1, (int) Math.round(bitmap.getWidth() * ratio)),
+                Math.max(1, (int) Math.round(bitmap.getHeight() * ratio)),
+                Bitmap.Config.ARGB_8888);
+        new Canvas(scaled).drawBitmap(bitmap,
+                new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight()),
+                new Rect(0, 0, scaled.getWidth(), scaled.getHeight()),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        return scaled;
     }
 
     // Resize face rectangle, for better view for human
     // To make the rectangle larger, faceRectEnlargeRatio should be larger than 1, recommend 1.3
-    private static FaceRectangle calculateFaceRectangle(
+    static FaceRectangle calculateFaceRectangle(
             Bitmap bitmap, FaceRectangle faceRectangle, double faceRectEnlargeRatio) {
         // Get the resized side length of the face rectangle
         double sideLength = faceRectangle.width * faceRectEnlargeRatio;
@@ -32,26 +32,39 @@
 //
 package com.microsoft.projectoxford.face.samples.helper;
 
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Defined several functions to log service calls.
+ *
+ * Each category keeps its latest entries in a bounded ring that background tasks append to without
+ * locking. The get methods return a snapshot, formatted as it is read.
  */
 public class LogHelper {
 
     // Get all the detection log items.
     public static List<String> getDetectionLog() {
-        return mDetectionLog;
+        return mDetectionLog.snapshot(FORMATTER);
     }
 
     // Add a new detection log item.
     public static void addDetectionLog(String log) {
-        mDetectionLog.add(LogHelper.getLogHeader() + log);
+        mDetectionLog.add(log);
     }
 
     // Clear all detection log items.
@@ -61,12 +74,12 @@ public class LogHelper {
 
     // Get all the verification log items.
     public static List<String> getVerificationLog() {
-        return mVerificationLog;
+        return mVerificationLog.snapshot(FORMATTER);
     }
 
     // Add a new verification log item.
     public static void addVerificationLog(String log) {
-        mVerificationLog.add(LogHelper.getLogHeader() + log);
+        mVerificationLog.add(log);
     }
 
     // Clear all verification log items.
@@ -76,12 +89,12 @@ public class LogHelper {
 
     // Get all the grouping log items.
     public static List<String> getGroupingLog() {
-        return mGroupingLog;
+        return mGroupingLog.snapshot(FORMATTER);
     }
 
     // Add a new grouping log item.
     public static void addGroupingLog(String log) {
-        mGroupingLog.add(LogHelper.getLogHeader() + log);
+        mGroupingLog.add(log);
     }
 
     // Clear all grouping log items.
@@ -91,12 +104,12 @@ public class LogHelper {
 
     // Get all the find similar face log items.
     public static List<String> getFindSimilarFaceLog() {
-        return mFindSimilarFaceLog;
+        return mFindSimilarFaceLog.snapshot(FORMATTER);
     }
 
     // Add a new find similar face log item.
     public static void addFindSimilarFaceLog(String log) {
-        mFindSimilarFaceLog.add(LogHelper.getLogHeader() + log);
+        mFindSimilarFaceLog.add(log);
     }
 
     // Clear all find similar face log items.
@@ -106,12 +119,12 @@ public class LogHelper {
 
     // Get all the identification log items.
     public static List<String> getIdentificationLog() {
-        return mIdentificationLog;
+        return mIdentificationLog.snapshot(FORMATTER);
     }
 
     // Add a new identification log item.
     public static void addIdentificationLog(String log) {
-        mIdentificationLog.add(LogHelper.getLogHeader() + log);
+        mIdentificationLog.add(log);
     }
 
     // Clear all identification log items.
@@ -119,24 +132,113 @@ public class LogHelper {
         mIdentificationLog.clear();
     }
 
+    // Also copy every log item to a file in the given directory, on a background thread. The file
+    // is rotated once it reaches its maximum size, keeping one previous file.
+    public static synchronized void startFileSpill(File directory) {
+        if (sSpillExecutor != null) {
+            return;
+        }
+        directory.mkdirs();
+        final File file = new File(directory, SPILL_FILE_NAME);
+        final long[] spilledSequences = new long[RINGS.length];
+        for (int i = 0; i < RINGS.length; ++i) {
+            spilledSequences[i] = RINGS[i].getNextSequence();
+        }
+
+        sSpillExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LogHelper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sSpillExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    spill(file, spilledSequences);
+                } catch (IOException e) {
+                    Log.w("LogHelper", "Cannot write the log file: " + e.getMessage());
+                }
+            }
+        }, SPILL_INTERVAL_SECONDS, SPILL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Append the items added since the last spill, noting the ones overwritten before they could be.
+    private static void spill(File file, long[] spilledSequences) throws IOException {
+        if (file.length() >= SPILL_FILE_MAX_BYTES) {
+            File previousFile = new File(file.getPath() + ".1");
+            previousFile.delete();
+            file.renameTo(previousFile);
+        }
+
+        Writer writer = new FileWriter(file, true);
+        try {
+            for (int i = 0; i < RINGS.length; ++i) {
+                String category = RINGS[i].getCategory();
+                List<LogRing.Entry> entries = new ArrayList<>();
+                long nextSequence = RINGS[i].drain(spilledSequences[i], entries);
+                long expectedSequence = spilledSequences[i];
+                for (LogRing.Entry entry: entries) {
+                    writeDropped(writer, category, entry.sequence - expectedSequence);
+                    writer.write(category + " " + FORMATTER.format(entry) + "\n");
+                    expectedSequence = entry.sequence + 1;
+                }
+                writeDropped(writer, category, nextSequence - expectedSequence);
+                spilledSequences[i] = nextSequence;
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeDropped(Writer writer, String category, long count) throws IOException {
+        if (count > 0) {
+            writer.write(category + " (" + count + " items dropped)\n");
+        }
+    }
+
+    // Items kept in each category, the oldest are dropped first.
+    private static final int LOG_CAPACITY = 1024;
+
+    private static final String SPILL_FILE_NAME = "service.log";
+    private static final long SPILL_FILE_MAX_BYTES = 512 * 1024;
+    private static final long SPILL_INTERVAL_SECONDS = 1;
+
     // Detection log items.
-    private static List<String> mDetectionLog = new ArrayList<>();
+    private static final LogRing mDetectionLog = new LogRing("Detection", LOG_CAPACITY);
 
     // Verification log items.
-    private static List<String> mVerificationLog = new ArrayList<>();
+    private static final LogRing mVerificationLog = new LogRing("Verification", LOG_CAPACITY);
 
     // Grouping log items.
-    private static List<String> mGroupingLog = new ArrayList<>();
+    private static final LogRing mGroupingLog = new LogRing("Grouping", LOG_CAPACITY);
 
     // Find Similar face log items.
-    private static List<String> mFindSimilarFaceLog = new ArrayList<>();
+    private static final LogRing mFindSimilarFaceLog = new LogRing("FindSimilarFace", LOG_CAPACITY);
 
     // Identification log items.
-    private static List<String> mIdentificationLog = new ArrayList<>();
-
-    // Get the current time and add to log.
-    private static String getLogHeader() {
-        DateFormat dateFormat = new SimpleDateFormat("HH:mm:ss", Locale.US);
-        return "[" + dateFormat.format(Calendar.getInstance().getTime()) + "] ";
-    }
+    private static final LogRing mIdentificationLog = new LogRing("Identification", LOG_CAPACITY);
+
+    private static final LogRing[] RINGS = {
+            mDetectionLog, mVerificationLog, mGroupingLog, mFindSimilarFaceLog, mIdentificationLog };
+
+    private static ScheduledExecutorService sSpillExecutor;
+
+    // Date formats are not thread safe, keep one per thread that formats log items.
+    private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            return new SimpleDateFormat("HH:mm:ss", Locale.US);
+        }
+    };
+
+    // Add the time to the log item.
+    private static final LogRing.Formatter FORMATTER = new LogRing.Formatter() {
+        @Override
+        public String format(LogRing.Entry entry) {
+            return "[" + DATE_FORMAT.get().format(new Date(entry.time)) + "] " + entry.message;
+        }
+    };
 }
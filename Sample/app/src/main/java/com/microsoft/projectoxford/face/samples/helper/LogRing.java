@@ -0,0 +1,144 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.samples.helper;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded log that any thread can append to without locking. Each append claims the next
+ * sequence number and stores its entry in that slot of a ring, overwriting the oldest entry once
+ * the ring is full. Readers take snapshots, skipping slots that are being written or were
+ * overwritten meanwhile. Entries are only formatted when read.
+ */
+class LogRing {
+    static class Entry {
+        final long sequence;
+        final long time;
+        final String message;
+
+        Entry(long sequence, long time, String message) {
+            this.sequence = sequence;
+            this.time = time;
+            this.message = message;
+        }
+    }
+
+    private final String mCategory;
+    private final AtomicReferenceArray<Entry> mSlots;
+    private final int mMask;
+    private final AtomicLong mNextSequence = new AtomicLong();
+    private volatile long mClearedSequence;
+
+    // The capacity is rounded up to a power of two.
+    LogRing(String category, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mCategory = category;
+        mSlots = new AtomicReferenceArray<>(size);
+        mMask = size - 1;
+    }
+
+    String getCategory() {
+        return mCategory;
+    }
+
+    void add(String message) {
+        long sequence = mNextSequence.getAndIncrement();
+        mSlots.set((int) (sequence & mMask), new Entry(sequence, System.currentTimeMillis(), message));
+    }
+
+    // Hide every entry added so far from later snapshots.
+    void clear() {
+        mClearedSequence = mNextSequence.get();
+    }
+
+    long getNextSequence() {
+        return mNextSequence.get();
+    }
+
+    // The entries still in the ring from the given sequence number on, oldest first.
+    List<Entry> getEntries(long fromSequence) {
+        long end = mNextSequence.get();
+        long start = Math.max(Math.max(fromSequence, mClearedSequence), end - mSlots.length());
+        List<Entry> entries = new ArrayList<>((int) Math.max(end - start, 0));
+        for (long sequence = start; sequence < end; ++sequence) {
+            Entry entry = mSlots.get((int) (sequence & mMask));
+            if (entry != null && entry.sequence == sequence) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    // Reads the entries from the given sequence number on into the list, oldest first, cleared ones
+    // included, and returns the sequence number to read from next. Stops at the first slot that is
+    // claimed but not stored yet, so that its entry is read next time. Skips the entries the ring
+    // has overwritten, which are the gaps in the sequence numbers read.
+    long drain(long fromSequence, List<Entry> entries) {
+        long end = mNextSequence.get();
+        long sequence = Math.max(fromSequence, end - mSlots.length());
+        for (; sequence < end; ++sequence) {
+            Entry entry = mSlots.get((int) (sequence & mMask));
+            if (entry == null || entry.sequence < sequence) {
+                break;
+            }
+            if (entry.sequence == sequence) {
+                entries.add(entry);
+            }
+        }
+        return sequence;
+    }
+
+    // A snapshot of the visible entries that formats each one when it is read.
+    List<String> snapshot(final Formatter formatter) {
+        final List<Entry> entries = getEntries(0);
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return formatter.format(entries.get(index));
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    interface Formatter {
+        String format(Entry entry);
+    }
+}
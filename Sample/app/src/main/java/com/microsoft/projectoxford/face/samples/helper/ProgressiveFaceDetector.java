@@ -0,0 +1,104 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.samples.helper;
+
+import android.graphics.Bitmap;
+
+import com.microsoft.projectoxford.face.FaceServiceClient;
+import com.microsoft.projectoxford.face.contract.Face;
+import com.microsoft.projectoxford.face.rest.ClientException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Detects faces in a small rendition of the image first, and only uploads larger ones when the
+ * faces may be too small to be found in it. Portraits, where the faces are large, are then detected
+ * in a fraction of the bytes, while the image is still uploaded at its full size when needed.
+ */
+public class ProgressiveFaceDetector {
+    // The longer side of the first rendition uploaded. Each next one is twice as large.
+    private static final int FIRST_SIDE_LENGTH = 640;
+
+    // The service detects faces from 36 pixels. A rendition whose smallest face is less than twice
+    // that may have missed smaller faces, so the next one is uploaded.
+    private static final int MIN_FACE_SIDE_LENGTH = 72;
+
+    // Detect the faces in the bitmap, in its coordinates. The bitmap must not be released until
+    // this returns.
+    public static Face[] detect(
+            FaceServiceClient faceServiceClient,
+            Bitmap bitmap,
+            boolean returnFaceId,
+            boolean returnFaceLandmarks,
+            FaceServiceClient.FaceAttributeType[] returnFaceAttributes)
+            throws ClientException, IOException {
+        int maxSideLength = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        for (int sideLength = FIRST_SIDE_LENGTH; sideLength < maxSideLength; sideLength *= 2) {
+            Bitmap rendition = ImageHelper.scaleToPooledBitmap(
+                    bitmap, sideLength / (double) maxSideLength);
+            int renditionWidth = rendition.getWidth();
+            int renditionHeight = rendition.getHeight();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try {
+                rendition.compress(Bitmap.CompressFormat.JPEG, ImageHelper.UPLOAD_JPEG_QUALITY, output);
+            } finally {
+                BitmapPool.getInstance().put(rendition);
+            }
+
+            Face[] faces = faceServiceClient.detect(new ByteArrayInputStream(output.toByteArray()),
+                    returnFaceId, returnFaceLandmarks, returnFaceAttributes);
+            if (faces.length > 0 && getMinFaceSideLength(faces) >= MIN_FACE_SIDE_LENGTH) {
+                double scaleX = bitmap.getWidth() / (double) renditionWidth;
+                double scaleY = bitmap.getHeight() / (double) renditionHeight;
+                for (Face face: faces) {
+                    ImageHelper.transformFace(face, 0, 0, scaleX, scaleY);
+                }
+                return faces;
+            }
+        }
+
+        return faceServiceClient.detect(ImageHelper.encodeForUpload(bitmap),
+                returnFaceId, returnFaceLandmarks, returnFaceAttributes);
+    }
+
+    private static int getMinFaceSideLength(Face[] faces) {
+        int minSideLength = Integer.MAX_VALUE;
+        for (Face face: faces) {
+            minSideLength = Math.min(minSideLength,
+                    Math.min(face.faceRectangle.width, face.faceRectangle.height));
+        }
+        return minSideLength;
+    }
+}
@@ -33,21 +33,134 @@
 package com.microsoft.projectoxford.face.samples.helper;
 
 import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
 
 import com.microsoft.projectoxford.face.FaceServiceClient;
 import com.microsoft.projectoxford.face.FaceServiceRestClient;
+import com.microsoft.projectoxford.face.offline.Mutation;
+import com.microsoft.projectoxford.face.offline.OfflineMutationQueue;
+import com.microsoft.projectoxford.face.rest.ClientException;
+import com.microsoft.projectoxford.face.rest.AdaptiveConcurrencyLimit;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
+import com.microsoft.projectoxford.face.rest.RequestOptions;
+import com.microsoft.projectoxford.face.rest.RequestPriority;
+import com.microsoft.projectoxford.face.rest.RequestScheduler;
 import com.microsoft.projectoxford.face.samples.R;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.UUID;
+
 public class SampleApp extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
-        sFaceServiceClient = new FaceServiceRestClient(getString(R.string.endpoint), getString(R.string.subscription_key));
+        TaskEngine.install(this);
+        LogHelper.startFileSpill(new File(getFilesDir(), LOG_DIRECTORY));
+        sFaceServiceClient = new FaceServiceRestClient(getString(R.string.endpoint),
+                getString(R.string.subscription_key),
+                new RequestScheduler(new AdaptiveConcurrencyLimit()));
+
+        try {
+            sOfflineMutationQueue = new OfflineMutationQueue(
+                    new File(getFilesDir(), OFFLINE_QUEUE_DIRECTORY), sFaceServiceClient);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot open the offline mutation queue", e);
+            return;
+        }
+        sOfflineMutationQueue.setListener(new OfflineMutationQueue.Listener() {
+            @Override
+            public void onCompleted(Mutation mutation, UUID resultId) {
+                if (mutation.type == Mutation.Type.ADD_PERSON_FACE) {
+                    // The face was saved under its local id while offline, move it to the real one.
+                    String localFaceId = mutation.persistedFaceId.toString();
+                    String personId = mutation.personId.toString();
+                    StorageHelper.setFaceUri(resultId.toString(),
+                            StorageHelper.getFaceUri(localFaceId, SampleApp.this), personId, SampleApp.this);
+                    StorageHelper.deleteFaces(Collections.singletonList(localFaceId), personId, SampleApp.this);
+                }
+            }
+
+            @Override
+            public void onFailed(Mutation mutation, ClientException exception) {
+                Log.w(TAG, "Queued " + mutation.type + " rejected: " + exception.getMessage());
+            }
+        });
+
+        // Replay what was queued in previous runs, and again whenever the network comes back.
+        replayOfflineMutations();
+        registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                ConnectivityManager connectivityManager =
+                        (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+                NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+                if (networkInfo != null && networkInfo.isConnected()) {
+                    replayOfflineMutations();
+                }
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ThumbnailLoader.getInstance(this).onTrimMemory(level);
+        BitmapPool.getInstance().onTrimMemory(level);
+        // Once no activity is visible the process may be killed, write local changes out first.
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            StorageHelper.flush(this);
+        }
     }
 
     public static FaceServiceClient getFaceServiceClient() {
         return sFaceServiceClient;
     }
 
+    // Get a client whose calls are cancelled together with the given token.
+    public static FaceServiceClient getFaceServiceClient(CancellationToken cancellationToken) {
+        return getFaceServiceClient(cancellationToken, RequestPriority.INTERACTIVE);
+    }
+
+    // Get a client whose calls are cancelled together with the given token and are admitted
+    // with the given priority, so that bulk enrollment does not delay interactive calls.
+    public static FaceServiceClient getFaceServiceClient(
+            CancellationToken cancellationToken, RequestPriority priority) {
+        return sFaceServiceClient.withRequestOptions(new RequestOptions()
+                .setCancellationToken(cancellationToken)
+                .setPriority(priority));
+    }
+
+    // Get the queue of person group changes made while the service could not be reached.
+    public static OfflineMutationQueue getOfflineMutationQueue() {
+        return sOfflineMutationQueue;
+    }
+
+    private static void replayOfflineMutations() {
+        TaskEngine.getNetworkExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sOfflineMutationQueue.replay(OFFLINE_REPLAY_CONCURRENCY);
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot replay the offline mutation queue", e);
+                }
+            }
+        });
+    }
+
+    private static final String TAG = "SampleApp";
+    private static final String LOG_DIRECTORY = "logs";
+    private static final String OFFLINE_QUEUE_DIRECTORY = "offline";
+    private static final int OFFLINE_REPLAY_CONCURRENCY = 4;
+
     private static FaceServiceClient sFaceServiceClient;
+    private static OfflineMutationQueue sOfflineMutationQueue;
 }
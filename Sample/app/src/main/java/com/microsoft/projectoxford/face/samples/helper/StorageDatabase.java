@@ -0,0 +1,175 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.samples.helper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The SQLite database behind StorageHelper. Persons and faces are indexed by their parent, so that
+ * opening a person group only reads its own rows, and each change is one row written.
+ */
+class StorageDatabase extends SQLiteOpenHelper {
+    static final String PERSON_GROUPS = "person_groups";
+    static final String PERSONS = "persons";
+    static final String FACES = "faces";
+
+    static final String ID = "id";
+    static final String NAME = "name";
+    static final String PERSON_GROUP_ID = "person_group_id";
+    static final String PERSON_ID = "person_id";
+    static final String URI = "uri";
+
+    private static final String DATABASE_NAME = "storage.db";
+    private static final int DATABASE_VERSION = 1;
+
+    // Set once the shared preferences are imported, until they are cleared.
+    private static final String MIGRATION_PREFERENCES = "StorageDatabase";
+    private static final String CLEAR_PENDING = "ClearPending";
+
+    private static StorageDatabase sInstance;
+
+    private final Context mContext;
+
+    static synchronized StorageDatabase getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new StorageDatabase(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private StorageDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mContext = context;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + PERSON_GROUPS + " ("
+                + ID + " TEXT PRIMARY KEY, "
+                + NAME + " TEXT)");
+        db.execSQL("CREATE TABLE " + PERSONS + " ("
+                + PERSON_GROUP_ID + " TEXT NOT NULL, "
+                + ID + " TEXT NOT NULL, "
+                + NAME + " TEXT, "
+                + "PRIMARY KEY (" + PERSON_GROUP_ID + ", " + ID + "))");
+        db.execSQL("CREATE TABLE " + FACES + " ("
+                + ID + " TEXT PRIMARY KEY, "
+                + PERSON_ID + " TEXT, "
+                + URI + " TEXT)");
+        db.execSQL("CREATE INDEX faces_person_id ON " + FACES + " (" + PERSON_ID + ")");
+
+        importSharedPreferences(db);
+    }
+
+    // Called once onCreate's transaction has committed, so the imported data is safe on disk.
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        SharedPreferences migration = getPreferences(MIGRATION_PREFERENCES);
+        if (migration.getBoolean(CLEAR_PENDING, false)) {
+            clearSharedPreferences();
+            migration.edit().remove(CLEAR_PENDING).commit();
+        }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+
+    // Copies what earlier versions of the sample stored in shared preferences into the database.
+    // The preferences are only cleared from onOpen, since this transaction may still roll back.
+    private void importSharedPreferences(SQLiteDatabase db) {
+        SharedPreferences personGroupIdSet = getPreferences("PersonGroupIdSet");
+        SharedPreferences personGroupIdNameMap = getPreferences("PersonGroupIdNameMap");
+        SharedPreferences faceIdUriMap = getPreferences("FaceIdUriMap");
+
+        Set<String> personGroupIds = personGroupIdSet.getStringSet("PersonGroupIdSet", new HashSet<String>());
+        for (String personGroupId : personGroupIds) {
+            StorageHelper.insertOrReplace(db, PERSON_GROUPS, ID, personGroupId, NAME,
+                    personGroupIdNameMap.getString(personGroupId, ""));
+
+            SharedPreferences personIdSet = getPreferences(personGroupId + "PersonIdSet");
+            SharedPreferences personIdNameMap = getPreferences(personGroupId + "PersonIdNameMap");
+            for (String personId : personIdSet.getStringSet("PersonIdSet", new HashSet<String>())) {
+                StorageHelper.insertOrReplace(db, PERSONS, PERSON_GROUP_ID, personGroupId, ID, personId,
+                        NAME, personIdNameMap.getString(personId, ""));
+
+                SharedPreferences faceIdSet = getPreferences(personId + "FaceIdSet");
+                for (String faceId : faceIdSet.getStringSet("FaceIdSet", new HashSet<String>())) {
+                    StorageHelper.insertOrReplace(db, FACES, ID, faceId, PERSON_ID, personId,
+                            URI, faceIdUriMap.getString(faceId, ""));
+                }
+            }
+        }
+        getPreferences(MIGRATION_PREFERENCES).edit().putBoolean(CLEAR_PENDING, true).commit();
+    }
+
+    // Clears the imported preferences, the sets listing the others last, so that clearing again
+    // after being interrupted still finds everything.
+    private void clearSharedPreferences() {
+        SharedPreferences personGroupIdSet = getPreferences("PersonGroupIdSet");
+        for (String personGroupId : personGroupIdSet.getStringSet("PersonGroupIdSet", new HashSet<String>())) {
+            SharedPreferences personIdSet = getPreferences(personGroupId + "PersonIdSet");
+            for (String personId : personIdSet.getStringSet("PersonIdSet", new HashSet<String>())) {
+                clear(getPreferences(personId + "FaceIdSet"));
+            }
+            clear(personIdSet);
+            clear(getPreferences(personGroupId + "PersonIdNameMap"));
+        }
+        clear(getPreferences("PersonGroupIdNameMap"));
+        clear(getPreferences("FaceIdUriMap"));
+        clear(personGroupIdSet);
+    }
+
+    private SharedPreferences getPreferences(String name) {
+        return mContext.getSharedPreferences(name, Context.MODE_PRIVATE);
+    }
+
+    private static void clear(SharedPreferences preferences) {
+        Map<String, ?> all = preferences.getAll();
+        if (!all.isEmpty()) {
+            preferences.edit().clear().commit();
+        }
+    }
+}
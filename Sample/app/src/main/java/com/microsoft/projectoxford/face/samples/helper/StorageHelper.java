@@ -32,174 +32,353 @@
 //
 package com.microsoft.projectoxford.face.samples.helper;
 
+import android.content.ContentValues;
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import static com.microsoft.projectoxford.face.samples.helper.StorageDatabase.FACES;
+import static com.microsoft.projectoxford.face.samples.helper.StorageDatabase.ID;
+import static com.microsoft.projectoxford.face.samples.helper.StorageDatabase.NAME;
+import static com.microsoft.projectoxford.face.samples.helper.StorageDatabase.PERSONS;
+import static com.microsoft.projectoxford.face.samples.helper.StorageDatabase.PERSON_GROUPS;
+import static com.microsoft.projectoxford.face.samples.helper.StorageDatabase.PERSON_GROUP_ID;
+import static com.microsoft.projectoxford.face.samples.helper.StorageDatabase.PERSON_ID;
+import static com.microsoft.projectoxford.face.samples.helper.StorageDatabase.URI;
+
 /**
  * Defined several functions to manage local storage.
+ *
+ * Changes are written on a background thread and batched with any others made meanwhile. Reads see
+ * every earlier change, from memory until it is written, and never wait for the writer. Call flush
+ * when a change must be on disk before going on.
  */
 public class StorageHelper {
+    // The changes not written yet. Held while enqueuing a change and for a whole read.
+    private static final StorageOverlay sOverlay = new StorageOverlay();
+
     public static Set<String> getAllPersonGroupIds(Context context) {
-        SharedPreferences personGroupIdSet =
-                context.getSharedPreferences("PersonGroupIdSet", Context.MODE_PRIVATE);
-        return personGroupIdSet.getStringSet("PersonGroupIdSet", new HashSet<String>());
+        synchronized (sOverlay) {
+            Set<String> personGroupIds = queryIds(getDatabase(context), PERSON_GROUPS, null);
+            for (Map.Entry<String, StorageOverlay.Row> entry: sOverlay.getPersonGroups().entrySet()) {
+                if (entry.getValue().isDeleted()) {
+                    personGroupIds.remove(entry.getKey());
+                } else {
+                    personGroupIds.add(entry.getKey());
+                }
+            }
+            return personGroupIds;
+        }
     }
 
     public static String getPersonGroupName(String personGroupId, Context context) {
-        SharedPreferences personGroupIdNameMap =
-                context.getSharedPreferences("PersonGroupIdNameMap", Context.MODE_PRIVATE);
-        return personGroupIdNameMap.getString(personGroupId, "");
+        synchronized (sOverlay) {
+            SQLiteDatabase db = getDatabase(context);
+            StorageOverlay.Row row = sOverlay.getPersonGroups().get(personGroupId);
+            if (row != null) {
+                return row.isDeleted() ? "" : row.mValue;
+            }
+            return queryString(db, PERSON_GROUPS, NAME, ID + " = ?", personGroupId);
+        }
     }
 
-    public static void setPersonGroupName(String personGroupIdToAdd, String personGroupName, Context context) {
-        SharedPreferences personGroupIdNameMap =
-                context.getSharedPreferences("PersonGroupIdNameMap", Context.MODE_PRIVATE);
-
-        SharedPreferences.Editor personGroupIdNameMapEditor = personGroupIdNameMap.edit();
-        personGroupIdNameMapEditor.putString(personGroupIdToAdd, personGroupName);
-        personGroupIdNameMapEditor.commit();
-
-        Set<String> personGroupIds = getAllPersonGroupIds(context);
-        Set<String> newPersonGroupIds = new HashSet<>();
-        for (String personGroupId: personGroupIds) {
-            newPersonGroupIds.add(personGroupId);
+    public static void setPersonGroupName(
+            final String personGroupIdToAdd, final String personGroupName, Context context) {
+        StorageWriter writer = StorageWriter.getInstance(context);
+        synchronized (sOverlay) {
+            long sequence = writer.enqueue(new StorageWriter.Write() {
+                @Override
+                public void apply(SQLiteDatabase db) {
+                    insertOrReplace(db, PERSON_GROUPS, ID, personGroupIdToAdd, NAME, personGroupName);
+                }
+            });
+            sOverlay.setPersonGroup(sequence, personGroupIdToAdd, personGroupName);
         }
-        newPersonGroupIds.add(personGroupIdToAdd);
-        SharedPreferences personGroupIdSet =
-                context.getSharedPreferences("PersonGroupIdSet", Context.MODE_PRIVATE);
-        SharedPreferences.Editor personGroupIdSetEditor = personGroupIdSet.edit();
-        personGroupIdSetEditor.putStringSet("PersonGroupIdSet", newPersonGroupIds);
-        personGroupIdSetEditor.commit();
     }
 
     public static void deletePersonGroups(List<String> personGroupIdsToDelete, Context context) {
-        SharedPreferences personGroupIdNameMap =
-                context.getSharedPreferences("PersonGroupIdNameMap", Context.MODE_PRIVATE);
-        SharedPreferences.Editor personGroupIdNameMapEditor = personGroupIdNameMap.edit();
-        for (String personGroupId: personGroupIdsToDelete) {
-            personGroupIdNameMapEditor.remove(personGroupId);
-        }
-        personGroupIdNameMapEditor.commit();
-
-        Set<String> personGroupIds = getAllPersonGroupIds(context);
-        Set<String> newPersonGroupIds = new HashSet<>();
-        for (String personGroupId: personGroupIds) {
-            if (!personGroupIdsToDelete.contains(personGroupId)) {
-                newPersonGroupIds.add(personGroupId);
+        final List<String> personGroupIds = new ArrayList<>(personGroupIdsToDelete);
+        StorageWriter writer = StorageWriter.getInstance(context);
+        synchronized (sOverlay) {
+            long sequence = writer.enqueue(new StorageWriter.Write() {
+                @Override
+                public void apply(SQLiteDatabase db) {
+                    for (String personGroupId: personGroupIds) {
+                        db.delete(FACES, PERSON_ID + " IN (SELECT " + ID + " FROM " + PERSONS
+                                + " WHERE " + PERSON_GROUP_ID + " = ?)", new String[] { personGroupId });
+                        db.delete(PERSONS, PERSON_GROUP_ID + " = ?", new String[] { personGroupId });
+                        db.delete(PERSON_GROUPS, ID + " = ?", new String[] { personGroupId });
+                    }
+                }
+            });
+            for (String personGroupId: personGroupIds) {
+                sOverlay.deletePersonGroup(sequence, personGroupId);
             }
         }
-        SharedPreferences personGroupIdSet =
-                context.getSharedPreferences("PersonGroupIdSet", Context.MODE_PRIVATE);
-        SharedPreferences.Editor personGroupIdSetEditor = personGroupIdSet.edit();
-        personGroupIdSetEditor.putStringSet("PersonGroupIdSet", newPersonGroupIds);
-        personGroupIdSetEditor.commit();
     }
 
     public static Set<String> getAllPersonIds(String personGroupId, Context context) {
-        SharedPreferences personIdSet =
-                context.getSharedPreferences(personGroupId + "PersonIdSet", Context.MODE_PRIVATE);
-        return personIdSet.getStringSet("PersonIdSet", new HashSet<String>());
+        synchronized (sOverlay) {
+            Set<String> personIds = new HashSet<>();
+            for (String personId: queryIds(getDatabase(context), PERSONS, personGroupId)) {
+                if (!sOverlay.isPersonDeletedAfter(personGroupId, personId, 0)) {
+                    personIds.add(personId);
+                }
+            }
+            for (Map.Entry<String, StorageOverlay.Row> entry: sOverlay.getPersons(personGroupId)) {
+                StorageOverlay.Row row = entry.getValue();
+                if (row.isDeleted()
+                        || sOverlay.isPersonDeletedAfter(personGroupId, entry.getKey(), row.mSequence)) {
+                    personIds.remove(entry.getKey());
+                } else {
+                    personIds.add(entry.getKey());
+                }
+            }
+            return personIds;
+        }
     }
 
     public static String getPersonName(String personId, String personGroupId, Context context) {
-        SharedPreferences personIdNameMap =
-                context.getSharedPreferences(personGroupId + "PersonIdNameMap", Context.MODE_PRIVATE);
-        return personIdNameMap.getString(personId, "");
+        synchronized (sOverlay) {
+            SQLiteDatabase db = getDatabase(context);
+            StorageOverlay.Row row = sOverlay.getPerson(personGroupId, personId);
+            long sequence = row == null ? 0 : row.mSequence;
+            if (sOverlay.isPersonDeletedAfter(personGroupId, personId, sequence)
+                    || row != null && row.isDeleted()) {
+                return "";
+            }
+            if (row != null) {
+                return row.mValue;
+            }
+            return queryString(db, PERSONS, NAME,
+                    PERSON_GROUP_ID + " = ? AND " + ID + " = ?", personGroupId, personId);
+        }
     }
 
     public static void setPersonName(String personIdToAdd, String personName, String personGroupId, Context context) {
-        SharedPreferences personIdNameMap =
-                context.getSharedPreferences(personGroupId + "PersonIdNameMap", Context.MODE_PRIVATE);
-
-        SharedPreferences.Editor personIdNameMapEditor = personIdNameMap.edit();
-        personIdNameMapEditor.putString(personIdToAdd, personName);
-        personIdNameMapEditor.commit();
-
-        Set<String> personIds = getAllPersonIds(personGroupId, context);
-        Set<String> newPersonIds = new HashSet<>();
-        for (String personId: personIds) {
-            newPersonIds.add(personId);
-        }
-        newPersonIds.add(personIdToAdd);
-        SharedPreferences personIdSet =
-                context.getSharedPreferences(personGroupId + "PersonIdSet", Context.MODE_PRIVATE);
-        SharedPreferences.Editor personIdSetEditor = personIdSet.edit();
-        personIdSetEditor.putStringSet("PersonIdSet", newPersonIds);
-        personIdSetEditor.commit();
+        setPersonNames(Collections.singletonMap(personIdToAdd, personName), personGroupId, context);
     }
 
-    public static void deletePersons(List<String> personIdsToDelete, String personGroupId, Context context) {
-        SharedPreferences personIdNameMap =
-                context.getSharedPreferences(personGroupId + "PersonIdNameMap", Context.MODE_PRIVATE);
-        SharedPreferences.Editor personIdNameMapEditor = personIdNameMap.edit();
-        for (String personId: personIdsToDelete) {
-            personIdNameMapEditor.remove(personId);
+    public static void setPersonNames(
+            Map<String, String> personIdNameMap, final String personGroupId, Context context) {
+        final Map<String, String> personIdNames = new LinkedHashMap<>(personIdNameMap);
+        StorageWriter writer = StorageWriter.getInstance(context);
+        synchronized (sOverlay) {
+            long sequence = writer.enqueue(new StorageWriter.Write() {
+                @Override
+                public void apply(SQLiteDatabase db) {
+                    for (Map.Entry<String, String> personIdName: personIdNames.entrySet()) {
+                        insertOrReplace(db, PERSONS, PERSON_GROUP_ID, personGroupId,
+                                ID, personIdName.getKey(), NAME, personIdName.getValue());
+                    }
+                }
+            });
+            for (Map.Entry<String, String> personIdName: personIdNames.entrySet()) {
+                sOverlay.setPerson(sequence, personGroupId, personIdName.getKey(), personIdName.getValue());
+            }
         }
-        personIdNameMapEditor.commit();
+    }
 
-        Set<String> personIds = getAllPersonIds(personGroupId, context);
-        Set<String> newPersonIds = new HashSet<>();
-        for (String personId: personIds) {
-            if (!personIdsToDelete.contains(personId)) {
-                newPersonIds.add(personId);
+    public static void deletePersons(List<String> personIdsToDelete, final String personGroupId, Context context) {
+        final List<String> personIds = new ArrayList<>(personIdsToDelete);
+        StorageWriter writer = StorageWriter.getInstance(context);
+        synchronized (sOverlay) {
+            long sequence = writer.enqueue(new StorageWriter.Write() {
+                @Override
+                public void apply(SQLiteDatabase db) {
+                    for (String personId: personIds) {
+                        db.delete(FACES, PERSON_ID + " = ?", new String[] { personId });
+                        db.delete(PERSONS, PERSON_GROUP_ID + " = ? AND " + ID + " = ?",
+                                new String[] { personGroupId, personId });
+                    }
+                }
+            });
+            for (String personId: personIds) {
+                sOverlay.deletePerson(sequence, personGroupId, personId);
             }
         }
-        SharedPreferences personIdSet =
-                context.getSharedPreferences(personGroupId + "PersonIdSet", Context.MODE_PRIVATE);
-        SharedPreferences.Editor personIdSetEditor = personIdSet.edit();
-        personIdSetEditor.putStringSet("PersonIdSet", newPersonIds);
-        personIdSetEditor.commit();
     }
 
     public static Set<String> getAllFaceIds(String personId, Context context) {
-        SharedPreferences faceIdSet =
-                context.getSharedPreferences(personId + "FaceIdSet", Context.MODE_PRIVATE);
-        return faceIdSet.getStringSet("FaceIdSet", new HashSet<String>());
+        synchronized (sOverlay) {
+            SQLiteDatabase db = getDatabase(context);
+            Set<String> personGroupIds = getPersonGroupIds(db, personId);
+            Set<String> faceIds = new HashSet<>();
+            if (!sOverlay.isFaceDeletedAfter(personId, personGroupIds, 0)) {
+                Cursor cursor = db.query(FACES, new String[] { ID },
+                        PERSON_ID + " = ?", new String[] { personId }, null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        faceIds.add(cursor.getString(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            for (Map.Entry<String, StorageOverlay.Row> entry: sOverlay.getFaces().entrySet()) {
+                StorageOverlay.Row row = entry.getValue();
+                if (!row.mParentId.equals(personId)) {
+                    // Adding the face to another person moves it there.
+                    if (!row.isDeleted()) {
+                        faceIds.remove(entry.getKey());
+                    }
+                } else if (row.isDeleted()
+                        || sOverlay.isFaceDeletedAfter(personId, personGroupIds, row.mSequence)) {
+                    faceIds.remove(entry.getKey());
+                } else {
+                    faceIds.add(entry.getKey());
+                }
+            }
+            return faceIds;
+        }
     }
 
     public static String getFaceUri(String faceId, Context context) {
-        SharedPreferences faceIdUriMap =
-                context.getSharedPreferences("FaceIdUriMap", Context.MODE_PRIVATE);
-        return faceIdUriMap.getString(faceId, "");
+        synchronized (sOverlay) {
+            SQLiteDatabase db = getDatabase(context);
+            StorageOverlay.Row row = sOverlay.getFaces().get(faceId);
+            if (row != null && !row.isDeleted()) {
+                return sOverlay.isFaceDeletedAfter(row.mParentId,
+                        getPersonGroupIds(db, row.mParentId), row.mSequence) ? "" : row.mValue;
+            }
+
+            Cursor cursor = db.query(FACES, new String[] { URI, PERSON_ID },
+                    ID + " = ?", new String[] { faceId }, null, null, null);
+            try {
+                if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                    return "";
+                }
+                String personId = cursor.getString(1);
+                if (row != null && row.mParentId.equals(personId)
+                        || sOverlay.isFaceDeletedAfter(personId, getPersonGroupIds(db, personId), 0)) {
+                    return "";
+                }
+                return cursor.getString(0);
+            } finally {
+                cursor.close();
+            }
+        }
     }
 
     public static void setFaceUri(String faceIdToAdd, String faceUri, String personId, Context context) {
-        SharedPreferences faceIdUriMap =
-                context.getSharedPreferences("FaceIdUriMap", Context.MODE_PRIVATE);
-
-        SharedPreferences.Editor faceIdUriMapEditor = faceIdUriMap.edit();
-        faceIdUriMapEditor.putString(faceIdToAdd, faceUri);
-        faceIdUriMapEditor.commit();
-
-        Set<String> faceIds = getAllFaceIds(personId, context);
-        Set<String> newFaceIds = new HashSet<>();
-        for (String faceId: faceIds) {
-            newFaceIds.add(faceId);
-        }
-        newFaceIds.add(faceIdToAdd);
-        SharedPreferences faceIdSet =
-                context.getSharedPreferences(personId + "FaceIdSet", Context.MODE_PRIVATE);
-        SharedPreferences.Editor faceIdSetEditor = faceIdSet.edit();
-        faceIdSetEditor.putStringSet("FaceIdSet", newFaceIds);
-        faceIdSetEditor.commit();
-    }
-
-    public static void deleteFaces(List<String> faceIdsToDelete, String personId, Context context) {
-        Set<String> faceIds = getAllFaceIds(personId, context);
-        Set<String> newFaceIds = new HashSet<>();
-        for (String faceId: faceIds) {
-            if (!faceIdsToDelete.contains(faceId)) {
-                newFaceIds.add(faceId);
-            }
-        }
-        SharedPreferences faceIdSet =
-                context.getSharedPreferences(personId + "FaceIdSet", Context.MODE_PRIVATE);
-        SharedPreferences.Editor faceIdSetEditor = faceIdSet.edit();
-        faceIdSetEditor.putStringSet("FaceIdSet", newFaceIds);
-        faceIdSetEditor.commit();
+        setFaceUris(Collections.singletonMap(faceIdToAdd, faceUri), personId, context);
+    }
+
+    public static void setFaceUris(Map<String, String> faceIdUriMap, final String personId, Context context) {
+        final Map<String, String> faceIdUris = new LinkedHashMap<>(faceIdUriMap);
+        StorageWriter writer = StorageWriter.getInstance(context);
+        synchronized (sOverlay) {
+            long sequence = writer.enqueue(new StorageWriter.Write() {
+                @Override
+                public void apply(SQLiteDatabase db) {
+                    for (Map.Entry<String, String> faceIdUri: faceIdUris.entrySet()) {
+                        insertOrReplace(db, FACES, ID, faceIdUri.getKey(), PERSON_ID, personId,
+                                URI, faceIdUri.getValue());
+                    }
+                }
+            });
+            for (Map.Entry<String, String> faceIdUri: faceIdUris.entrySet()) {
+                sOverlay.setFace(sequence, personId, faceIdUri.getKey(), faceIdUri.getValue());
+            }
+        }
+    }
+
+    public static void deleteFaces(List<String> faceIdsToDelete, final String personId, Context context) {
+        final List<String> faceIds = new ArrayList<>(faceIdsToDelete);
+        StorageWriter writer = StorageWriter.getInstance(context);
+        synchronized (sOverlay) {
+            long sequence = writer.enqueue(new StorageWriter.Write() {
+                @Override
+                public void apply(SQLiteDatabase db) {
+                    for (String faceId: faceIds) {
+                        db.delete(FACES, ID + " = ? AND " + PERSON_ID + " = ?", new String[] { faceId, personId });
+                    }
+                }
+            });
+            for (String faceId: faceIds) {
+                sOverlay.deleteFace(sequence, personId, faceId);
+            }
+        }
+    }
+
+    /**
+     * Waits until every change made so far is written to disk.
+     */
+    public static void flush(Context context) {
+        StorageWriter.getInstance(context).flush();
+    }
+
+    // Inserts or replaces the row with the given column and value pairs.
+    static void insertOrReplace(SQLiteDatabase db, String table, String... columnsAndValues) {
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < columnsAndValues.length; i += 2) {
+            values.put(columnsAndValues[i], columnsAndValues[i + 1]);
+        }
+        db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // The database for reading, without the changes still in the overlay. Called with the overlay held.
+    private static SQLiteDatabase getDatabase(Context context) {
+        StorageWriter writer = StorageWriter.getInstance(context);
+        sOverlay.prune(writer.getWrittenCount());
+        return writer.getDatabase();
+    }
+
+    // The person groups the person is in, on disk or in the overlay. Only needed, and only looked up,
+    // while a person group deletion is pending.
+    private static Set<String> getPersonGroupIds(SQLiteDatabase db, String personId) {
+        if (!sOverlay.hasPersonGroupDeletions()) {
+            return Collections.emptySet();
+        }
+        Set<String> personGroupIds = sOverlay.getPersonGroupIds(personId);
+        Cursor cursor = db.query(PERSONS, new String[] { PERSON_GROUP_ID },
+                ID + " = ?", new String[] { personId }, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                personGroupIds.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return personGroupIds;
+    }
+
+    private static Set<String> queryIds(SQLiteDatabase db, String table, String personGroupId) {
+        Set<String> ids = new HashSet<>();
+        Cursor cursor = personGroupId == null
+                ? db.query(table, new String[] { ID }, null, null, null, null, null)
+                : db.query(table, new String[] { ID },
+                        PERSON_GROUP_ID + " = ?", new String[] { personGroupId }, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    // The value of a column in the row matching the selection, or "" if there is none.
+    private static String queryString(SQLiteDatabase db, String table, String column, String selection,
+                                      String... selectionArgs) {
+        Cursor cursor = db.query(table, new String[] { column },
+                selection, selectionArgs, null, null, null);
+        try {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getString(0);
+            }
+            return "";
+        } finally {
+            cursor.close();
+        }
     }
 }
@@ -0,0 +1,201 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.samples.helper;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The StorageHelper changes queued for StorageWriter and not yet on disk, so that reads see them
+ * without waiting for the writer. Each change is kept with its sequence number in the writer's
+ * queue, and dropped once the writer has written that far. Deleting a person group or a person
+ * also hides the rows it deletes on disk, up to the rows changed after the deletion.
+ *
+ * Only used with the lock of the overlay held.
+ */
+class StorageOverlay {
+    /**
+     * A changed row: its parent, the person group of a person or the person of a face, and its
+     * value, the name or the uri, or null if the row was deleted.
+     */
+    static class Row {
+        final long mSequence;
+        final String mParentId;
+        final String mValue;
+
+        Row(long sequence, String parentId, String value) {
+            mSequence = sequence;
+            mParentId = parentId;
+            mValue = value;
+        }
+
+        boolean isDeleted() {
+            return mValue == null;
+        }
+    }
+
+    private final Map<String, Row> mPersonGroups = new HashMap<>();
+    private final Map<String, Row> mPersons = new HashMap<>();
+    private final Map<String, Row> mFaces = new HashMap<>();
+    private final Map<String, Long> mPersonGroupDeletions = new HashMap<>();
+    private final Map<String, Long> mPersonDeletions = new HashMap<>();
+
+    // Forget the changes the writer has written.
+    void prune(long writtenCount) {
+        pruneRows(mPersonGroups, writtenCount);
+        pruneRows(mPersons, writtenCount);
+        pruneRows(mFaces, writtenCount);
+        pruneDeletions(mPersonGroupDeletions, writtenCount);
+        pruneDeletions(mPersonDeletions, writtenCount);
+    }
+
+    void setPersonGroup(long sequence, String personGroupId, String name) {
+        mPersonGroups.put(personGroupId, new Row(sequence, null, name));
+    }
+
+    void deletePersonGroup(long sequence, String personGroupId) {
+        mPersonGroups.put(personGroupId, new Row(sequence, null, null));
+        mPersonGroupDeletions.put(personGroupId, sequence);
+    }
+
+    void setPerson(long sequence, String personGroupId, String personId, String name) {
+        mPersons.put(getPersonKey(personGroupId, personId), new Row(sequence, personGroupId, name));
+    }
+
+    void deletePerson(long sequence, String personGroupId, String personId) {
+        mPersons.put(getPersonKey(personGroupId, personId), new Row(sequence, personGroupId, null));
+        mPersonDeletions.put(personId, sequence);
+    }
+
+    void setFace(long sequence, String personId, String faceId, String uri) {
+        mFaces.put(faceId, new Row(sequence, personId, uri));
+    }
+
+    void deleteFace(long sequence, String personId, String faceId) {
+        mFaces.put(faceId, new Row(sequence, personId, null));
+    }
+
+    Map<String, Row> getPersonGroups() {
+        return mPersonGroups;
+    }
+
+    Row getPerson(String personGroupId, String personId) {
+        return mPersons.get(getPersonKey(personGroupId, personId));
+    }
+
+    // The changed persons of the person group.
+    List<Map.Entry<String, Row>> getPersons(String personGroupId) {
+        List<Map.Entry<String, Row>> persons = new ArrayList<>();
+        for (Map.Entry<String, Row> entry: mPersons.entrySet()) {
+            if (entry.getValue().mParentId.equals(personGroupId)) {
+                String key = entry.getKey();
+                persons.add(new AbstractMap.SimpleEntry<>(
+                        key.substring(personGroupId.length() + 1), entry.getValue()));
+            }
+        }
+        return persons;
+    }
+
+    // The person groups the person has been changed in.
+    Set<String> getPersonGroupIds(String personId) {
+        Set<String> personGroupIds = new HashSet<>();
+        for (Map.Entry<String, Row> entry: mPersons.entrySet()) {
+            if (entry.getKey().endsWith("/" + personId)) {
+                personGroupIds.add(entry.getValue().mParentId);
+            }
+        }
+        return personGroupIds;
+    }
+
+    Map<String, Row> getFaces() {
+        return mFaces;
+    }
+
+    boolean hasPersonGroupDeletions() {
+        return !mPersonGroupDeletions.isEmpty();
+    }
+
+    // Whether the person in the person group, as changed at the sequence number or on disk if 0,
+    // has been deleted since, directly or with its person group.
+    boolean isPersonDeletedAfter(String personGroupId, String personId, long sequence) {
+        return isDeletedAfter(mPersonGroupDeletions, personGroupId, sequence)
+                || isDeletedAfter(mPersonDeletions, personId, sequence);
+    }
+
+    // Whether a face of the person, as changed at the sequence number or on disk if 0, has been
+    // deleted since with the person or one of the person groups the person is in.
+    boolean isFaceDeletedAfter(String personId, Iterable<String> personGroupIds, long sequence) {
+        if (isDeletedAfter(mPersonDeletions, personId, sequence)) {
+            return true;
+        }
+        for (String personGroupId: personGroupIds) {
+            if (isDeletedAfter(mPersonGroupDeletions, personGroupId, sequence)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDeletedAfter(Map<String, Long> deletions, String id, long sequence) {
+        Long deletion = deletions.get(id);
+        return deletion != null && deletion > sequence;
+    }
+
+    private static String getPersonKey(String personGroupId, String personId) {
+        return personGroupId + "/" + personId;
+    }
+
+    private static void pruneRows(Map<String, Row> rows, long writtenCount) {
+        Iterator<Row> iterator = rows.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mSequence <= writtenCount) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void pruneDeletions(Map<String, Long> deletions, long writtenCount) {
+        Iterator<Long> iterator = deletions.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() <= writtenCount) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.samples.helper;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes StorageHelper changes behind the caller's back. Changes queue up while a flush is pending
+ * and are then written together in one transaction on a single background thread, so the UI thread
+ * never waits on the disk and a bulk enrollment costs one commit instead of one per face. A batch
+ * that cannot be written is logged and kept, ahead of later changes, and written again later.
+ */
+class StorageWriter {
+    private static final String TAG = "StorageWriter";
+
+    // Delay before writing a failed batch again, doubled at each failure in a row.
+    private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60 * 1000;
+
+    /**
+     * One change to apply to the database.
+     */
+    interface Write {
+        void apply(SQLiteDatabase db);
+    }
+
+    private static StorageWriter sInstance;
+
+    private final StorageDatabase mDatabase;
+    private final ScheduledExecutorService mExecutor;
+    private final Object mLock = new Object();
+    private List<Write> mPending = new ArrayList<>();
+    private long mEnqueuedCount;
+    private long mWrittenCount;
+    private long mFailureCount;
+    private long mRetryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+
+    private final Runnable mWritePending = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+
+    static synchronized StorageWriter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new StorageWriter(StorageDatabase.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    private StorageWriter(StorageDatabase database) {
+        mDatabase = database;
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // Returns the sequence number of the change: it is on disk once the written count reaches it.
+    long enqueue(Write write) {
+        boolean schedule;
+        long sequence;
+        synchronized (mLock) {
+            schedule = mPending.isEmpty();
+            mPending.add(write);
+            sequence = ++mEnqueuedCount;
+        }
+
+        // Changes made while this flush waits to run join it.
+        if (schedule) {
+            mExecutor.execute(mWritePending);
+        }
+        return sequence;
+    }
+
+    // The number of changes written so far, in the order they were enqueued.
+    long getWrittenCount() {
+        synchronized (mLock) {
+            return mWrittenCount;
+        }
+    }
+
+    // Waits until every change enqueued before this call is on disk. Returns at once if none is
+    // pending, and as soon as writing fails, since the changes then wait for a retry.
+    void flush() {
+        synchronized (mLock) {
+            long target = mEnqueuedCount;
+            long failureCount = mFailureCount;
+            boolean interrupted = false;
+            while (mWrittenCount < target && mFailureCount == failureCount) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    SQLiteDatabase getDatabase() {
+        return mDatabase.getWritableDatabase();
+    }
+
+    private void writePending() {
+        List<Write> writes;
+        synchronized (mLock) {
+            writes = mPending;
+            mPending = new ArrayList<>();
+        }
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        try {
+            SQLiteDatabase db = getDatabase();
+            db.beginTransaction();
+            try {
+                for (Write write: writes) {
+                    write.apply(db);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLException e) {
+            int failedCount = writes.size();
+            long retryDelayMillis;
+            synchronized (mLock) {
+                // Not written, so the reads keep seeing the batch in the overlay.
+                writes.addAll(mPending);
+                mPending = writes;
+                mFailureCount++;
+                retryDelayMillis = mRetryDelayMillis;
+                mRetryDelayMillis = Math.min(mRetryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+                mLock.notifyAll();
+            }
+            Log.e(TAG, "Cannot write " + failedCount + " local storage changes, retrying in "
+                    + retryDelayMillis + " ms", e);
+            mExecutor.schedule(mWritePending, retryDelayMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        synchronized (mLock) {
+            mWrittenCount += writes.size();
+            mRetryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+            mLock.notifyAll();
+        }
+    }
+}
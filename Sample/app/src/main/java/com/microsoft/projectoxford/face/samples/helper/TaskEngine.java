@@ -0,0 +1,193 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.samples.helper;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.AsyncTask;
+import android.os.Bundle;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the sample's background tasks on two app-wide pools, one sized for service calls and one
+ * for decoding images, instead of the serial executor AsyncTask uses by default, so that the calls
+ * and decodes of a screen overlap. Tasks belong to the activity that started them and are cancelled
+ * when it is destroyed, so they neither touch a dead activity nor keep it alive. Results are still
+ * delivered to the main thread by AsyncTask.
+ */
+public class TaskEngine {
+    // Service calls mostly wait on the network, run a few more than there are cores.
+    private static final int NETWORK_THREAD_COUNT = 4;
+    private static final int DECODE_THREAD_COUNT =
+            Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final ThreadPoolExecutor NETWORK_EXECUTOR =
+            newExecutor("Network", NETWORK_THREAD_COUNT);
+    private static final ThreadPoolExecutor DECODE_EXECUTOR =
+            newExecutor("Decode", DECODE_THREAD_COUNT);
+
+    // Tasks not finished yet by the activity that started them, and by key for those that have one.
+    // Only used on the main thread. The tasks are mostly inner classes of their activity, so the
+    // activity is held strongly here and dropped when it is destroyed.
+    private static final Map<Activity, List<AsyncTask<?, ?, ?>>> sTasks = new HashMap<>();
+    private static final Map<String, WeakReference<AsyncTask<?, ?, ?>>> sKeyedTasks = new HashMap<>();
+
+    // Cancel the tasks of every activity of the application once it is destroyed.
+    public static void install(Application application) {
+        application.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityDestroyed(Activity activity) {
+                List<AsyncTask<?, ?, ?>> tasks = sTasks.remove(activity);
+                if (tasks != null) {
+                    for (AsyncTask<?, ?, ?> task: tasks) {
+                        task.cancel(true);
+                    }
+                }
+            }
+
+            @Override
+            public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            }
+
+            @Override
+            public void onActivityStarted(Activity activity) {
+            }
+
+            @Override
+            public void onActivityResumed(Activity activity) {
+            }
+
+            @Override
+            public void onActivityPaused(Activity activity) {
+            }
+
+            @Override
+            public void onActivityStopped(Activity activity) {
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            }
+        });
+    }
+
+    // Run a task of the given activity on the network pool. Call on the main thread.
+    @SafeVarargs
+    public static <Params> void execute(Activity owner, AsyncTask<Params, ?, ?> task, Params... params) {
+        executeOnce(owner, null, task, params);
+    }
+
+    // Run a task of the given activity on the network pool, unless a task with the same key has not
+    // finished yet, in which case the new one is dropped and false returned. Call on the main thread.
+    @SafeVarargs
+    public static <Params> boolean executeOnce(
+            Activity owner, String key, AsyncTask<Params, ?, ?> task, Params... params) {
+        prune();
+        if (key != null) {
+            WeakReference<AsyncTask<?, ?, ?>> running = sKeyedTasks.get(key);
+            if (running != null && isPending(running.get())) {
+                return false;
+            }
+            sKeyedTasks.put(key, new WeakReference<AsyncTask<?, ?, ?>>(task));
+        }
+
+        List<AsyncTask<?, ?, ?>> tasks = sTasks.get(owner);
+        if (tasks == null) {
+            tasks = new ArrayList<>();
+            sTasks.put(owner, tasks);
+        }
+        tasks.add(task);
+        task.executeOnExecutor(NETWORK_EXECUTOR, params);
+        return true;
+    }
+
+    // The pool for service calls that do not belong to an activity.
+    public static Executor getNetworkExecutor() {
+        return NETWORK_EXECUTOR;
+    }
+
+    // The pool for decoding and transforming images.
+    public static Executor getDecodeExecutor() {
+        return DECODE_EXECUTOR;
+    }
+
+    // Forget the tasks that have finished.
+    private static void prune() {
+        for (List<AsyncTask<?, ?, ?>> tasks: sTasks.values()) {
+            Iterator<AsyncTask<?, ?, ?>> it = tasks.iterator();
+            while (it.hasNext()) {
+                if (!isPending(it.next())) {
+                    it.remove();
+                }
+            }
+        }
+        Iterator<WeakReference<AsyncTask<?, ?, ?>>> it = sKeyedTasks.values().iterator();
+        while (it.hasNext()) {
+            if (!isPending(it.next().get())) {
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean isPending(AsyncTask<?, ?, ?> task) {
+        return task != null && !task.isCancelled() && task.getStatus() != AsyncTask.Status.FINISHED;
+    }
+
+    private static ThreadPoolExecutor newExecutor(final String name, int threadCount) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, name + " #" + mCount.incrementAndGet());
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,355 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.samples.helper;
+
+import android.content.ComponentCallbacks2;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Loads face thumbnails into grid cells without decoding on the UI thread. Thumbnails are decoded
+ * at the size of the cell on the decode pool and kept in two tiers: a memory cache sized from the
+ * heap, and a disk cache of small JPEGs so that the full size image is decoded only once. Binding a
+ * recycled view to another image cancels the load still pending for it.
+ */
+public class ThumbnailLoader {
+    private static final String TAG = "ThumbnailLoader";
+
+    // Use an eighth of the heap for decoded thumbnails.
+    private static final int MEMORY_CACHE_HEAP_DIVISOR = 8;
+
+    private static final long DISK_CACHE_MAX_BYTES = 32 * 1024 * 1024;
+    private static final String DISK_CACHE_DIRECTORY = "thumbnails";
+    private static final int DISK_CACHE_JPEG_QUALITY = 90;
+
+    private static ThumbnailLoader sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final File mDiskCacheDirectory;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final int mDefaultSize;
+
+    // The load pending for each view, only used on the UI thread. A request holds its view weakly
+    // so that the entry goes away with the view.
+    private final Map<ImageView, Request> mRequests = new WeakHashMap<>();
+
+    // Bytes used by the disk cache, -1 until first counted.
+    private long mDiskCacheBytes = -1;
+
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ThumbnailLoader(Context context) {
+        mContentResolver = context.getContentResolver();
+        mMemoryCache = new LruCache<String, Bitmap>(
+                (int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_HEAP_DIVISOR)) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        mDiskCacheDirectory = new File(context.getCacheDir(), DISK_CACHE_DIRECTORY);
+        mDiskCacheDirectory.mkdirs();
+        mDefaultSize = context.getResources().getDisplayMetrics().widthPixels / 3;
+    }
+
+    /**
+     * Shows the image at the given uri in the view, decoded so that its longer side is about
+     * the given size. Uses a third of the screen width if the size is not known yet.
+     */
+    public void load(String uri, ImageView imageView, int size) {
+        if (size <= 0) {
+            size = mDefaultSize;
+        }
+        String key = uri + "#" + size;
+
+        Request pending = mRequests.remove(imageView);
+        if (pending != null) {
+            if (pending.mKey.equals(key)) {
+                mRequests.put(imageView, pending);
+                return;
+            }
+            pending.cancel();
+        }
+
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            imageView.setImageBitmap(bitmap);
+            return;
+        }
+
+        imageView.setImageDrawable(null);
+        Request request = new Request(key, Uri.parse(uri), size, imageView);
+        mRequests.put(imageView, request);
+        FutureTask<Void> future = new FutureTask<>(request, null);
+        request.mFuture = future;
+        TaskEngine.getDecodeExecutor().execute(future);
+    }
+
+    /**
+     * Cancels the load pending for the view, if any.
+     */
+    public void cancel(ImageView imageView) {
+        Request pending = mRequests.remove(imageView);
+        if (pending != null) {
+            pending.cancel();
+        }
+    }
+
+    /**
+     * Gives memory back when the system asks for it. Called from the application's onTrimMemory.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            mMemoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mMemoryCache.trimToSize(mMemoryCache.size() / 2);
+        }
+    }
+
+    // Runs on the decode pool.
+    private Bitmap loadBitmap(String key, Uri uri, int size) {
+        File file = new File(mDiskCacheDirectory, getDiskCacheName(key));
+        Bitmap bitmap = null;
+        if (file.exists()) {
+            bitmap = BitmapFactory.decodeFile(file.getPath());
+            if (bitmap != null) {
+                file.setLastModified(System.currentTimeMillis());
+            }
+        }
+        if (bitmap == null) {
+            bitmap = decodeSampled(uri, size);
+            if (bitmap != null) {
+                writeDiskCache(file, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    // Decode the image with the largest power of two subsampling that keeps it at least the size.
+    private Bitmap decodeSampled(Uri uri, int size) {
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            InputStream inputStream = mContentResolver.openInputStream(uri);
+            try {
+                BitmapFactory.decodeStream(inputStream, null, options);
+            } finally {
+                inputStream.close();
+            }
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+
+            int maxSideLength = Math.max(options.outWidth, options.outHeight);
+            options.inSampleSize = ImageHelper.calculateSampleSize(maxSideLength, size);
+            options.inJustDecodeBounds = false;
+            inputStream = mContentResolver.openInputStream(uri);
+            Bitmap bitmap;
+            try {
+                bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+            } finally {
+                inputStream.close();
+            }
+            if (bitmap == null) {
+                return null;
+            }
+
+            double ratio = size / (double) Math.max(bitmap.getWidth(), bitmap.getHeight());
+            if (ratio < 1) {
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                        Math.max(1, (int) (bitmap.getWidth() * ratio)),
+                        Math.max(1, (int) (bitmap.getHeight() * ratio)),
+                        true);
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                }
+                bitmap = scaled;
+            }
+            return bitmap;
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Cannot decode " + uri + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String getDiskCacheName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder();
+            for (byte b: digest) {
+                name.append(String.format("%02x", b));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeDiskCache(File file, Bitmap bitmap) {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try {
+            OutputStream outputStream = new FileOutputStream(temporaryFile);
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, DISK_CACHE_JPEG_QUALITY, outputStream);
+            } finally {
+                outputStream.close();
+            }
+            if (!temporaryFile.renameTo(file)) {
+                temporaryFile.delete();
+                return;
+            }
+            trimDiskCache(file.length());
+        } catch (IOException e) {
+            temporaryFile.delete();
+            Log.w(TAG, "Cannot cache thumbnail: " + e.getMessage());
+        }
+    }
+
+    // Delete the least recently used files once the disk cache grows past its limit.
+    private synchronized void trimDiskCache(long addedBytes) {
+        if (mDiskCacheBytes >= 0) {
+            mDiskCacheBytes += addedBytes;
+            if (mDiskCacheBytes <= DISK_CACHE_MAX_BYTES) {
+                return;
+            }
+        }
+
+        File[] files = mDiskCacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        mDiskCacheBytes = 0;
+        for (File file: files) {
+            mDiskCacheBytes += file.length();
+        }
+        if (mDiskCacheBytes <= DISK_CACHE_MAX_BYTES) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                return Long.compare(file1.lastModified(), file2.lastModified());
+            }
+        });
+        // Trim to three quarters so that the next few writes do not trim again.
+        for (File file: files) {
+            if (mDiskCacheBytes <= DISK_CACHE_MAX_BYTES * 3 / 4) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                mDiskCacheBytes -= length;
+            }
+        }
+    }
+
+    private class Request implements Runnable {
+        private final String mKey;
+        private final Uri mUri;
+        private final int mSize;
+        private final WeakReference<ImageView> mImageView;
+        private volatile boolean mCancelled;
+        private Future<?> mFuture;
+
+        Request(String key, Uri uri, int size, ImageView imageView) {
+            mKey = key;
+            mUri = uri;
+            mSize = size;
+            mImageView = new WeakReference<>(imageView);
+        }
+
+        void cancel() {
+            mCancelled = true;
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            // Nothing to show it in if the view is gone.
+            if (mCancelled || mImageView.get() == null) {
+                return;
+            }
+            final Bitmap bitmap = loadBitmap(mKey, mUri, mSize);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (bitmap != null) {
+                        mMemoryCache.put(mKey, bitmap);
+                    }
+                    // The view may have been recycled for another image meanwhile.
+                    ImageView imageView = mImageView.get();
+                    if (imageView != null && mRequests.get(imageView) == Request.this) {
+                        mRequests.remove(imageView);
+                        if (bitmap != null) {
+                            imageView.setImageBitmap(bitmap);
+                        }
+                    }
+                }
+            });
+        }
+    }
+}
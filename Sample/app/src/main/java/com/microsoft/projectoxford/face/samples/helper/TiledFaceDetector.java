@@ -0,0 +1,375 @@
+//
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license.
+//
+// Microsoft Cognitive Services (formerly Project Oxford): https://www.microsoft.com/cognitive-services
+//
+// Microsoft Cognitive Services (formerly Project Oxford) GitHub:
+// https://github.com/Microsoft/Cognitive-Face-Android
+//
+// Copyright (c) Microsoft Corporation
+// All rights reserved.
+//
+// MIT License:
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED ""AS IS"", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+package com.microsoft.projectoxford.face.samples.helper;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.net.Uri;
+
+import com.microsoft.projectoxford.face.FaceServiceClient;
+import com.microsoft.projectoxford.face.contract.Face;
+import com.microsoft.projectoxford.face.contract.FaceRectangle;
+import com.microsoft.projectoxford.face.rest.ClientException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Detects faces in large photos of crowds, where most faces are too small to be found once the
+ * photo is scaled down to the size of an upload. The original image is cut into overlapping tiles
+ * that are each uploaded at up to full resolution, concurrently, alongside the scaled down image so
+ * that faces larger than the overlap are still found whole. The faces found are mapped back into the
+ * scaled down image, and the duplicates found in more than one tile are removed by non-max
+ * suppression.
+ */
+public class TiledFaceDetector {
+    // Tiles are at most the size of the scaled down image, so each upload is no larger than before.
+    private static final int TILE_SIZE = 1280;
+
+    // Tiles overlap by this much, so that any face up to this size is whole in at least one tile.
+    private static final int TILE_OVERLAP = 256;
+
+    // Larger images are tiled at a lower resolution rather than in more requests.
+    private static final int MAX_TILE_COUNT = 12;
+
+    // A face this close to an edge between tiles may be cut off by it.
+    private static final int TILE_EDGE_MARGIN = 4;
+
+    // Faces overlapping this much are taken to be the same face.
+    private static final double SUPPRESSION_IOU_THRESHOLD = 0.3;
+
+    // Detect the faces in the image at the given uri. The bitmap is the image as loaded by
+    // ImageHelper.loadSizeLimitedBitmapFromUri, and the faces returned are in its coordinates.
+    // The bitmap must not be released until this returns.
+    public static Face[] detect(
+            final FaceServiceClient faceServiceClient,
+            Uri imageUri,
+            ContentResolver contentResolver,
+            final Bitmap bitmap,
+            final boolean returnFaceId,
+            final boolean returnFaceLandmarks,
+            final FaceServiceClient.FaceAttributeType[] returnFaceAttributes)
+            throws ClientException, IOException {
+        InputStream imageInputStream = contentResolver.openInputStream(imageUri);
+        int angle;
+        try {
+            angle = ImageHelper.readExifRotationAngle(imageInputStream);
+        } finally {
+            imageInputStream.close();
+        }
+
+        imageInputStream = contentResolver.openInputStream(imageUri);
+        final BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(imageInputStream, false);
+        } finally {
+            imageInputStream.close();
+        }
+
+        try {
+            // Map from the rotated image to the original one, as in ImageHelper.decodeFaceRegions.
+            Matrix rotation = new Matrix();
+            rotation.postRotate(angle);
+            RectF bounds = new RectF(0, 0, decoder.getWidth(), decoder.getHeight());
+            rotation.mapRect(bounds);
+            rotation.postTranslate(-bounds.left, -bounds.top);
+            Matrix toOriginal = new Matrix();
+            rotation.invert(toOriginal);
+            int width = Math.round(bounds.width());
+            int height = Math.round(bounds.height());
+            double ratio = bitmap.getWidth() / (double) width;
+
+            // Tile at the highest resolution that keeps to the number of tiles.
+            int sampleSize = 1;
+            while (countTiles(width / sampleSize) * countTiles(height / sampleSize) > MAX_TILE_COUNT) {
+                sampleSize *= 2;
+            }
+
+            List<FutureTask<List<Candidate>>> tasks = new ArrayList<>();
+            tasks.add(new FutureTask<>(new Callable<List<Candidate>>() {
+                @Override
+                public List<Candidate> call() throws ClientException, IOException {
+                    Face[] faces = faceServiceClient.detect(ImageHelper.encodeForUpload(bitmap),
+                            returnFaceId, returnFaceLandmarks, returnFaceAttributes);
+                    List<Candidate> candidates = new ArrayList<>();
+                    for (Face face: faces) {
+                        candidates.add(new Candidate(face, false, 1));
+                    }
+                    return candidates;
+                }
+            }));
+
+            // Only tile if the tiles are sharper than the scaled down image.
+            if (sampleSize * ratio < 1) {
+                int tileSize = TILE_SIZE * sampleSize;
+                int tileOverlap = TILE_OVERLAP * sampleSize;
+                for (int top: getTileOrigins(height, tileSize, tileOverlap)) {
+                    for (int left: getTileOrigins(width, tileSize, tileOverlap)) {
+                        Rect tile = new Rect(left, top,
+                                Math.min(left + tileSize, width), Math.min(top + tileSize, height));
+                        RectF regionInOriginal = new RectF(tile);
+                        toOriginal.mapRect(regionInOriginal);
+                        Rect region = new Rect();
+                        regionInOriginal.round(region);
+                        tasks.add(new FutureTask<>(new TileTask(faceServiceClient, decoder, region,
+                                tile, width, height, sampleSize, ratio, angle, returnFaceId,
+                                returnFaceLandmarks, returnFaceAttributes)));
+                    }
+                }
+            }
+
+            for (FutureTask<List<Candidate>> task: tasks) {
+                TaskEngine.getNetworkExecutor().execute(task);
+            }
+            List<Candidate> candidates = new ArrayList<>();
+            try {
+                for (FutureTask<List<Candidate>> task: tasks) {
+                    // The caller may itself be on the network pool, so it runs the tiles not yet
+                    // started instead of waiting for a thread.
+                    task.run();
+                    candidates.addAll(task.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ClientException) {
+                    throw (ClientException) e.getCause();
+                } else if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            } finally {
+                for (FutureTask<List<Candidate>> task: tasks) {
+                    task.cancel(false);
+                }
+            }
+
+            return suppressDuplicates(candidates);
+        } finally {
+            // A tile still running finds the decoder recycled and stops.
+            synchronized (decoder) {
+                decoder.recycle();
+            }
+        }
+    }
+
+    // The number of tiles along a side of the given length.
+    private static int countTiles(int length) {
+        if (length <= TILE_SIZE) {
+            return 1;
+        }
+        return (int) Math.ceil((length - TILE_OVERLAP) / (double) (TILE_SIZE - TILE_OVERLAP));
+    }
+
+    // Spread the tiles evenly along the side, overlapping by at least the given overlap.
+    private static int[] getTileOrigins(int length, int tileSize, int tileOverlap) {
+        if (length <= tileSize) {
+            return new int[] { 0 };
+        }
+        int count = (int) Math.ceil((length - tileOverlap) / (double) (tileSize - tileOverlap));
+        int[] origins = new int[count];
+        double step = (length - tileSize) / (double) (count - 1);
+        for (int i = 0; i < count; ++i) {
+            origins[i] = (int) Math.round(i * step);
+        }
+        return origins;
+    }
+
+    // Keep the best of the faces overlapping each other: whole faces first, then those found at
+    // the higher resolution, then the larger.
+    private static Face[] suppressDuplicates(List<Candidate> candidates) {
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate candidate1, Candidate candidate2) {
+                if (candidate1.mClipped != candidate2.mClipped) {
+                    return candidate1.mClipped ? 1 : -1;
+                }
+                if (candidate1.mPixelSize != candidate2.mPixelSize) {
+                    return Double.compare(candidate1.mPixelSize, candidate2.mPixelSize);
+                }
+                return Long.compare(getArea(candidate2.mFace.faceRectangle),
+                        getArea(candidate1.mFace.faceRectangle));
+            }
+        });
+
+        List<Face> faces = new ArrayList<>();
+        for (Candidate candidate: candidates) {
+            boolean duplicate = false;
+            for (Face face: faces) {
+                if (getIntersectionOverUnion(face.faceRectangle, candidate.mFace.faceRectangle)
+                        > SUPPRESSION_IOU_THRESHOLD) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                faces.add(candidate.mFace);
+            }
+        }
+        return faces.toArray(new Face[faces.size()]);
+    }
+
+    private static double getIntersectionOverUnion(FaceRectangle rect1, FaceRectangle rect2) {
+        long width = Math.min(rect1.left + rect1.width, rect2.left + rect2.width)
+                - Math.max(rect1.left, rect2.left);
+        long height = Math.min(rect1.top + rect1.height, rect2.top + rect2.height)
+                - Math.max(rect1.top, rect2.top);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        long intersection = width * height;
+        return intersection / (double) (getArea(rect1) + getArea(rect2) - intersection);
+    }
+
+    private static long getArea(FaceRectangle rect) {
+        return (long) rect.width * rect.height;
+    }
+
+    // A face found in the scaled down image or in a tile, in the coordinates of the scaled down image.
+    private static class Candidate {
+        private final Face mFace;
+
+        // Whether the face touches an edge between tiles, so it may be only part of a face.
+        private final boolean mClipped;
+
+        // The size of a pixel of the image the face was found in, in pixels of the scaled down image.
+        private final double mPixelSize;
+
+        Candidate(Face face, boolean clipped, double pixelSize) {
+            mFace = face;
+            mClipped = clipped;
+            mPixelSize = pixelSize;
+        }
+    }
+
+    // Decodes a tile of the original image, uploads it and maps the faces found back.
+    private static class TileTask implements Callable<List<Candidate>> {
+        private final FaceServiceClient mFaceServiceClient;
+        private final BitmapRegionDecoder mDecoder;
+        private final Rect mRegion;
+        private final Rect mTile;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mSampleSize;
+        private final double mRatio;
+        private final int mAngle;
+        private final boolean mReturnFaceId;
+        private final boolean mReturnFaceLandmarks;
+        private final FaceServiceClient.FaceAttributeType[] mReturnFaceAttributes;
+
+        TileTask(FaceServiceClient faceServiceClient, BitmapRegionDecoder decoder, Rect region,
+                 Rect tile, int width, int height, int sampleSize, double ratio, int angle,
+                 boolean returnFaceId, boolean returnFaceLandmarks,
+                 FaceServiceClient.FaceAttributeType[] returnFaceAttributes) {
+            mFaceServiceClient = faceServiceClient;
+            mDecoder = decoder;
+            mRegion = region;
+            mTile = tile;
+            mWidth = width;
+            mHeight = height;
+            mSampleSize = sampleSize;
+            mRatio = ratio;
+            mAngle = angle;
+            mReturnFaceId = returnFaceId;
+            mReturnFaceLandmarks = returnFaceLandmarks;
+            mReturnFaceAttributes = returnFaceAttributes;
+        }
+
+        @Override
+        public List<Candidate> call() throws ClientException, IOException {
+            // The decoder decodes one region at a time, the uploads overlap.
+            Bitmap region;
+            synchronized (mDecoder) {
+                if (mDecoder.isRecycled()) {
+                    throw new CancellationException();
+                }
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inMutable = true;
+                options.inSampleSize = mSampleSize;
+                region = mDecoder.decodeRegion(mRegion, options);
+            }
+            if (region == null) {
+                throw new IOException("Cannot decode the tile " + mTile);
+            }
+            Bitmap tile = ImageHelper.transformBitmap(region, 1, mAngle);
+            int tileWidth = tile.getWidth();
+            int tileHeight = tile.getHeight();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try {
+                tile.compress(Bitmap.CompressFormat.JPEG, ImageHelper.UPLOAD_JPEG_QUALITY, output);
+            } finally {
+                BitmapPool.getInstance().put(tile);
+            }
+
+            Face[] faces = mFaceServiceClient.detect(new ByteArrayInputStream(output.toByteArray()),
+                    mReturnFaceId, mReturnFaceLandmarks, mReturnFaceAttributes);
+
+            // A pixel of the tile covers this many pixels of the original image.
+            double scaleX = mTile.width() / (double) tileWidth;
+            double scaleY = mTile.height() / (double) tileHeight;
+            List<Candidate> candidates = new ArrayList<>();
+            for (Face face: faces) {
+                FaceRectangle rect = face.faceRectangle;
+                boolean clipped =
+                        (mTile.left > 0 && rect.left < TILE_EDGE_MARGIN)
+                        || (mTile.top > 0 && rect.top < TILE_EDGE_MARGIN)
+                        || (mTile.right < mWidth
+                                && rect.left + rect.width > tileWidth - TILE_EDGE_MARGIN)
+                        || (mTile.bottom < mHeight
+                                && rect.top + rect.height > tileHeight - TILE_EDGE_MARGIN);
+
+                ImageHelper.transformFace(face, mTile.left * mRatio, mTile.top * mRatio,
+                        scaleX * mRatio, scaleY * mRatio);
+                candidates.add(new Candidate(face, clipped, scaleX * mRatio));
+            }
+            return candidates;
+        }
+    }
+}
@@ -55,11 +55,15 @@ import com.microsoft.projectoxford.face.FaceServiceClient;
 import com.microsoft.projectoxford.face.contract.AddPersistedFaceResult;
 import com.microsoft.projectoxford.face.contract.Face;
 import com.microsoft.projectoxford.face.contract.FaceRectangle;
+import com.microsoft.projectoxford.face.offline.OfflineMutationQueue;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
+import com.microsoft.projectoxford.face.rest.RequestPriority;
 import com.microsoft.projectoxford.face.samples.R;
 import com.microsoft.projectoxford.face.samples.helper.ImageHelper;
 import com.microsoft.projectoxford.face.samples.helper.LogHelper;
 import com.microsoft.projectoxford.face.samples.helper.SampleApp;
 import com.microsoft.projectoxford.face.samples.helper.StorageHelper;
+import com.microsoft.projectoxford.face.samples.helper.TaskEngine;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -69,7 +73,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public class AddFaceToPersonActivity extends AppCompatActivity {
@@ -82,28 +88,51 @@ public class AddFaceToPersonActivity extends AppCompatActivity {
 
         @Override
         protected Boolean doInBackground(Void... params) {
-            // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            // Get an instance of face service client for bulk enrollment.
+            FaceServiceClient faceServiceClient =
+                    SampleApp.getFaceServiceClient(mCancellationToken, RequestPriority.BULK);
             try{
                 publishProgress("Adding face...");
                 UUID personId = UUID.fromString(mPersonId);
 
                 ByteArrayOutputStream stream = new ByteArrayOutputStream();
                 mBitmap.compress(Bitmap.CompressFormat.JPEG, 100, stream);
-                InputStream imageInputStream = new ByteArrayInputStream(stream.toByteArray());
+                byte[] image = stream.toByteArray();
 
+                OfflineMutationQueue offlineQueue = SampleApp.getOfflineMutationQueue();
+                boolean offline = false;
                 for (Integer index: mFaceIndices) {
                     FaceRectangle faceRect = mFaceGridViewAdapter.faceRectList.get(index);
-                    addLog("Request: Adding face to person " + mPersonId);
-                    // Start the request to add face.
-                    AddPersistedFaceResult result = faceServiceClient.addPersonFaceInLargePersonGroup(
+                    if (!offline) {
+                        addLog("Request: Adding face to person " + mPersonId);
+                        try {
+                            // Start the request to add face.
+                            AddPersistedFaceResult result = faceServiceClient.addPersonFaceInLargePersonGroup(
+                                    mPersonGroupId,
+                                    personId,
+                                    new ByteArrayInputStream(image),
+                                    "User data",
+                                    faceRect);
+
+                            mFaceGridViewAdapter.faceIdList.set(index, result.persistedFaceId);
+                            continue;
+                        } catch (IOException e) {
+                            if (offlineQueue == null || mCancellationToken.isCancelled()) {
+                                throw e;
+                            }
+                            offline = true;
+                        }
+                    }
+
+                    // The service cannot be reached, queue the face to be added when it can.
+                    addLog("Queued: Adding face to person " + mPersonId + " when back online");
+                    UUID localFaceId = offlineQueue.addPersonFaceInLargePersonGroup(
                             mPersonGroupId,
                             personId,
-                            imageInputStream,
+                            new ByteArrayInputStream(image),
                             "User data",
                             faceRect);
-
-                    mFaceGridViewAdapter.faceIdList.set(index, result.persistedFaceId);
+                    mFaceGridViewAdapter.faceIdList.set(index, localFaceId);
                 }
                 return true;
             } catch (Exception e) {
@@ -136,18 +165,28 @@ public class AddFaceToPersonActivity extends AppCompatActivity {
         @Override
         protected Face[] doInBackground(InputStream... params) {
             // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Detecting...");
 
                 // Start detection.
-                return faceServiceClient.detect(
+                Face[] faces = faceServiceClient.detect(
                         params[0],  /* Input stream of image to detect */
                         true,       /* Whether to return face ID */
                         false,       /* Whether to return face landmarks */
                         /* Which face attributes to analyze, currently we support:
                            age,gender,headPose,smile,facialHair */
                         null);
+
+                // Crop the thumbnails from the original image, they are what the person shows.
+                List<FaceRectangle> faceRectangles = new ArrayList<>();
+                for (Face face: faces) {
+                    faceRectangles.add(face.faceRectangle);
+                }
+                mFaceThumbnails = ImageHelper.generateFaceThumbnails(
+                        Uri.parse(mImageUriStr), getContentResolver(), mBitmap, faceRectangles,
+                        getResources().getDisplayMetrics().widthPixels / 3);
+                return faces;
             }  catch (Exception e) {
                 mSucceed = false;
                 publishProgress(e.getMessage());
@@ -192,6 +231,7 @@ public class AddFaceToPersonActivity extends AppCompatActivity {
         mProgressDialog.dismiss();
         if (succeed) {
             String faceIds = "";
+            Map<String, String> faceIdUriMap = new HashMap<>();
             for (Integer index : faceIndices) {
                 String faceId = mFaceGridViewAdapter.faceIdList.get(index).toString();
                 faceIds += faceId + ", ";
@@ -204,8 +244,7 @@ public class AddFaceToPersonActivity extends AppCompatActivity {
                     fileOutputStream.flush();
 
                     Uri uri = Uri.fromFile(file);
-                    StorageHelper.setFaceUri(
-                            faceId, uri.toString(), mPersonId, AddFaceToPersonActivity.this);
+                    faceIdUriMap.put(faceId, uri.toString());
                 } catch (IOException e) {
                     setInfo(e.getMessage());
                 } finally {
@@ -218,6 +257,7 @@ public class AddFaceToPersonActivity extends AppCompatActivity {
                     }
                 }
             }
+            StorageHelper.setFaceUris(faceIdUriMap, mPersonId, AddFaceToPersonActivity.this);
             addLog("Response: Success. Face(s) " + faceIds + "added to person " + mPersonId);
             finish();
         }
@@ -249,11 +289,15 @@ public class AddFaceToPersonActivity extends AppCompatActivity {
     String mPersonId;
     String mImageUriStr;
     Bitmap mBitmap;
+    List<Bitmap> mFaceThumbnails;
     FaceGridViewAdapter mFaceGridViewAdapter;
 
     // Progress dialog popped up when communicating with server.
     ProgressDialog mProgressDialog;
 
+    // Cancels the service calls still running when the activity is destroyed.
+    private final CancellationToken mCancellationToken = new CancellationToken();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -270,6 +314,13 @@ public class AddFaceToPersonActivity extends AppCompatActivity {
         mProgressDialog.setTitle(getString(R.string.progress_dialog_title));
     }
 
+    // Stop uploading and waiting for results nobody will see.
+    @Override
+    protected void onDestroy() {
+        mCancellationToken.cancel();
+        super.onDestroy();
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -296,11 +347,9 @@ public class AddFaceToPersonActivity extends AppCompatActivity {
         mBitmap = ImageHelper.loadSizeLimitedBitmapFromUri(
                 imageUri, getContentResolver());
         if (mBitmap != null) {
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            mBitmap.compress(Bitmap.CompressFormat.JPEG, 100, stream);
-            InputStream imageInputStream = new ByteArrayInputStream(stream.toByteArray());
+            InputStream imageInputStream = ImageHelper.encodeForUpload(mBitmap);
             addLog("Request: Detecting " + mImageUriStr);
-            new DetectionTask().execute(imageInputStream);
+            TaskEngine.execute(AddFaceToPersonActivity.this, new DetectionTask(), imageInputStream);
         }
     }
 
@@ -315,7 +364,7 @@ public class AddFaceToPersonActivity extends AppCompatActivity {
             }
 
             if (faceIndices.size() > 0) {
-                new AddFaceTask(faceIndices).execute();
+                TaskEngine.execute(AddFaceToPersonActivity.this, new AddFaceTask(faceIndices));
             } else {
                 finish();
             }
@@ -347,20 +396,14 @@ public class AddFaceToPersonActivity extends AppCompatActivity {
 
             if (detectionResult != null) {
                 List<Face> faces = Arrays.asList(detectionResult);
-                for (Face face : faces) {
-                    try {
-                        // Crop face thumbnail with five main landmarks drawn from original image.
-                        faceThumbnails.add(ImageHelper.generateFaceThumbnail(
-                                mBitmap, face.faceRectangle));
-
-                        faceIdList.add(null);
-                        faceRectList.add(face.faceRectangle);
-
-                        faceChecked.add(true);
-                    } catch (IOException e) {
-                        // Show the exception when generating face thumbnail fails.
-                        setInfo(e.getMessage());
-                    }
+                for (int i = 0; i < faces.size(); ++i) {
+                    // The face thumbnails were cropped from the original image after detection.
+                    faceThumbnails.add(mFaceThumbnails.get(i));
+
+                    faceIdList.add(null);
+                    faceRectList.add(faces.get(i).faceRectangle);
+
+                    faceChecked.add(true);
                 }
             }
         }
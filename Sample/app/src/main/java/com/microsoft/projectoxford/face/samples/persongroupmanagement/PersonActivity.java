@@ -59,11 +59,14 @@ import android.widget.TextView;
 
 import com.microsoft.projectoxford.face.FaceServiceClient;
 import com.microsoft.projectoxford.face.contract.CreatePersonResult;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
 import com.microsoft.projectoxford.face.samples.R;
 import com.microsoft.projectoxford.face.samples.helper.LogHelper;
 import com.microsoft.projectoxford.face.samples.helper.SampleApp;
 import com.microsoft.projectoxford.face.samples.ui.SelectImageActivity;
 import com.microsoft.projectoxford.face.samples.helper.StorageHelper;
+import com.microsoft.projectoxford.face.samples.helper.TaskEngine;
+import com.microsoft.projectoxford.face.samples.helper.ThumbnailLoader;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -84,7 +87,7 @@ public class PersonActivity extends AppCompatActivity {
         @Override
         protected String doInBackground(String... params) {
             // Get an instance of face service client.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Syncing with server to add person...");
                 addLog("Request: Creating Person in person group" + params[0]);
@@ -143,7 +146,7 @@ public class PersonActivity extends AppCompatActivity {
         @Override
         protected String doInBackground(String... params) {
             // Get an instance of face service client.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Deleting selected faces...");
                 addLog("Request: Deleting face " + params[0]);
@@ -201,6 +204,9 @@ public class PersonActivity extends AppCompatActivity {
     // Progress dialog popped up when communicating with server.
     ProgressDialog progressDialog;
 
+    // Cancels the service calls still running when the activity is destroyed.
+    private final CancellationToken mCancellationToken = new CancellationToken();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -225,6 +231,13 @@ public class PersonActivity extends AppCompatActivity {
         progressDialog.setTitle(getString(R.string.progress_dialog_title));
     }
 
+    // Stop uploading and waiting for results nobody will see.
+    @Override
+    protected void onDestroy() {
+        mCancellationToken.cancel();
+        super.onDestroy();
+    }
+
     private void initializeGridView() {
         GridView gridView = (GridView) findViewById(R.id.gridView_faces);
 
@@ -319,7 +332,7 @@ public class PersonActivity extends AppCompatActivity {
 
     public void doneAndSave(View view) {
         if (personId == null) {
-            new AddPersonTask(false).execute(personGroupId);
+            TaskEngine.execute(PersonActivity.this, new AddPersonTask(false), personGroupId);
         } else {
             doneAndSave();
         }
@@ -327,7 +340,7 @@ public class PersonActivity extends AppCompatActivity {
 
     public void addFace(View view) {
         if (personId == null) {
-            new AddPersonTask(true).execute(personGroupId);
+            TaskEngine.execute(PersonActivity.this, new AddPersonTask(true), personGroupId);
         } else {
             addFace();
         }
@@ -381,7 +394,8 @@ public class PersonActivity extends AppCompatActivity {
             if (checked) {
                 String faceId = faceGridViewAdapter.faceIdList.get(i);
                 faceIdsToDelete.add(faceId);
-                new DeleteFaceTask(personGroupId, personId).execute(faceId);
+                TaskEngine.execute(PersonActivity.this,
+                        new DeleteFaceTask(personGroupId, personId), faceId);
             } else {
                 newFaceIdList.add(faceGridViewAdapter.faceIdList.get(i));
                 newFaceChecked.add(false);
@@ -449,9 +463,10 @@ public class PersonActivity extends AppCompatActivity {
             }
             convertView.setId(position);
 
-            Uri uri = Uri.parse(StorageHelper.getFaceUri(
-                    faceIdList.get(position), PersonActivity.this));
-            ((ImageView)convertView.findViewById(R.id.image_face)).setImageURI(uri);
+            ThumbnailLoader.getInstance(PersonActivity.this).load(
+                    StorageHelper.getFaceUri(faceIdList.get(position), PersonActivity.this),
+                    (ImageView)convertView.findViewById(R.id.image_face),
+                    parent.getWidth() / ((GridView) parent).getNumColumns());
 
             // set the checked status of the item
             CheckBox checkBox = (CheckBox) convertView.findViewById(R.id.checkbox_face);
@@ -36,7 +36,6 @@ import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
-import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
@@ -60,10 +59,13 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.microsoft.projectoxford.face.FaceServiceClient;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
 import com.microsoft.projectoxford.face.samples.R;
 import com.microsoft.projectoxford.face.samples.helper.LogHelper;
 import com.microsoft.projectoxford.face.samples.helper.SampleApp;
 import com.microsoft.projectoxford.face.samples.helper.StorageHelper;
+import com.microsoft.projectoxford.face.samples.helper.TaskEngine;
+import com.microsoft.projectoxford.face.samples.helper.ThumbnailLoader;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -87,7 +89,7 @@ public class PersonGroupActivity extends AppCompatActivity {
             addLog("Request: Creating person group " + params[0]);
 
             // Get an instance of face service client.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Syncing with server to add person group...");
 
@@ -145,7 +147,7 @@ public class PersonGroupActivity extends AppCompatActivity {
             addLog("Request: Training group " + params[0]);
 
             // Get an instance of face service client.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Training person group...");
 
@@ -188,7 +190,7 @@ public class PersonGroupActivity extends AppCompatActivity {
         @Override
         protected String doInBackground(String... params) {
             // Get an instance of face service client.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Deleting selected persons...");
                 addLog("Request: Deleting person " + params[0]);
@@ -237,7 +239,8 @@ public class PersonGroupActivity extends AppCompatActivity {
 
     public void addPerson(View view) {
         if (!personGroupExists) {
-            new AddPersonGroupTask(true).execute(personGroupId);
+            TaskEngine.execute(PersonGroupActivity.this,
+                    new AddPersonGroupTask(true), personGroupId);
         } else {
             addPerson();
         }
@@ -263,6 +266,9 @@ public class PersonGroupActivity extends AppCompatActivity {
     // Progress dialog popped up when communicating with server.
     ProgressDialog progressDialog;
 
+    // Cancels the service calls still running when the activity is destroyed.
+    private final CancellationToken mCancellationToken = new CancellationToken();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -285,6 +291,13 @@ public class PersonGroupActivity extends AppCompatActivity {
         editTextPersonGroupName.setText(oldPersonGroupName);
     }
 
+    // Stop uploading and waiting for results nobody will see.
+    @Override
+    protected void onDestroy() {
+        mCancellationToken.cancel();
+        super.onDestroy();
+    }
+
     private void initializeGridView() {
         GridView gridView = (GridView) findViewById(R.id.gridView_persons);
 
@@ -399,7 +412,8 @@ public class PersonGroupActivity extends AppCompatActivity {
 
     public void doneAndSave(View view) {
         if (!personGroupExists) {
-            new AddPersonGroupTask(false).execute(personGroupId);
+            TaskEngine.execute(PersonGroupActivity.this,
+                    new AddPersonGroupTask(false), personGroupId);
         } else {
             doneAndSave(true);
         }
@@ -416,7 +430,8 @@ public class PersonGroupActivity extends AppCompatActivity {
         StorageHelper.setPersonGroupName(personGroupId, newPersonGroupName, PersonGroupActivity.this);
 
         if (trainPersonGroup) {
-            new TrainPersonGroupTask().execute(personGroupId);
+            TaskEngine.executeOnce(PersonGroupActivity.this, "Train " + personGroupId,
+                    new TrainPersonGroupTask(), personGroupId);
         } else {
             finish();
         }
@@ -430,7 +445,8 @@ public class PersonGroupActivity extends AppCompatActivity {
             if (personGridViewAdapter.personChecked.get(i)) {
                 String personId = personGridViewAdapter.personIdList.get(i);
                 personIdsToDelete.add(personId);
-                new DeletePersonTask(personGroupId).execute(personId);
+                TaskEngine.execute(PersonGroupActivity.this,
+                        new DeletePersonTask(personGroupId), personId);
             } else {
                 newPersonIdList.add(personGridViewAdapter.personIdList.get(i));
                 newPersonChecked.add(false);
@@ -501,11 +517,15 @@ public class PersonGroupActivity extends AppCompatActivity {
             Set<String> faceIdSet = StorageHelper.getAllFaceIds(personId, PersonGroupActivity.this);
             if (!faceIdSet.isEmpty()) {
                 Iterator<String> it = faceIdSet.iterator();
-                Uri uri = Uri.parse(StorageHelper.getFaceUri(it.next(), PersonGroupActivity.this));
-                ((ImageView)convertView.findViewById(R.id.image_person)).setImageURI(uri);
+                ThumbnailLoader.getInstance(PersonGroupActivity.this).load(
+                        StorageHelper.getFaceUri(it.next(), PersonGroupActivity.this),
+                        (ImageView)convertView.findViewById(R.id.image_person),
+                        parent.getWidth() / ((GridView) parent).getNumColumns());
             } else {
+                ImageView imageView = (ImageView)convertView.findViewById(R.id.image_person);
+                ThumbnailLoader.getInstance(PersonGroupActivity.this).cancel(imageView);
                 Drawable drawable = getResources().getDrawable(R.drawable.select_image);
-                ((ImageView)convertView.findViewById(R.id.image_person)).setImageDrawable(drawable);
+                imageView.setImageDrawable(drawable);
             }
 
             // set the text of the item
@@ -55,10 +55,12 @@ import android.widget.ListView;
 import android.widget.TextView;
 
 import com.microsoft.projectoxford.face.FaceServiceClient;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
 import com.microsoft.projectoxford.face.samples.R;
 import com.microsoft.projectoxford.face.samples.helper.LogHelper;
 import com.microsoft.projectoxford.face.samples.helper.SampleApp;
 import com.microsoft.projectoxford.face.samples.helper.StorageHelper;
+import com.microsoft.projectoxford.face.samples.helper.TaskEngine;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -73,7 +75,7 @@ public class PersonGroupListActivity extends AppCompatActivity {
         @Override
         protected String doInBackground(String... params) {
             // Get an instance of face service client.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Deleting selected person groups...");
                 addLog("Request: Delete Group " + params[0]);
@@ -123,6 +125,9 @@ public class PersonGroupListActivity extends AppCompatActivity {
     // Progress dialog popped up when communicating with server.
     ProgressDialog progressDialog;
 
+    // Cancels the service calls still running when the activity is destroyed.
+    private final CancellationToken mCancellationToken = new CancellationToken();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -134,6 +139,13 @@ public class PersonGroupListActivity extends AppCompatActivity {
         initializeListView();
     }
 
+    // Stop uploading and waiting for results nobody will see.
+    @Override
+    protected void onDestroy() {
+        mCancellationToken.cancel();
+        super.onDestroy();
+    }
+
     private void initializeListView() {
         ListView listView = (ListView) findViewById(R.id.list_person_groups);
         listView.setChoiceMode(ListView.CHOICE_MODE_MULTIPLE_MODAL);
@@ -324,7 +336,8 @@ public class PersonGroupListActivity extends AppCompatActivity {
             if (personGroupsListAdapter.personGroupChecked.get(i)) {
                 String personGroupId = personGroupsListAdapter.personGroupIdList.get(i);
                 personGroupIdsToDelete.add(personGroupId);
-                new DeletePersonGroupTask().execute(personGroupId);
+                TaskEngine.execute(PersonGroupListActivity.this,
+                        new DeletePersonGroupTask(), personGroupId);
             } else {
                 newPersonGroupIdList.add(personGroupsListAdapter.personGroupIdList.get(i));
                 newPersonGroupChecked.add(false);
@@ -47,6 +47,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.TextView;
@@ -63,16 +64,19 @@ import com.microsoft.projectoxford.face.contract.Hair;
 import com.microsoft.projectoxford.face.contract.Makeup;
 import com.microsoft.projectoxford.face.contract.Noise;
 import com.microsoft.projectoxford.face.contract.Occlusion;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
 import com.microsoft.projectoxford.face.samples.R;
+import com.microsoft.projectoxford.face.samples.helper.BitmapPool;
+import com.microsoft.projectoxford.face.samples.helper.FaceAnnotationView;
 import com.microsoft.projectoxford.face.samples.helper.ImageHelper;
 import com.microsoft.projectoxford.face.samples.helper.LogHelper;
+import com.microsoft.projectoxford.face.samples.helper.ProgressiveFaceDetector;
 import com.microsoft.projectoxford.face.samples.helper.SampleApp;
+import com.microsoft.projectoxford.face.samples.helper.TaskEngine;
+import com.microsoft.projectoxford.face.samples.helper.TiledFaceDetector;
 import com.microsoft.projectoxford.face.samples.log.DetectionLogActivity;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -80,23 +84,28 @@ import java.util.List;
 
 public class DetectionActivity extends AppCompatActivity {
     // Background task of face detection.
-    private class DetectionTask extends AsyncTask<InputStream, String, Face[]> {
+    private class DetectionTask extends AsyncTask<Void, String, Face[]> {
         private boolean mSucceed = true;
 
+        // Whether to detect in tiles of the original image rather than in the bitmap.
+        private final boolean mTiled;
+        private final Uri mTaskImageUri = mImageUri;
+        private final Bitmap mTaskBitmap = mBitmap;
+
+        DetectionTask(boolean tiled) {
+            mTiled = tiled;
+        }
+
         @Override
-        protected Face[] doInBackground(InputStream... params) {
+        protected Face[] doInBackground(Void... params) {
             // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try {
                 publishProgress("Detecting...");
 
-                // Start detection.
-                return faceServiceClient.detect(
-                        params[0],  /* Input stream of image to detect */
-                        true,       /* Whether to return face ID */
-                        true,       /* Whether to return face landmarks */
-                        /* Which face attributes to analyze, currently we support:
-                           age,gender,headPose,smile,facialHair */
+                /* Which face attributes to analyze, currently we support:
+                   age,gender,headPose,smile,facialHair */
+                FaceServiceClient.FaceAttributeType[] faceAttributes =
                         new FaceServiceClient.FaceAttributeType[] {
                                 FaceServiceClient.FaceAttributeType.Age,
                                 FaceServiceClient.FaceAttributeType.Gender,
@@ -112,7 +121,27 @@ public class DetectionActivity extends AppCompatActivity {
                                 FaceServiceClient.FaceAttributeType.Makeup,
                                 FaceServiceClient.FaceAttributeType.Noise,
                                 FaceServiceClient.FaceAttributeType.Occlusion
-                        });
+                        };
+
+                if (mTiled) {
+                    // Find the small faces of a crowd in the original image.
+                    return TiledFaceDetector.detect(
+                            faceServiceClient,
+                            mTaskImageUri,
+                            getContentResolver(),
+                            mTaskBitmap,
+                            true,
+                            true,
+                            faceAttributes);
+                }
+
+                // Start detection, uploading a larger image only if the faces may be too small.
+                return ProgressiveFaceDetector.detect(
+                        faceServiceClient,
+                        mTaskBitmap,  /* Image to detect */
+                        true,         /* Whether to return face ID */
+                        true,         /* Whether to return face landmarks */
+                        faceAttributes);
             } catch (Exception e) {
                 mSucceed = false;
                 publishProgress(e.getMessage());
@@ -157,6 +186,9 @@ public class DetectionActivity extends AppCompatActivity {
     // Progress dialog popped up when communicating with server.
     ProgressDialog mProgressDialog;
 
+    // Cancels the service calls still running when the activity is destroyed.
+    private final CancellationToken mCancellationToken = new CancellationToken();
+
     // When the activity is created, set all the member variables to initial state.
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -172,6 +204,13 @@ public class DetectionActivity extends AppCompatActivity {
         LogHelper.clearDetectionLog();
     }
 
+    // Stop uploading and waiting for results nobody will see.
+    @Override
+    protected void onDestroy() {
+        mCancellationToken.cancel();
+        super.onDestroy();
+    }
+
     // Save the activity state when it's going to stop.
     @Override
     protected void onSaveInstanceState(Bundle outState) {
@@ -200,12 +239,14 @@ public class DetectionActivity extends AppCompatActivity {
                 if (resultCode == RESULT_OK) {
                     // If image is selected successfully, set the image URI and bitmap.
                     mImageUri = data.getData();
+                    Bitmap previousBitmap = mBitmap;
                     mBitmap = ImageHelper.loadSizeLimitedBitmapFromUri(
                             mImageUri, getContentResolver());
                     if (mBitmap != null) {
-                        // Show the image on screen.
+                        // Show the image on screen, the previous image is no longer shown anywhere.
                         ImageView imageView = (ImageView) findViewById(R.id.image);
                         imageView.setImageBitmap(mBitmap);
+                        BitmapPool.getInstance().put(previousBitmap);
 
                         // Add detection log.
                         addLog("Image: " + mImageUri + " resized to " + mBitmap.getWidth()
@@ -237,13 +278,10 @@ public class DetectionActivity extends AppCompatActivity {
 
     // Called when the "Detect" button is clicked.
     public void detect(View view) {
-        // Put the image into an input stream for detection.
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        mBitmap.compress(Bitmap.CompressFormat.JPEG, 100, output);
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(output.toByteArray());
-
-        // Start a background task to detect faces in the image.
-        new DetectionTask().execute(inputStream);
+        CheckBox tiledDetection = (CheckBox) findViewById(R.id.tiled_detection);
+        // Start a background task to detect faces in the image, in tiles of the original image
+        // for a crowd.
+        TaskEngine.execute(DetectionActivity.this, new DetectionTask(tiledDetection.isChecked()));
 
         // Prevent button click during detecting.
         setAllButtonsEnabledStatus(false);
@@ -273,10 +311,9 @@ public class DetectionActivity extends AppCompatActivity {
                 detectionResult = result.length + " face"
                         + (result.length != 1 ? "s" : "") + " detected";
 
-                // Show the detected faces on original image.
-                ImageView imageView = (ImageView) findViewById(R.id.image);
-                imageView.setImageBitmap(ImageHelper.drawFaceRectanglesOnBitmap(
-                        mBitmap, result, true));
+                // Show the detected faces over the original image.
+                FaceAnnotationView imageView = (FaceAnnotationView) findViewById(R.id.image);
+                imageView.setFaces(result, true);
 
                 // Set the adapter of the ListView which contains the details of the detected faces.
                 FaceListAdapter faceListAdapter = new FaceListAdapter(result);
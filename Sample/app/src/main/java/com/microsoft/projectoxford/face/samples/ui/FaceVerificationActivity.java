@@ -52,14 +52,14 @@ import android.widget.TextView;
 import com.microsoft.projectoxford.face.FaceServiceClient;
 import com.microsoft.projectoxford.face.contract.Face;
 import com.microsoft.projectoxford.face.contract.VerifyResult;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
 import com.microsoft.projectoxford.face.samples.R;
 import com.microsoft.projectoxford.face.samples.helper.ImageHelper;
 import com.microsoft.projectoxford.face.samples.helper.LogHelper;
 import com.microsoft.projectoxford.face.samples.helper.SampleApp;
+import com.microsoft.projectoxford.face.samples.helper.TaskEngine;
 import com.microsoft.projectoxford.face.samples.log.VerificationLogActivity;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.DecimalFormat;
@@ -83,7 +83,7 @@ public class FaceVerificationActivity extends AppCompatActivity {
         @Override
         protected VerifyResult doInBackground(Void... params) {
             // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Verifying...");
 
@@ -136,7 +136,7 @@ public class FaceVerificationActivity extends AppCompatActivity {
         @Override
         protected Face[] doInBackground(InputStream... params) {
             // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Detecting...");
 
@@ -195,6 +195,9 @@ public class FaceVerificationActivity extends AppCompatActivity {
     // Progress dialog popped up when communicating with server.
     ProgressDialog progressDialog;
 
+    // Cancels the service calls still running when the activity is destroyed.
+    private final CancellationToken mCancellationToken = new CancellationToken();
+
     // When the activity is created, set all the member variables to initial state.
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -217,6 +220,13 @@ public class FaceVerificationActivity extends AppCompatActivity {
         LogHelper.clearVerificationLog();
     }
 
+    // Stop uploading and waiting for results nobody will see.
+    @Override
+    protected void onDestroy() {
+        mCancellationToken.cancel();
+        super.onDestroy();
+    }
+
     // Called when image selection is done. Begin detecting if the image is selected successfully.
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
@@ -282,7 +292,7 @@ public class FaceVerificationActivity extends AppCompatActivity {
     // Called when the "Verify" button is clicked.
     public void verify(View view) {
         setAllButtonEnabledStatus(false);
-        new VerificationTask(mFaceId0, mFaceId1).execute();
+        TaskEngine.execute(FaceVerificationActivity.this, new VerificationTask(mFaceId0, mFaceId1));
     }
 
     // View the log of service calls.
@@ -444,12 +454,10 @@ public class FaceVerificationActivity extends AppCompatActivity {
     // Start detecting in image specified by index.
     private void detect(Bitmap bitmap, int index) {
         // Put the image into an input stream for detection.
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, output);
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(output.toByteArray());
+        InputStream inputStream = ImageHelper.encodeForUpload(bitmap);
 
         // Start a background task to detect faces in the image.
-        new DetectionTask(index).execute(inputStream);
+        TaskEngine.execute(FaceVerificationActivity.this, new DetectionTask(index), inputStream);
 
         setSelectImageButtonEnabledStatus(false, index);
 
@@ -524,14 +532,18 @@ public class FaceVerificationActivity extends AppCompatActivity {
             convertView.setId(position);
 
             Bitmap thumbnailToShow = faceThumbnails.get(position);
+            boolean highlighted = false;
             if (mIndex == 0 && faces.get(position).faceId.equals(mFaceId0)) {
                 thumbnailToShow = ImageHelper.highlightSelectedFaceThumbnail(thumbnailToShow);
+                highlighted = true;
             } else if (mIndex == 1 && faces.get(position).faceId.equals(mFaceId1)){
                 thumbnailToShow = ImageHelper.highlightSelectedFaceThumbnail(thumbnailToShow);
+                highlighted = true;
             }
 
-            // Show the face thumbnail.
-            ((ImageView)convertView.findViewById(R.id.image_face)).setImageBitmap(thumbnailToShow);
+            // Show the face thumbnail. The highlighted copy goes back to the pool when the view is rebound.
+            ImageHelper.setImageBitmap((ImageView)convertView.findViewById(R.id.image_face),
+                    thumbnailToShow, highlighted);
 
             return convertView;
         }
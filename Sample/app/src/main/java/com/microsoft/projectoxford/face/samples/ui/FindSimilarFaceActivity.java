@@ -57,14 +57,14 @@ import com.microsoft.projectoxford.face.contract.Face;
 import com.microsoft.projectoxford.face.contract.FaceRectangle;
 import com.microsoft.projectoxford.face.contract.SimilarFace;
 import com.microsoft.projectoxford.face.contract.SimilarPersistedFace;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
 import com.microsoft.projectoxford.face.samples.R;
 import com.microsoft.projectoxford.face.samples.helper.ImageHelper;
 import com.microsoft.projectoxford.face.samples.helper.LogHelper;
 import com.microsoft.projectoxford.face.samples.helper.SampleApp;
+import com.microsoft.projectoxford.face.samples.helper.TaskEngine;
 import com.microsoft.projectoxford.face.samples.log.FindSimilarFaceLogActivity;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -83,7 +83,7 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
         @Override
         protected SimilarPersistedFace[] doInBackground(UUID... params) {
             // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             addLog("Request: Find matchPerson similar faces to " + params[0] +
                     " in " + mLargeFaceListId);
             try{
@@ -135,7 +135,7 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
         @Override
         protected SimilarPersistedFace[] doInBackground(UUID... params) {
             // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             addLog("Request: Find matchPerson similar faces to " + params[0] +
                     " in " + mLargeFaceListId);
             try{
@@ -191,7 +191,7 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
 
         @Override
         protected Face[] doInBackground(InputStream... params) {
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Detecting...");
 
@@ -240,7 +240,7 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
 
         @Override
         protected String doInBackground(String... params) {
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 // Start detection.
                 faceServiceClient.createLargeFaceList(mLargeFaceListId,"name","userData");
@@ -281,7 +281,7 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
         @Override
         protected AddPersistedFaceResult doInBackground(InputStream... params) {
             // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Add face...");
                 p = params;
@@ -325,7 +325,7 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
 
         @Override
         protected String doInBackground(String... params) {
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 // Start detection.
                 addLog("Request: Delete Large Face List " + params[0]);
@@ -362,7 +362,7 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
             addLog("Request: Training face list " + params[0]);
 
             // Get an instance of face service client.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 faceServiceClient.trainLargeFaceList(params[0]);
                 return params[0];
@@ -386,6 +386,12 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
             if (result != null) {
                 addLog("Response: Success. Large face list " + result + " training completed");
             }
+
+            // Tasks run in parallel, only look for similar faces once the training is done.
+            TaskEngine.execute(FindSimilarFaceActivity.this,
+                    new FindLargeFaceListSimilarFaceTask(), mFaceId);
+            TaskEngine.execute(FindSimilarFaceActivity.this,
+                    new FindLargeFaceListFaceSimilarFaceTask(), mFaceId);
         }
     }
 
@@ -506,6 +512,9 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
     // Progress dialog popped up when communicating with server.
     ProgressDialog mProgressDialog;
 
+    // Cancels the service calls still running when the activity is destroyed.
+    private final CancellationToken mCancellationToken = new CancellationToken();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -522,11 +531,19 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
 
         mLargeFaceListId = UUID.randomUUID().toString();
 
-        new CreateLargeFaceListTask(mLargeFaceListId).execute(mLargeFaceListId);
+        TaskEngine.execute(FindSimilarFaceActivity.this,
+                new CreateLargeFaceListTask(mLargeFaceListId), mLargeFaceListId);
 
         LogHelper.clearFindSimilarFaceLog();
     }
 
+    // Stop uploading and waiting for results nobody will see.
+    @Override
+    protected void onDestroy() {
+        mCancellationToken.cancel();
+        super.onDestroy();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == REQUEST_ADD_FACE) {
@@ -538,16 +555,14 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
                     originalFaces.setVisibility(View.VISIBLE);
 
                     // Put the image into an input stream for detection.
-                    ByteArrayOutputStream output = new ByteArrayOutputStream();
-                    mBitmap.compress(Bitmap.CompressFormat.JPEG, 100, output);
-                    ByteArrayInputStream inputStream
-                            = new ByteArrayInputStream(output.toByteArray());
+                    InputStream inputStream = ImageHelper.encodeForUpload(mBitmap);
 
                     setAllButtonsEnabledStatus(false);
 
                     addLog("Request: Add Face " + data.getData());
                     // Start a background task to add face in the large face list.
-                    new AddFaceInLargeFaceListTask(REQUEST_ADD_FACE).execute(inputStream);
+                    TaskEngine.execute(FindSimilarFaceActivity.this,
+                            new AddFaceInLargeFaceListTask(REQUEST_ADD_FACE), inputStream);
                 }
             }
         } else if (requestCode == REQUEST_SELECT_IMAGE) {
@@ -559,16 +574,14 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
                     originalFaces.setVisibility(View.VISIBLE);
 
                     // Put the image into an input stream for detection.
-                    ByteArrayOutputStream output = new ByteArrayOutputStream();
-                    mTargetBitmap.compress(Bitmap.CompressFormat.JPEG, 100, output);
-                    ByteArrayInputStream inputStream
-                            = new ByteArrayInputStream(output.toByteArray());
+                    InputStream inputStream = ImageHelper.encodeForUpload(mTargetBitmap);
 
                     setAllButtonsEnabledStatus(false);
 
                     addLog("Request: Detecting target in image " + data.getData());
                     // Start a background task to detect faces in the image.
-                    new DetectionTask(REQUEST_SELECT_IMAGE).execute(inputStream);
+                    TaskEngine.execute(FindSimilarFaceActivity.this,
+                            new DetectionTask(REQUEST_SELECT_IMAGE), inputStream);
                 }
             }
         }
@@ -637,7 +650,8 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
                 listView.setAdapter(faceListAdapter);
             }
         });
-        new DeleteLargeFaceListTask().execute(mLargeFaceListId);
+        TaskEngine.execute(FindSimilarFaceActivity.this,
+                new DeleteLargeFaceListTask(), mLargeFaceListId);
     }
 
     public void addFaces(View view) {
@@ -651,9 +665,8 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
         }
 
         setAllButtonsEnabledStatus(false);
-        new TrainLargeFaceListTask().execute(mLargeFaceListId);
-        new FindLargeFaceListSimilarFaceTask().execute(mFaceId);
-        new FindLargeFaceListFaceSimilarFaceTask().execute(mFaceId);
+        TaskEngine.executeOnce(FindSimilarFaceActivity.this, "Train " + mLargeFaceListId,
+                new TrainLargeFaceListTask(), mLargeFaceListId);
     }
 
     public void viewLog(View view) {
@@ -749,12 +762,15 @@ public class FindSimilarFaceActivity extends AppCompatActivity {
             convertView.setId(position);
 
             Bitmap thumbnailToShow = faceThumbnails.get(position);
+            boolean highlighted = false;
             if (faces.get(position).equals(mFaceId)) {
                 thumbnailToShow = ImageHelper.highlightSelectedFaceThumbnail(thumbnailToShow);
+                highlighted = true;
             }
 
-            // Show the face thumbnail.
-            ((ImageView)convertView.findViewById(R.id.image_face)).setImageBitmap(thumbnailToShow);
+            // Show the face thumbnail. The highlighted copy goes back to the pool when the view is rebound.
+            ImageHelper.setImageBitmap((ImageView)convertView.findViewById(R.id.image_face),
+                    thumbnailToShow, highlighted);
 
             return convertView;
         }
@@ -52,15 +52,15 @@ import android.widget.TextView;
 import com.microsoft.projectoxford.face.FaceServiceClient;
 import com.microsoft.projectoxford.face.contract.Face;
 import com.microsoft.projectoxford.face.contract.GroupResult;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
 import com.microsoft.projectoxford.face.samples.R;
 import com.microsoft.projectoxford.face.samples.helper.EmbeddedGridView;
 import com.microsoft.projectoxford.face.samples.helper.ImageHelper;
 import com.microsoft.projectoxford.face.samples.helper.LogHelper;
 import com.microsoft.projectoxford.face.samples.helper.SampleApp;
+import com.microsoft.projectoxford.face.samples.helper.TaskEngine;
 import com.microsoft.projectoxford.face.samples.log.GroupingLogActivity;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -75,7 +75,7 @@ public class GroupingActivity extends AppCompatActivity {
     class GroupingTask extends AsyncTask<UUID, String, GroupResult> {
         @Override
         protected GroupResult doInBackground(UUID... params) {
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             addLog("Request: Grouping " + params.length + " face(s)");
             try{
                 publishProgress("Grouping...");
@@ -113,7 +113,7 @@ public class GroupingActivity extends AppCompatActivity {
         private boolean mSucceed = true;
         @Override
         protected Face[] doInBackground(InputStream... params) {
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Detecting...");
 
@@ -212,6 +212,9 @@ public class GroupingActivity extends AppCompatActivity {
     // Progress dialog popped up when communicating with server.
     ProgressDialog mProgressDialog;
 
+    // Cancels the service calls still running when the activity is destroyed.
+    private final CancellationToken mCancellationToken = new CancellationToken();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -227,6 +230,13 @@ public class GroupingActivity extends AppCompatActivity {
         LogHelper.clearGroupingLog();
     }
 
+    // Stop uploading and waiting for results nobody will see.
+    @Override
+    protected void onDestroy() {
+        mCancellationToken.cancel();
+        super.onDestroy();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == REQUEST_SELECT_IMAGE) {
@@ -242,15 +252,13 @@ public class GroupingActivity extends AppCompatActivity {
                     groupedFaces.setAdapter(faceGroupsAdapter);
 
                     // Put the image into an input stream for detection.
-                    ByteArrayOutputStream output = new ByteArrayOutputStream();
-                    mBitmap.compress(Bitmap.CompressFormat.JPEG, 100, output);
-                    ByteArrayInputStream inputStream = new ByteArrayInputStream(output.toByteArray());
+                    InputStream inputStream = ImageHelper.encodeForUpload(mBitmap);
 
                     setAllButtonsEnabledStatus(false);
 
                     addLog("Request: Detecting in image " + data.getData());
                     // Start a background task to detect faces in the image.
-                    new DetectionTask().execute(inputStream);
+                    TaskEngine.execute(GroupingActivity.this, new DetectionTask(), inputStream);
                 }
             }
         }
@@ -268,7 +276,8 @@ public class GroupingActivity extends AppCompatActivity {
         }
 
         if (faceIds.size() > 0) {
-            new GroupingTask().execute(faceIds.toArray(new UUID[faceIds.size()]));
+            TaskEngine.execute(GroupingActivity.this,
+                    new GroupingTask(), faceIds.toArray(new UUID[faceIds.size()]));
             setAllButtonsEnabledStatus(false);
         } else {
             TextView textView = (TextView) findViewById(R.id.info);
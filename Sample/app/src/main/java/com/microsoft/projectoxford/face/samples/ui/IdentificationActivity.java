@@ -55,16 +55,16 @@ import com.microsoft.projectoxford.face.FaceServiceClient;
 import com.microsoft.projectoxford.face.contract.Face;
 import com.microsoft.projectoxford.face.contract.IdentifyResult;
 import com.microsoft.projectoxford.face.contract.TrainingStatus;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
 import com.microsoft.projectoxford.face.samples.R;
 import com.microsoft.projectoxford.face.samples.helper.ImageHelper;
 import com.microsoft.projectoxford.face.samples.helper.LogHelper;
 import com.microsoft.projectoxford.face.samples.helper.SampleApp;
 import com.microsoft.projectoxford.face.samples.helper.StorageHelper;
+import com.microsoft.projectoxford.face.samples.helper.TaskEngine;
 import com.microsoft.projectoxford.face.samples.log.IdentificationLogActivity;
 import com.microsoft.projectoxford.face.samples.persongroupmanagement.PersonGroupListActivity;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.DecimalFormat;
@@ -95,7 +95,7 @@ public class IdentificationActivity extends AppCompatActivity {
             addLog(logString);
 
             // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Getting person group status...");
 
@@ -148,6 +148,9 @@ public class IdentificationActivity extends AppCompatActivity {
 
     PersonGroupListAdapter mPersonGroupListAdapter;
 
+    // Cancels the service calls still running when the activity is destroyed.
+    private final CancellationToken mCancellationToken = new CancellationToken();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -161,6 +164,13 @@ public class IdentificationActivity extends AppCompatActivity {
         LogHelper.clearIdentificationLog();
     }
 
+    // Stop uploading and waiting for results nobody will see.
+    @Override
+    protected void onDestroy() {
+        mCancellationToken.cancel();
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -253,7 +263,7 @@ public class IdentificationActivity extends AppCompatActivity {
         @Override
         protected Face[] doInBackground(InputStream... params) {
             // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Detecting...");
 
@@ -357,14 +367,12 @@ public class IdentificationActivity extends AppCompatActivity {
     // Start detecting in image.
     private void detect(Bitmap bitmap) {
         // Put the image into an input stream for detection.
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, output);
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(output.toByteArray());
+        InputStream inputStream = ImageHelper.encodeForUpload(bitmap);
 
         setAllButtonsEnabledStatus(false);
 
         // Start a background task to detect faces in the image.
-        new DetectionTask().execute(inputStream);
+        TaskEngine.execute(IdentificationActivity.this, new DetectionTask(), inputStream);
     }
 
     // Called when the "Select Image" button is clicked.
@@ -385,7 +393,7 @@ public class IdentificationActivity extends AppCompatActivity {
 
             setAllButtonsEnabledStatus(false);
 
-            new IdentificationTask(mPersonGroupId).execute(
+            TaskEngine.execute(IdentificationActivity.this, new IdentificationTask(mPersonGroupId),
                     faceIds.toArray(new UUID[faceIds.size()]));
         } else {
             // Not detected or person group exists.
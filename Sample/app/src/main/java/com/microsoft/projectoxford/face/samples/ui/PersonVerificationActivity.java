@@ -53,16 +53,16 @@ import android.widget.TextView;
 import com.microsoft.projectoxford.face.FaceServiceClient;
 import com.microsoft.projectoxford.face.contract.Face;
 import com.microsoft.projectoxford.face.contract.VerifyResult;
+import com.microsoft.projectoxford.face.rest.CancellationToken;
 import com.microsoft.projectoxford.face.samples.R;
 import com.microsoft.projectoxford.face.samples.helper.ImageHelper;
 import com.microsoft.projectoxford.face.samples.helper.LogHelper;
 import com.microsoft.projectoxford.face.samples.helper.SampleApp;
 import com.microsoft.projectoxford.face.samples.helper.StorageHelper;
+import com.microsoft.projectoxford.face.samples.helper.TaskEngine;
 import com.microsoft.projectoxford.face.samples.log.VerificationLogActivity;
 import com.microsoft.projectoxford.face.samples.persongroupmanagement.PersonGroupListActivity;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.DecimalFormat;
@@ -89,7 +89,7 @@ public class PersonVerificationActivity extends AppCompatActivity {
         @Override
         protected VerifyResult doInBackground(Void... params) {
             // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Verifying...");
 
@@ -138,7 +138,7 @@ public class PersonVerificationActivity extends AppCompatActivity {
         @Override
         protected Face[] doInBackground(InputStream... params) {
             // Get an instance of face service client to detect faces in image.
-            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient();
+            FaceServiceClient faceServiceClient = SampleApp.getFaceServiceClient(mCancellationToken);
             try{
                 publishProgress("Detecting...");
 
@@ -197,6 +197,9 @@ public class PersonVerificationActivity extends AppCompatActivity {
 
     PersonListAdapter mPersonListAdapter;
 
+    // Cancels the service calls still running when the activity is destroyed.
+    private final CancellationToken mCancellationToken = new CancellationToken();
+
     // When the activity is created, set all the member variables to initial state.
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -216,6 +219,13 @@ public class PersonVerificationActivity extends AppCompatActivity {
         LogHelper.clearVerificationLog();
     }
 
+    // Stop uploading and waiting for results nobody will see.
+    @Override
+    protected void onDestroy() {
+        mCancellationToken.cancel();
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -325,7 +335,8 @@ public class PersonVerificationActivity extends AppCompatActivity {
     // Called when the "Verify" button is clicked.
     public void verify(View view) {
         setAllButtonEnabledStatus(false);
-        new VerificationTask(mFaceId, mPersonGroupId, mPersonId).execute();
+        TaskEngine.execute(PersonVerificationActivity.this,
+                new VerificationTask(mFaceId, mPersonGroupId, mPersonId));
     }
 
     // View the log of service calls.
@@ -458,12 +469,10 @@ public class PersonVerificationActivity extends AppCompatActivity {
     // Start detecting in image specified by index.
     private void detect(Bitmap bitmap) {
         // Put the image into an input stream for detection.
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, output);
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(output.toByteArray());
+        InputStream inputStream = ImageHelper.encodeForUpload(bitmap);
 
         // Start a background task to detect faces in the image.
-        new DetectionTask().execute(inputStream);
+        TaskEngine.execute(PersonVerificationActivity.this, new DetectionTask(), inputStream);
 
         setSelectImageButtonEnabledStatus(false);
 
@@ -534,12 +543,15 @@ public class PersonVerificationActivity extends AppCompatActivity {
             convertView.setId(position);
 
             Bitmap thumbnailToShow = faceThumbnails.get(position);
+            boolean highlighted = false;
             if (faces.get(position).faceId.equals(mFaceId)) {
                 thumbnailToShow = ImageHelper.highlightSelectedFaceThumbnail(thumbnailToShow);
+                highlighted = true;
             }
 
-            // Show the face thumbnail.
-            ((ImageView)convertView.findViewById(R.id.image_face)).setImageBitmap(thumbnailToShow);
+            // Show the face thumbnail. The highlighted copy goes back to the pool when the view is rebound.
+            ImageHelper.setImageBitmap((ImageView)convertView.findViewById(R.id.image_face),
+                    thumbnailToShow, highlighted);
 
             return convertView;
         }